@@ -0,0 +1,95 @@
+package school.hei.haapi.endpoint.event;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import school.hei.haapi.endpoint.event.model.TypedEvent;
+import school.hei.haapi.endpoint.event.model.TypedLateFeeVerified;
+import school.hei.haapi.endpoint.event.model.TypedUserUpserted;
+import school.hei.haapi.endpoint.event.model.gen.ConcernedStudent;
+import school.hei.haapi.endpoint.event.model.gen.LateFeeVerified;
+import school.hei.haapi.endpoint.event.model.gen.UserUpserted;
+import school.hei.haapi.endpoint.rest.model.Fee;
+import school.hei.haapi.model.exception.BadRequestException;
+
+/*
+ * Decoding of a LateFeeVerified message as received from SQS:
+ * ./gradlew jmh -Pjmh.includes=TypedEventDecoderBenchmark
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TypedEventDecoderBenchmark {
+
+  private ObjectMapper om;
+  private TypedEventDecoder typedEventDecoder;
+  private String body;
+
+  @Setup
+  public void setUp() throws IOException {
+    om = new ObjectMapper()
+        .findAndRegisterModules()
+        .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    typedEventDecoder = new TypedEventDecoder(om);
+    LateFeeVerified lateFee = LateFeeVerified.builder()
+        .student(ConcernedStudent.builder()
+            .firstName("Ryan")
+            .lastName("Andria")
+            .email("test+ryan@hei.school")
+            .ref("STD21001")
+            .build())
+        .type(Fee.TypeEnum.TUITION)
+        .remainingAmount(5000)
+        .dueDatetime(Instant.parse("2022-02-08T08:25:24Z"))
+        .comment("Comment")
+        .build();
+    body = "{\n"
+        + "  \"version\": \"0\",\n"
+        + "  \"id\": \"3c6b8c3e-5a4b-4a8e-9b5f-1d2e3f4a5b6c\",\n"
+        + "  \"detail-type\": \"" + LateFeeVerified.class.getTypeName() + "\",\n"
+        + "  \"source\": \"school.hei.haapi\",\n"
+        + "  \"account\": \"088312068315\",\n"
+        + "  \"time\": \"2022-02-09T05:00:00Z\",\n"
+        + "  \"region\": \"eu-west-3\",\n"
+        + "  \"resources\": [],\n"
+        + "  \"detail\": " + om.writeValueAsString(lateFee) + "\n"
+        + "}";
+  }
+
+  @Benchmark
+  public TypedEvent streamingDecoder() throws IOException {
+    return typedEventDecoder.decode(body);
+  }
+
+  /* Decoding as done before TypedEventDecoder: body read as a map, then detail converted */
+  @Benchmark
+  public TypedEvent mapThenConvert() throws IOException {
+    TypeReference<Map<String, Object>> typeRef = new TypeReference<>() {
+    };
+    Map<String, Object> map = om.readValue(body, typeRef);
+    String typeName = map.get("detail-type").toString();
+    if (UserUpserted.class.getTypeName().equals(typeName)) {
+      return new TypedUserUpserted(om.convertValue(map.get("detail"), UserUpserted.class));
+    } else if (LateFeeVerified.class.getTypeName().equals(typeName)) {
+      return new TypedLateFeeVerified(om.convertValue(map.get("detail"), LateFeeVerified.class));
+    }
+    throw new BadRequestException("Unexpected message type: " + typeName);
+  }
+}
@@ -0,0 +1,70 @@
+package school.hei.haapi.service;
+
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+/*
+ * Renders per second of the late fee email:
+ * ./gradlew jmh -Pjmh.includes=TemplateServiceBenchmark
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TemplateServiceBenchmark {
+
+  private TemplateService templateService;
+  private Context context;
+
+  @Setup
+  public void setUp() {
+    templateService = new TemplateService(0, 200);
+    context = new Context();
+    context.setVariable("fullName", "Andria Ryan");
+    context.setVariable("comment", "Frais de scolarité");
+    context.setVariable("dueDatetime", "8 novembre 2021");
+    context.setVariable("remainingAmount", "5 000");
+    context.setVariable("remainingAmWords", "CINQ MILLE");
+  }
+
+  @Benchmark
+  public String cachedTemplate() {
+    return templateService.render("lateFeeEmail", context);
+  }
+
+  @Benchmark
+  public Writer cachedTemplateToWriter() {
+    Writer writer = Writer.nullWriter();
+    templateService.render("lateFeeEmail", context, writer);
+    return writer;
+  }
+
+  /* Rendering as done before TemplateService: a new engine, thus a new parse, by email */
+  @Benchmark
+  public String newEngineByRender() {
+    ClassLoaderTemplateResolver templateResolver = new ClassLoaderTemplateResolver();
+    templateResolver.setPrefix("/templates/");
+    templateResolver.setSuffix(".html");
+    templateResolver.setCharacterEncoding("UTF-8");
+    templateResolver.setTemplateMode(TemplateMode.HTML);
+    TemplateEngine templateEngine = new TemplateEngine();
+    templateEngine.setTemplateResolver(templateResolver);
+    return templateEngine.process("lateFeeEmail", context);
+  }
+}
@@ -0,0 +1,76 @@
+package school.hei.haapi.unit.utils;
+
+import java.text.NumberFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.allegro.finance.tradukisto.ValueConverters;
+import school.hei.haapi.service.utils.DataFormatterUtils;
+
+/*
+ * Formatting of the values of a late fee email, by threads of the event consumer:
+ * ./gradlew jmh -Pjmh.includes=DataFormatterBenchmark
+ * Benchmarks prefixed by perCall format as done before formatters were cached.
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class DataFormatterBenchmark {
+
+  private final Instant dueDatetime = Instant.parse("2021-11-08T08:25:24.00Z");
+
+  @Param({"5000", "1500000"})
+  private int amount;
+
+  @Benchmark
+  public String instantToCommonDate() {
+    return DataFormatterUtils.instantToCommonDate(dueDatetime);
+  }
+
+  @Benchmark
+  public String perCallInstantToCommonDate() {
+    return DateTimeFormatter
+        .ofLocalizedDate(FormatStyle.LONG)
+        .withLocale(Locale.FRENCH)
+        .withZone(ZoneId.of("UTC+3"))
+        .format(dueDatetime);
+  }
+
+  @Benchmark
+  public String numberToReadable() {
+    return DataFormatterUtils.numberToReadable(amount);
+  }
+
+  @Benchmark
+  public String perCallNumberToReadable() {
+    return NumberFormat.getNumberInstance().format(amount);
+  }
+
+  @Benchmark
+  public String numberToWords() {
+    return DataFormatterUtils.numberToWords(amount);
+  }
+
+  @Benchmark
+  public String perCallNumberToWords() {
+    return ValueConverters.FRENCH_INTEGER.asWords(amount).toUpperCase();
+  }
+}
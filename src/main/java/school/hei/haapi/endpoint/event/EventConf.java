@@ -3,6 +3,7 @@ package school.hei.haapi.endpoint.event;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import school.hei.haapi.service.aws.InMemorySesClient;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.ses.SesClient;
 import software.amazon.awssdk.services.sqs.SqsClient;
@@ -26,7 +27,12 @@ public class EventConf {
   }
 
   @Bean
-  public SesClient getSesClient() {
+  public SesClient getSesClient(
+      @Value("${aws.ses.inMemory}") boolean inMemory,
+      @Value("${aws.ses.maxSendRate}") double maxSendRate) {
+    if (inMemory) {
+      return new InMemorySesClient(maxSendRate);
+    }
     return SesClient.builder()
         .region(region)
         .build();
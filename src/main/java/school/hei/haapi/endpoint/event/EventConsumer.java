@@ -1,48 +1,435 @@
 package school.hei.haapi.endpoint.event;
 
+import java.time.Duration;
 import java.util.List;
-import java.util.concurrent.Executor;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import javax.annotation.PreDestroy;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
+import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import school.hei.haapi.endpoint.event.model.TypedEvent;
 
-import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.stream.Collectors.toUnmodifiableList;
+import static java.util.stream.Collectors.toUnmodifiableMap;
 
+/*
+ * Events are handled by a bounded pool of threads, and at most maxInFlight events are accepted
+ * at once: pollers ask for the remaining capacity before receiving messages, so that messages
+ * do not wait in memory until their visibility timeout expires. Pollers racing for the same
+ * capacity are blocked on accept until events in flight are handled.
+ * Each event type also has its own concurrency limit, so that a burst of one type can not take
+ * all the threads. Events of a type at its limit wait in the lane of the type, without holding
+ * a thread. When events of several lanes wait for a thread, those of the lane with the highest
+ * priority are handled first.
+ * Messages of accepted events are kept invisible by the heartbeat until they are handled.
+ * When the heartbeat abandons a message past its processing deadline, its handler is interrupted
+ * and the message is not acknowledged, whatever the outcome: it will be received again.
+ * Failed events are given to the failure handler, which delays their retry.
+ * */
 @Component
 @Slf4j
 public class EventConsumer implements Consumer<List<EventConsumer.AcknowledgeableTypedEvent>> {
 
-  @AllArgsConstructor
   public static class AcknowledgeableTypedEvent {
     @Getter
     private final TypedEvent typedEvent;
+    /* Event as received, e.g. compact before being hydrated: the one to dead-letter */
+    @Getter
+    private final TypedEvent receivedTypedEvent;
+    /* Receipt handle of the SQS message, null when the event does not come from SQS */
+    @Getter
+    private final String receiptHandle;
+    /* Number of times the message was received, this time included */
+    @Getter
+    private final int receiveCount;
     private final Runnable acknowledger;
 
+    public AcknowledgeableTypedEvent(TypedEvent typedEvent, Runnable acknowledger) {
+      this(typedEvent, null, 1, acknowledger);
+    }
+
+    public AcknowledgeableTypedEvent(
+        TypedEvent typedEvent, String receiptHandle, int receiveCount, Runnable acknowledger) {
+      this(typedEvent, typedEvent, receiptHandle, receiveCount, acknowledger);
+    }
+
+    private AcknowledgeableTypedEvent(
+        TypedEvent typedEvent, TypedEvent receivedTypedEvent,
+        String receiptHandle, int receiveCount, Runnable acknowledger) {
+      this.typedEvent = typedEvent;
+      this.receivedTypedEvent = receivedTypedEvent;
+      this.receiptHandle = receiptHandle;
+      this.receiveCount = receiveCount;
+      this.acknowledger = acknowledger;
+    }
+
+    /* Same message, handled as the given event */
+    public AcknowledgeableTypedEvent withTypedEvent(TypedEvent typedEvent) {
+      return new AcknowledgeableTypedEvent(
+          typedEvent, receivedTypedEvent, receiptHandle, receiveCount, acknowledger);
+    }
+
     public void ack() {
       acknowledger.run();
     }
   }
 
-  private final Executor executor;
-  private static final int MAX_THREADS = 10;
-
   private final EventServiceInvoker eventServiceInvoker;
+  private final SqsVisibilityHeartbeat visibilityHeartbeat;
+  private final EventFailureHandler eventFailureHandler;
+  private final ThreadPoolExecutor executor;
+  private final int maxInFlight;
+  private final int defaultMaxConcurrency;
+  private final Map<String, Integer> maxConcurrencyByEventType;
+  private final Map<String, Integer> priorityByEventType;
+  private final Duration drainTimeout;
 
-  public EventConsumer(EventServiceInvoker eventServiceInvoker) {
-    this.executor = newFixedThreadPool(MAX_THREADS);
+  /* One permit per event that can still be accepted */
+  private final Semaphore capacity;
+  private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+  private final AtomicLong taskSequence = new AtomicLong();
+
+  public EventConsumer(
+      EventServiceInvoker eventServiceInvoker,
+      SqsVisibilityHeartbeat visibilityHeartbeat,
+      EventFailureHandler eventFailureHandler,
+      @Value("${aws.sqs.consumer.nbOfThreads}") int nbOfThreads,
+      @Value("${aws.sqs.consumer.maxInFlight}") int maxInFlight,
+      @Value("#{${aws.sqs.consumer.maxConcurrencyByEventType}}")
+      Map<String, Integer> maxConcurrencyByEventType,
+      @Value("#{${aws.sqs.consumer.priorityByEventType}}")
+      Map<String, Integer> priorityByEventType,
+      @Value("${aws.sqs.consumer.drainTimeoutInSeconds}") long drainTimeoutInSeconds) {
     this.eventServiceInvoker = eventServiceInvoker;
+    this.visibilityHeartbeat = visibilityHeartbeat;
+    this.eventFailureHandler = eventFailureHandler;
+    this.maxInFlight = maxInFlight;
+    this.capacity = new Semaphore(maxInFlight);
+    this.defaultMaxConcurrency = nbOfThreads;
+    this.maxConcurrencyByEventType = maxConcurrencyByEventType;
+    this.priorityByEventType = priorityByEventType;
+    this.drainTimeout = Duration.ofSeconds(drainTimeoutInSeconds);
+    // Unbounded, but it holds at most maxInFlight tasks since accept blocks beyond
+    this.executor = new ThreadPoolExecutor(
+        nbOfThreads, nbOfThreads, 0L, TimeUnit.MILLISECONDS,
+        new PriorityBlockingQueue<>());
   }
 
+  /*
+   * Blocks while maxInFlight events are in flight. Messages are kept invisible meanwhile.
+   * When interrupted, events not accepted yet are left to be received again.
+   * */
   @Override
   public void accept(List<AcknowledgeableTypedEvent> ackTypedEvents) {
-    for (AcknowledgeableTypedEvent ackTypedEvent : ackTypedEvents) {
-      executor.execute(() -> {
+    List<PendingEvent> pendingEvents = ackTypedEvents.stream()
+        .map(ackTypedEvent -> new PendingEvent(ackTypedEvent, System.nanoTime()))
+        .collect(toUnmodifiableList());
+    pendingEvents.forEach(this::startHeartbeat);
+    for (int i = 0; i < pendingEvents.size(); i++) {
+      PendingEvent pendingEvent = pendingEvents.get(i);
+      try {
+        capacity.acquire();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        List<PendingEvent> rejected = pendingEvents.subList(i, pendingEvents.size());
+        rejected.forEach(rejectedEvent -> stopHeartbeat(rejectedEvent.getEvent()));
+        log.warn("Interrupted while waiting for capacity, {} events will be received again",
+            rejected.size());
+        return;
+      }
+      Lane lane = lanes.computeIfAbsent(
+          pendingEvent.getEvent().getTypedEvent().getTypeName(), this::newLane);
+      lane.getPending().add(pendingEvent);
+      dispatch(lane);
+    }
+  }
+
+  public int getInFlightCount() {
+    return maxInFlight - capacity.availablePermits();
+  }
+
+  public int getRemainingCapacity() {
+    return capacity.availablePermits();
+  }
+
+  public Metrics getMetrics() {
+    long handled = sum(lane -> lane.getHandledCount().get());
+    long failed = sum(lane -> lane.getFailedCount().get());
+    return new Metrics(
+        getInFlightCount(),
+        executor.getQueue().size()
+            + lanes.values().stream().mapToInt(lane -> lane.getPending().size()).sum(),
+        handled,
+        failed,
+        average(sum(lane -> lane.getTotalWaitNanos().get()), handled + failed),
+        average(sum(lane -> lane.getTotalHandlingNanos().get()), handled + failed),
+        lanes.values().stream().collect(toUnmodifiableMap(Lane::getName, Lane::getMetrics)));
+  }
+
+  private long sum(ToLongFunction<Lane> counter) {
+    return lanes.values().stream().mapToLong(counter).sum();
+  }
+
+  private static Duration average(long totalNanos, long count) {
+    return count == 0 ? Duration.ZERO : Duration.ofNanos(totalNanos / count);
+  }
+
+  @Scheduled(fixedDelay = 60_000)
+  public void logMetrics() {
+    Metrics metrics = getMetrics();
+    if (metrics.getInFlight() > 0 || metrics.getHandled() + metrics.getFailed() > 0) {
+      log.info("Event consumer metrics: {}", metrics);
+    }
+  }
+
+  /*
+   * Events already accepted are handled before the application stops, within the drain timeout.
+   * Those that are not will be received again once their visibility timeout expires.
+   * */
+  @PreDestroy
+  public void shutdown() throws InterruptedException {
+    long deadline = System.nanoTime() + drainTimeout.toNanos();
+    while (getInFlightCount() > 0 && System.nanoTime() < deadline) {
+      Thread.sleep(50);
+    }
+    executor.shutdown();
+    if (!executor.awaitTermination(
+        Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+      log.warn("{} events were not handled before shutdown", getInFlightCount());
+      executor.shutdownNow();
+    }
+  }
+
+  private Lane newLane(String typeName) {
+    String simpleName = typeName.substring(typeName.lastIndexOf('.') + 1);
+    return new Lane(
+        simpleName,
+        maxConcurrencyByEventType.getOrDefault(simpleName, defaultMaxConcurrency),
+        priorityByEventType.getOrDefault(simpleName, 0));
+  }
+
+  private void dispatch(Lane lane) {
+    while (!lane.getPending().isEmpty() && lane.getPermits().tryAcquire()) {
+      PendingEvent pendingEvent = lane.getPending().poll();
+      if (pendingEvent == null) {
+        // Taken by another thread in the meantime
+        lane.getPermits().release();
+        continue;
+      }
+      try {
+        executor.execute(new LaneTask(
+            lane.getPriority(),
+            taskSequence.incrementAndGet(),
+            () -> handle(lane, pendingEvent)));
+      } catch (RejectedExecutionException e) {
+        lane.getPermits().release();
+        stopHeartbeat(pendingEvent.getEvent());
+        capacity.release();
+        log.warn("Event rejected, it will be received again: {}",
+            pendingEvent.getEvent().getReceivedTypedEvent(), e);
+      }
+    }
+  }
+
+  private void handle(Lane lane, PendingEvent pendingEvent) {
+    long start = System.nanoTime();
+    lane.getTotalWaitNanos().addAndGet(start - pendingEvent.getAcceptedAt());
+    AcknowledgeableTypedEvent ackTypedEvent = pendingEvent.getEvent();
+    Handling handling = pendingEvent.getHandling();
+    try {
+      if (handling.start()) {
         eventServiceInvoker.accept(ackTypedEvent.getTypedEvent());
+      }
+      if (handling.finish()) {
         ackTypedEvent.ack();
-      });
+        stopHeartbeat(ackTypedEvent);
+        lane.getHandledCount().incrementAndGet();
+      } else {
+        lane.getFailedCount().incrementAndGet();
+        log.warn("Event was abandoned past its processing deadline, it will be received again: {}",
+            ackTypedEvent.getReceivedTypedEvent());
+      }
+    } catch (RuntimeException e) {
+      lane.getFailedCount().incrementAndGet();
+      if (!handling.finish()) {
+        log.warn("Event was abandoned past its processing deadline, it will be received again: {}",
+            ackTypedEvent.getReceivedTypedEvent(), e);
+        return;
+      }
+      log.error("Event could not be handled: {}", ackTypedEvent.getReceivedTypedEvent(), e);
+      // Before the failure handler changes the visibility, so that the heartbeat can not reset it
+      stopHeartbeat(ackTypedEvent);
+      onFailure(ackTypedEvent, e);
+    } finally {
+      lane.getTotalHandlingNanos().addAndGet(System.nanoTime() - start);
+      capacity.release();
+      lane.getPermits().release();
+      dispatch(lane);
     }
   }
+
+  private void onFailure(AcknowledgeableTypedEvent ackTypedEvent, RuntimeException error) {
+    try {
+      eventFailureHandler.onFailure(ackTypedEvent, error);
+    } catch (RuntimeException e) {
+      log.error("Failure of event could not be handled: {}",
+          ackTypedEvent.getReceivedTypedEvent(), e);
+    }
+  }
+
+  private void startHeartbeat(PendingEvent pendingEvent) {
+    String receiptHandle = pendingEvent.getEvent().getReceiptHandle();
+    if (receiptHandle != null) {
+      visibilityHeartbeat.register(receiptHandle, pendingEvent.getHandling()::abandon);
+    }
+  }
+
+  private void stopHeartbeat(AcknowledgeableTypedEvent ackTypedEvent) {
+    if (ackTypedEvent.getReceiptHandle() != null) {
+      visibilityHeartbeat.unregister(ackTypedEvent.getReceiptHandle());
+    }
+  }
+
+  @Getter
+  private static class Lane {
+    private final String name;
+    private final int maxConcurrency;
+    private final int priority;
+    private final Semaphore permits;
+    private final Queue<PendingEvent> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicLong handledCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong totalHandlingNanos = new AtomicLong();
+
+    Lane(String name, int maxConcurrency, int priority) {
+      this.name = name;
+      this.maxConcurrency = maxConcurrency;
+      this.priority = priority;
+      this.permits = new Semaphore(maxConcurrency);
+    }
+
+    LaneMetrics getMetrics() {
+      long handled = handledCount.get();
+      long failed = failedCount.get();
+      return new LaneMetrics(
+          maxConcurrency,
+          priority,
+          maxConcurrency - permits.availablePermits(),
+          pending.size(),
+          handled,
+          failed,
+          average(totalWaitNanos.get(), handled + failed),
+          average(totalHandlingNanos.get(), handled + failed));
+    }
+  }
+
+  /* Tasks of higher priority lanes first, then in submission order */
+  @AllArgsConstructor
+  private static class LaneTask implements Runnable, Comparable<LaneTask> {
+    private final int priority;
+    private final long sequence;
+    private final Runnable task;
+
+    @Override
+    public void run() {
+      task.run();
+    }
+
+    @Override
+    public int compareTo(LaneTask other) {
+      int byPriority = Integer.compare(other.priority, priority);
+      return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+    }
+  }
+
+  @AllArgsConstructor
+  @Getter
+  private static class PendingEvent {
+    private final AcknowledgeableTypedEvent event;
+    private final long acceptedAt;
+    private final Handling handling = new Handling();
+  }
+
+  /*
+   * The heartbeat may abandon an event at any time, from its own thread.
+   * Interruption is cooperative: handlers blocked on I/O may only notice it once unblocked.
+   * */
+  private static class Handling {
+    private Thread handler;
+    private boolean abandoned;
+    private boolean finished;
+
+    /* False when abandoned before being handled */
+    synchronized boolean start() {
+      handler = Thread.currentThread();
+      return !abandoned;
+    }
+
+    synchronized void abandon() {
+      if (finished) {
+        return;
+      }
+      abandoned = true;
+      if (handler != null) {
+        handler.interrupt();
+      }
+    }
+
+    /* False when abandoned, in which case the outcome of the handling is discarded */
+    synchronized boolean finish() {
+      finished = true;
+      handler = null;
+      // No interruption can come anymore: clear it before the thread runs another event
+      Thread.interrupted();
+      return !abandoned;
+    }
+  }
+
+  @AllArgsConstructor
+  @Getter
+  @ToString
+  public static class Metrics {
+    private final int inFlight;
+    /* Events accepted and waiting for a thread */
+    private final int queueDepth;
+    private final long handled;
+    private final long failed;
+    /* Average time from acceptance to handling */
+    private final Duration averageWait;
+    private final Duration averageHandling;
+    /* By simple name of the event type */
+    private final Map<String, LaneMetrics> byEventType;
+  }
+
+  @AllArgsConstructor
+  @Getter
+  @ToString
+  public static class LaneMetrics {
+    private final int maxConcurrency;
+    private final int priority;
+    /* Events of the lane running or waiting for a thread */
+    private final int dispatched;
+    /* Events of the lane waiting for the lane to be below its concurrency limit */
+    private final int pending;
+    private final long handled;
+    private final long failed;
+    private final Duration averageWait;
+    private final Duration averageHandling;
+  }
 }
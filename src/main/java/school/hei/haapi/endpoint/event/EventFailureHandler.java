@@ -0,0 +1,97 @@
+package school.hei.haapi.endpoint.event;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import school.hei.haapi.endpoint.event.EventConsumer.AcknowledgeableTypedEvent;
+import school.hei.haapi.service.DeadLetterEventService;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityRequest;
+
+/*
+ * A failed event is received again after a jittered exponential backoff, based on how many times
+ * its message was received, so that outages of a dependency do not turn into redelivery loops.
+ * Once it failed maxAttempts times, it is saved as a dead letter and deleted from the queue.
+ * */
+@Component
+@Slf4j
+public class EventFailureHandler {
+
+  private static final Duration MAX_VISIBILITY_TIMEOUT = Duration.ofHours(12);
+  private final String queueUrl;
+  private final SqsClient sqsClient;
+  private final SqsAcknowledger sqsAcknowledger;
+  private final DeadLetterEventService deadLetterEventService;
+  private final int maxAttempts;
+  private final Duration baseDelay;
+  private final Duration maxDelay;
+
+  public EventFailureHandler(
+      @Value("${aws.sqs.queueUrl}") String queueUrl,
+      SqsClient sqsClient,
+      SqsAcknowledger sqsAcknowledger,
+      DeadLetterEventService deadLetterEventService,
+      @Value("${aws.sqs.retry.maxAttempts}") int maxAttempts,
+      @Value("${aws.sqs.retry.baseDelayInSeconds}") long baseDelayInSeconds,
+      @Value("${aws.sqs.retry.maxDelayInSeconds}") long maxDelayInSeconds) {
+    this.queueUrl = queueUrl;
+    this.sqsClient = sqsClient;
+    this.sqsAcknowledger = sqsAcknowledger;
+    this.deadLetterEventService = deadLetterEventService;
+    this.maxAttempts = maxAttempts;
+    this.baseDelay = Duration.ofSeconds(baseDelayInSeconds);
+    this.maxDelay = Duration.ofSeconds(maxDelayInSeconds);
+  }
+
+  public void onFailure(AcknowledgeableTypedEvent ackTypedEvent, RuntimeException error) {
+    if (ackTypedEvent.getReceiptHandle() == null) {
+      return;
+    }
+    int receiveCount = ackTypedEvent.getReceiveCount();
+    if (receiveCount >= maxAttempts) {
+      deadLetter(ackTypedEvent, error);
+    } else {
+      retryLater(ackTypedEvent.getReceiptHandle(), backoff(receiveCount));
+    }
+  }
+
+  /* Between half and all of base * 2^(receiveCount - 1), capped to maxDelay */
+  Duration backoff(int receiveCount) {
+    long exponentialMillis = baseDelay.toMillis() << Math.min(Math.max(receiveCount - 1, 0), 20);
+    long cappedMillis = Math.min(
+        Math.min(exponentialMillis, maxDelay.toMillis()), MAX_VISIBILITY_TIMEOUT.toMillis());
+    return Duration.ofMillis(
+        cappedMillis / 2 + ThreadLocalRandom.current().nextLong(cappedMillis / 2 + 1));
+  }
+
+  private void deadLetter(AcknowledgeableTypedEvent ackTypedEvent, RuntimeException error) {
+    try {
+      deadLetterEventService.save(
+          ackTypedEvent.getReceivedTypedEvent(), ackTypedEvent.getReceiveCount(), error);
+    } catch (RuntimeException e) {
+      // Not deleted then: it will be received again once its visibility timeout expires
+      log.error("Event could not be saved as dead letter: {}",
+          ackTypedEvent.getReceivedTypedEvent(), e);
+      return;
+    }
+    log.warn("Event failed {} times and was saved as dead letter: {}",
+        ackTypedEvent.getReceiveCount(), ackTypedEvent.getReceivedTypedEvent());
+    sqsAcknowledger.acknowledge(ackTypedEvent.getReceiptHandle());
+  }
+
+  private void retryLater(String receiptHandle, Duration delay) {
+    try {
+      sqsClient.changeMessageVisibility(ChangeMessageVisibilityRequest.builder()
+          .queueUrl(queueUrl)
+          .receiptHandle(receiptHandle)
+          .visibilityTimeout((int) delay.toSeconds())
+          .build());
+    } catch (SdkException e) {
+      // It will still be received again, once its current visibility timeout expires
+      log.warn("Retry of message could not be delayed, receiptHandle={}", receiptHandle, e);
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package school.hei.haapi.endpoint.event;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import school.hei.haapi.endpoint.event.EventConsumer.AcknowledgeableTypedEvent;
+import school.hei.haapi.endpoint.event.model.TypedEvent;
+import school.hei.haapi.endpoint.event.model.TypedLateFeeVerified;
+import school.hei.haapi.endpoint.event.model.TypedLateFeesDigestVerified;
+import school.hei.haapi.endpoint.event.model.gen.CompactLateFeeVerified;
+import school.hei.haapi.endpoint.event.model.gen.CompactLateFeesDigestVerified;
+import school.hei.haapi.endpoint.event.model.gen.ConcernedStudent;
+import school.hei.haapi.endpoint.event.model.gen.LateFeeVerified;
+import school.hei.haapi.endpoint.event.model.gen.LateFeesDigestVerified;
+import school.hei.haapi.model.Fee;
+import school.hei.haapi.model.User;
+import school.hei.haapi.repository.FeeRepository;
+
+import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toUnmodifiableList;
+import static java.util.stream.Collectors.toUnmodifiableSet;
+
+/*
+ * Compact events only carry ids, so that entities and personal data are not sent through
+ * EventBridge and SQS. They are hydrated back into full events for each polled batch,
+ * with a single query for all the entities of the batch.
+ * */
+@Component
+@AllArgsConstructor
+@Slf4j
+public class EventHydrator {
+
+  private final FeeRepository feeRepository;
+
+  /**
+   * Replaces compact events with full ones, in the same order.
+   * Events whose entities no longer need them, e.g. fees paid since, are acknowledged and dropped.
+   */
+  public List<AcknowledgeableTypedEvent> hydrate(List<AcknowledgeableTypedEvent> ackEvents) {
+    Set<String> feeIds = ackEvents.stream()
+        .flatMap(ackEvent -> feeIds(ackEvent.getTypedEvent().getPayload()))
+        .collect(toUnmodifiableSet());
+    if (feeIds.isEmpty()) {
+      return ackEvents;
+    }
+    Map<String, Fee> feesById = feeRepository.findAllWithStudentByIdIn(feeIds).stream()
+        .collect(toMap(Fee::getId, Function.identity()));
+
+    List<AcknowledgeableTypedEvent> hydrated = new ArrayList<>(ackEvents.size());
+    for (AcknowledgeableTypedEvent ackEvent : ackEvents) {
+      Serializable payload = ackEvent.getTypedEvent().getPayload();
+      TypedEvent hydratedEvent;
+      if (payload instanceof CompactLateFeeVerified) {
+        hydratedEvent = toLateFeeVerified((CompactLateFeeVerified) payload, feesById);
+      } else if (payload instanceof CompactLateFeesDigestVerified) {
+        hydratedEvent = toLateFeesDigestVerified((CompactLateFeesDigestVerified) payload, feesById);
+      } else {
+        hydrated.add(ackEvent);
+        continue;
+      }
+      if (hydratedEvent == null) {
+        log.info("Late fees are no longer to be notified, dropping event={}", payload);
+        ackEvent.ack();
+        continue;
+      }
+      hydrated.add(ackEvent.withTypedEvent(hydratedEvent));
+    }
+    return hydrated;
+  }
+
+  private static Stream<String> feeIds(Serializable payload) {
+    if (payload instanceof CompactLateFeeVerified) {
+      return Stream.of(((CompactLateFeeVerified) payload).getFeeId());
+    }
+    if (payload instanceof CompactLateFeesDigestVerified) {
+      return ((CompactLateFeesDigestVerified) payload).getFeeIds().stream();
+    }
+    return Stream.empty();
+  }
+
+  /* Null when the fee was deleted or paid since, or is not of the student anymore */
+  private static Fee lateFee(String feeId, String studentId, Map<String, Fee> feesById) {
+    Fee fee = feesById.get(feeId);
+    if (fee == null
+        || !fee.getStudent().getId().equals(studentId)
+        || fee.getRemainingAmount() == 0) {
+      return null;
+    }
+    return fee;
+  }
+
+  private static TypedEvent toLateFeeVerified(
+      CompactLateFeeVerified compact, Map<String, Fee> feesById) {
+    Fee fee = lateFee(compact.getFeeId(), compact.getStudentId(), feesById);
+    if (fee == null) {
+      return null;
+    }
+    return new TypedLateFeeVerified(LateFeeVerified.builder()
+        .type(fee.getType())
+        .student(toConcernedStudent(fee.getStudent()))
+        .comment(fee.getComment())
+        .remainingAmount(fee.getRemainingAmount())
+        .dueDatetime(fee.getDueDatetime())
+        .build());
+  }
+
+  /* Only the fees still late are listed, in the order of the compact event */
+  private static TypedEvent toLateFeesDigestVerified(
+      CompactLateFeesDigestVerified compact, Map<String, Fee> feesById) {
+    List<Fee> lateFees = compact.getFeeIds().stream()
+        .map(feeId -> lateFee(feeId, compact.getStudentId(), feesById))
+        .filter(Objects::nonNull)
+        .collect(toUnmodifiableList());
+    if (lateFees.isEmpty()) {
+      return null;
+    }
+    return new TypedLateFeesDigestVerified(LateFeesDigestVerified.builder()
+        .student(toConcernedStudent(lateFees.get(0).getStudent()))
+        .lateFees(lateFees.stream()
+            .map(fee -> LateFeesDigestVerified.LateFee.builder()
+                .type(fee.getType())
+                .comment(fee.getComment())
+                .remainingAmount(fee.getRemainingAmount())
+                .dueDatetime(fee.getDueDatetime())
+                .build())
+            .collect(toUnmodifiableList()))
+        .totalRemainingAmount(lateFees.stream().mapToInt(Fee::getRemainingAmount).sum())
+        .build());
+  }
+
+  private static ConcernedStudent toConcernedStudent(User student) {
+    return ConcernedStudent.builder()
+        .ref(student.getRef())
+        .firstName(student.getFirstName())
+        .lastName(student.getLastName())
+        .email(student.getEmail())
+        .build();
+  }
+}
@@ -0,0 +1,34 @@
+package school.hei.haapi.endpoint.event;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import school.hei.haapi.service.EventOutboxService;
+
+@Component
+public class EventOutboxRelay {
+
+  private final EventOutboxService eventOutboxService;
+  private final int batchSize;
+
+  public EventOutboxRelay(
+      EventOutboxService eventOutboxService,
+      @Value("${event.outbox.batchSize}") int batchSize) {
+    this.eventOutboxService = eventOutboxService;
+    this.batchSize = batchSize;
+  }
+
+  /*
+   * Batches are relayed one after the other, until the outbox is drained
+   * or an event could not be sent.
+   * */
+  @Scheduled(
+      initialDelayString = "${event.outbox.relayDelayInMillis}",
+      fixedDelayString = "${event.outbox.relayDelayInMillis}")
+  public void relay() {
+    int sent;
+    do {
+      sent = eventOutboxService.relay(batchSize);
+    } while (sent == batchSize);
+  }
+}
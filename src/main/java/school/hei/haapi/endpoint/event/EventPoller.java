@@ -1,62 +1,160 @@
 package school.hei.haapi.endpoint.event;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import school.hei.haapi.endpoint.event.EventConsumer.AcknowledgeableTypedEvent;
 import school.hei.haapi.endpoint.event.model.TypedEvent;
-import school.hei.haapi.endpoint.event.model.TypedLateFeeVerified;
-import school.hei.haapi.endpoint.event.model.TypedUserUpserted;
-import school.hei.haapi.endpoint.event.model.gen.LateFeeVerified;
-import school.hei.haapi.endpoint.event.model.gen.UserUpserted;
-import school.hei.haapi.model.exception.BadRequestException;
+import school.hei.haapi.service.DeadLetterEventService;
 import software.amazon.awssdk.services.sqs.SqsClient;
-import software.amazon.awssdk.services.sqs.model.DeleteMessageRequest;
 import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.QueueAttributeName;
 import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
 
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.stream.Collectors.toList;
+import static software.amazon.awssdk.services.sqs.model.MessageSystemAttributeName.APPROXIMATE_RECEIVE_COUNT;
+
 @Component
 @Slf4j
 public class EventPoller {
 
   private static final Duration WAIT_TIME = Duration.ofSeconds(20); // MUST be <= 20s
   private static final int MAX_NUMBER_OF_MESSAGES = 10;
+  private static final Duration FULL_CAPACITY_BACKOFF = Duration.ofMillis(100);
+  private static final Duration MIN_ERROR_BACKOFF = Duration.ofSeconds(1);
+  private static final Duration MAX_ERROR_BACKOFF = Duration.ofSeconds(30);
   private final String queueUrl;
   private final SqsClient sqsClient;
-  private final ObjectMapper om;
+  private final TypedEventDecoder typedEventDecoder;
+  private final EventHydrator eventHydrator;
   private final EventConsumer eventConsumer;
+  private final SqsAcknowledger sqsAcknowledger;
+  private final SqsVisibilityHeartbeat visibilityHeartbeat;
+  private final DeadLetterEventService deadLetterEventService;
+  private final int nbOfWorkers;
+  private final ExecutorService workers;
+  private volatile boolean running;
 
   public EventPoller(
       @Value("${aws.sqs.queueUrl}") String queueUrl,
       SqsClient sqsClient,
-      ObjectMapper om,
-      EventConsumer eventConsumer) {
+      TypedEventDecoder typedEventDecoder,
+      EventHydrator eventHydrator,
+      EventConsumer eventConsumer,
+      SqsAcknowledger sqsAcknowledger,
+      SqsVisibilityHeartbeat visibilityHeartbeat,
+      DeadLetterEventService deadLetterEventService,
+      @Value("${aws.sqs.poller.nbOfWorkers}") int nbOfWorkers) {
     this.queueUrl = queueUrl;
     this.sqsClient = sqsClient;
-    this.om = om;
+    this.typedEventDecoder = typedEventDecoder;
+    this.eventHydrator = eventHydrator;
     this.eventConsumer = eventConsumer;
+    this.sqsAcknowledger = sqsAcknowledger;
+    this.visibilityHeartbeat = visibilityHeartbeat;
+    this.deadLetterEventService = deadLetterEventService;
+    this.nbOfWorkers = nbOfWorkers;
+    this.workers = nbOfWorkers > 0 ? newFixedThreadPool(nbOfWorkers) : null;
+  }
+
+  /*
+   * Each worker long polls the queue continuously, so that events are received
+   * as soon as they are sent, and as fast as the consumer can handle them.
+   * */
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    if (workers == null) {
+      return;
+    }
+    running = true;
+    for (int i = 0; i < nbOfWorkers; i++) {
+      workers.execute(this::pollContinuously);
+    }
+    log.info("Polling {} with {} workers", queueUrl, nbOfWorkers);
+  }
+
+  /*
+   * Workers finish their current long poll, which takes at most WAIT_TIME,
+   * and hand its messages to the consumer before stopping.
+   * */
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    running = false;
+    if (workers == null) {
+      return;
+    }
+    workers.shutdown();
+    if (!workers.awaitTermination(WAIT_TIME.plusSeconds(5).toMillis(), TimeUnit.MILLISECONDS)) {
+      workers.shutdownNow();
+    }
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+
+  private void pollContinuously() {
+    Duration errorBackoff = MIN_ERROR_BACKOFF;
+    while (running) {
+      try {
+        if (eventConsumer.getRemainingCapacity() <= 0) {
+          sleep(FULL_CAPACITY_BACKOFF);
+          continue;
+        }
+        poll();
+        errorBackoff = MIN_ERROR_BACKOFF;
+      } catch (RuntimeException e) {
+        log.error("Polling failed, retrying in {}", errorBackoff, e);
+        sleep(errorBackoff);
+        errorBackoff = errorBackoff.multipliedBy(2).compareTo(MAX_ERROR_BACKOFF) < 0
+            ? errorBackoff.multipliedBy(2)
+            : MAX_ERROR_BACKOFF;
+      }
+    }
   }
 
-  @Scheduled(cron = "0 * * * * *")
+  private void sleep(Duration duration) {
+    try {
+      Thread.sleep(duration.toMillis());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      running = false;
+    }
+  }
+
+  /**
+   * Receives at most as many messages as the consumer can take, and hands them to it.
+   */
   public void poll() {
+    int maxNumberOfMessages = Math.max(
+        1, Math.min(MAX_NUMBER_OF_MESSAGES, eventConsumer.getRemainingCapacity()));
     ReceiveMessageRequest receiveMessageRequest = ReceiveMessageRequest.builder()
         .queueUrl(queueUrl)
         .waitTimeSeconds(WAIT_TIME.toSecondsPart())
-        .maxNumberOfMessages(MAX_NUMBER_OF_MESSAGES)
+        .maxNumberOfMessages(maxNumberOfMessages)
+        // Same timeout as the heartbeat, whose interval is shorter
+        .visibilityTimeout((int) visibilityHeartbeat.getVisibilityTimeout().toSeconds())
+        // For ApproximateReceiveCount: this SDK has neither messageSystemAttributeNames
+        // nor a QueueAttributeName for it, and all message system attributes are small
+        .attributeNames(QueueAttributeName.ALL)
         .build();
 
     List<Message> messages = sqsClient.receiveMessage(receiveMessageRequest).messages();
     if (!messages.isEmpty()) {
-      log.info("Events received: {}", messages);
-      var ackEvents = toAcknowledgeableTypedEvents(messages);
+      // Only ids: bodies hold personal data
+      log.info("Events received: count={}, messageIds={}",
+          messages.size(),
+          messages.stream().map(Message::messageId).collect(toList()));
+      var ackEvents = eventHydrator.hydrate(toAcknowledgeableTypedEvents(messages));
       eventConsumer.accept(ackEvents);
     }
   }
@@ -67,40 +165,38 @@ public class EventPoller {
     for (Message message : messages) {
       TypedEvent typedEvent;
       try {
-        typedEvent = toTypedEvent(message);
+        typedEvent = typedEventDecoder.decode(message.body());
       } catch (Exception e) {
-        log.error("Message could not be unmarshalled, message={}", message, e);
+        // It would fail the same way every time it is received
+        log.error("Message could not be decoded, messageId={}", message.messageId(), e);
+        deadLetter(message, e);
         continue;
       }
 
       res.add(new AcknowledgeableTypedEvent(
           typedEvent,
-          () -> sqsClient.deleteMessage(DeleteMessageRequest.builder()
-              .queueUrl(queueUrl)
-              .receiptHandle(message.receiptHandle())
-              .build())));
+          message.receiptHandle(),
+          receiveCount(message),
+          () -> sqsAcknowledger.acknowledge(message.receiptHandle())));
     }
 
     return res;
   }
 
-  private TypedEvent toTypedEvent(Message message) throws JsonProcessingException {
-    TypedEvent typedEvent;
-
-    TypeReference<Map<String, Object>> typeRef = new TypeReference<>() {
-    };
-    Map<String, Object> body = om.readValue(message.body(), typeRef);
-    String typeName = body.get("detail-type").toString();
-    if (UserUpserted.class.getTypeName().equals(typeName)) {
-      UserUpserted userUpserted = om.convertValue(body.get("detail"), UserUpserted.class);
-      typedEvent = new TypedUserUpserted(userUpserted);
-    } else if (LateFeeVerified.class.getTypeName().equals(typeName)) {
-      LateFeeVerified lateFee = om.convertValue(body.get("detail"), LateFeeVerified.class);
-      typedEvent = new TypedLateFeeVerified(lateFee);
-    } else {
-      throw new BadRequestException("Unexpected message type for message=" + message);
+  private void deadLetter(Message message, Exception error) {
+    try {
+      deadLetterEventService.saveUndecodable(message.body(), receiveCount(message), error);
+    } catch (RuntimeException e) {
+      // Not deleted then: it will be received again once its visibility timeout expires
+      log.error("Message could not be saved as dead letter, messageId={}",
+          message.messageId(), e);
+      return;
     }
+    sqsAcknowledger.acknowledge(message.receiptHandle());
+  }
 
-    return typedEvent;
+  private static int receiveCount(Message message) {
+    String receiveCount = message.attributes().get(APPROXIMATE_RECEIVE_COUNT);
+    return receiveCount == null ? 1 : Integer.parseInt(receiveCount);
   }
 }
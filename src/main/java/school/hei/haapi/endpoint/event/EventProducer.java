@@ -5,7 +5,13 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
+import javax.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -13,7 +19,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.stereotype.Component;
 import school.hei.haapi.endpoint.event.model.TypedEvent;
 import school.hei.haapi.model.exception.ApiException;
-import school.hei.haapi.model.exception.BadRequestException;
+import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.eventbridge.EventBridgeClient;
 import software.amazon.awssdk.services.eventbridge.model.PutEventsRequest;
@@ -21,6 +27,8 @@ import software.amazon.awssdk.services.eventbridge.model.PutEventsRequestEntry;
 import software.amazon.awssdk.services.eventbridge.model.PutEventsResponse;
 import software.amazon.awssdk.services.eventbridge.model.PutEventsResultEntry;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.Executors.newFixedThreadPool;
 import static java.util.stream.Collectors.toUnmodifiableList;
 import static school.hei.haapi.model.exception.ApiException.ExceptionType.SERVER_EXCEPTION;
 
@@ -33,6 +41,10 @@ public class EventProducer implements Consumer<List<TypedEvent>> {
 
     private final Region region;
     private static final int MAX_PUT_EVENT_ENTRIES = 10;
+    // https://docs.aws.amazon.com/eventbridge/latest/userguide/eb-putevent-size.html
+    private static final int MAX_PUT_EVENTS_SIZE = 256 * 1024;
+    // Counted for each entry on top of its source, detail type and detail, e.g. its time
+    private static final int PUT_EVENTS_ENTRY_OVERHEAD = 256;
 
     public Conf(@Value("${aws.region}") String region) {
       this.region = Region.of(region);
@@ -47,85 +59,176 @@ public class EventProducer implements Consumer<List<TypedEvent>> {
   private final EventBridgeClient eventBridgeClient;
   private final String eventBusName;
   private final ObjectMapper om;
+  private final ExecutorService executor;
+  private final int maxAttempts;
+  private final long retryBaseDelayInMillis;
   private static final String EVENT_SOURCE = "school.hei.haapi";
 
   public EventProducer(
       EventBridgeClient eventBridgeClient,
       @Value("${aws.eventBridge.bus}") String eventBusName,
+      @Value("${aws.eventBridge.maxConcurrentRequests}") int maxConcurrentRequests,
+      @Value("${aws.eventBridge.maxAttempts}") int maxAttempts,
+      @Value("${aws.eventBridge.retryBaseDelayInMillis}") long retryBaseDelayInMillis,
       ObjectMapper om) {
     this.eventBridgeClient = eventBridgeClient;
     this.eventBusName = eventBusName;
     this.om = om;
+    this.executor = newFixedThreadPool(maxConcurrentRequests);
+    this.maxAttempts = maxAttempts;
+    this.retryBaseDelayInMillis = retryBaseDelayInMillis;
   }
 
   /**
    * Send events to EventBridge bus.
    *
    * @param events Events to publish to the configured event bus.
+   * @throws ApiException If some events could not be sent.
    */
   @Override
   public void accept(List<TypedEvent> events) {
-    log.info(
-        // TODO(PII): Personal Identifiable Information can be leaked here
-        "Sending events={}", events);
-    PutEventsResponse response = sendRequest(events);
-    checkResponse(response);
+    // Payloads are not logged, as they can contain personal information
+    log.info("Sending {} events", events.size());
+    List<TypedEvent> failedEvents = publish(events);
+    if (!failedEvents.isEmpty()) {
+      throw new ApiException(SERVER_EXCEPTION,
+          failedEvents.size() + " of " + events.size() + " events could not be sent");
+    }
   }
 
-  private PutEventsResponse sendRequest(List<TypedEvent> events) {
-    checkPayload(events);
-    PutEventsRequest eventsRequest = toEventsRequest(events);
-    return eventBridgeClient.putEvents(eventsRequest);
+  /**
+   * Send events to EventBridge bus, packed into as few PutEvents requests as possible.
+   * Requests are sent in parallel, within the limit of the configured max concurrent requests.
+   * Events that could not be sent are retried with an exponential backoff,
+   * up to the configured max attempts.
+   * Events too large to ever be sent are not sent at all.
+   *
+   * @param events Events to publish to the configured event bus.
+   * @return Events that could not be sent.
+   */
+  public List<TypedEvent> publish(List<TypedEvent> events) {
+    // Events are serialized once, retries reuse their entries
+    List<EventEntry> entries = new ArrayList<>();
+    List<TypedEvent> tooLargeEvents = new ArrayList<>();
+    for (TypedEvent event : events) {
+      EventEntry entry = toEventEntry(event);
+      if (entry.getSize() > Conf.MAX_PUT_EVENTS_SIZE) {
+        log.error("Event of type={} is too large to be sent, size={}",
+            event.getTypeName(), entry.getSize());
+        tooLargeEvents.add(event);
+      } else {
+        entries.add(entry);
+      }
+    }
+    for (int attempt = 1; !entries.isEmpty(); attempt++) {
+      entries = sendConcurrently(entries);
+      if (entries.isEmpty() || attempt == maxAttempts || !backOff(attempt)) {
+        break;
+      }
+      log.warn("Retrying {} events, attempt={}", entries.size(), attempt + 1);
+    }
+    return Stream.concat(tooLargeEvents.stream(), entries.stream().map(EventEntry::getEvent))
+        .collect(toUnmodifiableList());
   }
 
-  private PutEventsRequest toEventsRequest(List<TypedEvent> events) {
-    return PutEventsRequest.builder()
-            .entries(events.stream().map(this::toRequestEntry).collect(toUnmodifiableList()))
-            .build();
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdown();
   }
 
-  private PutEventsRequestEntry toRequestEntry(TypedEvent typedEvent) {
+  private List<EventEntry> sendConcurrently(List<EventEntry> entries) {
+    List<CompletableFuture<List<EventEntry>>> sentBatches = toBatches(entries).stream()
+        .map(batch -> CompletableFuture.supplyAsync(() -> sendBatch(batch), executor))
+        .collect(toUnmodifiableList());
+    return sentBatches.stream()
+        .map(CompletableFuture::join)
+        .flatMap(List::stream)
+        .collect(toUnmodifiableList());
+  }
+
+  private boolean backOff(int attempt) {
     try {
-      String eventAsString = om.writeValueAsString(typedEvent.getPayload());
-      return PutEventsRequestEntry.builder()
-          .source(EVENT_SOURCE)
-          .detailType(typedEvent.getTypeName())
-          .detail(eventAsString)
-          .eventBusName(eventBusName)
-          .build();
-    } catch (JsonProcessingException e) {
-      throw new ApiException(SERVER_EXCEPTION, e);
+      Thread.sleep(retryBaseDelayInMillis << (attempt - 1));
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
     }
   }
 
-  private void checkResponse(PutEventsResponse response) {
-    List<PutEventsResultEntry> failedEntries = new ArrayList<>();
-    List<PutEventsResultEntry> successfulEntries = new ArrayList<>();
+  private List<EventEntry> sendBatch(List<EventEntry> batch) {
+    PutEventsRequest eventsRequest = PutEventsRequest.builder()
+        .entries(batch.stream().map(EventEntry::getRequestEntry).collect(toUnmodifiableList()))
+        .build();
+    PutEventsResponse response;
+    try {
+      response = eventBridgeClient.putEvents(eventsRequest);
+    } catch (SdkException e) {
+      log.error("Batch of {} events could not be sent", batch.size(), e);
+      return batch;
+    }
 
-    for (PutEventsResultEntry resultEntry : response.entries()) {
+    // Result entries are in the same order as the request entries
+    List<EventEntry> failedEntries = new ArrayList<>();
+    List<PutEventsResultEntry> resultEntries = response.entries();
+    for (int i = 0; i < resultEntries.size() && i < batch.size(); i++) {
+      PutEventsResultEntry resultEntry = resultEntries.get(i);
       if (resultEntry.eventId() == null) {
-        failedEntries.add(resultEntry);
+        log.error("Event was not successfully sent: {}", resultEntry);
+        failedEntries.add(batch.get(i));
       }
-      successfulEntries.add(resultEntry);
     }
+    return failedEntries;
+  }
 
-    if (!failedEntries.isEmpty()) {
-      log.error("Following events were not successfully sent: {}", failedEntries);
+  private List<List<EventEntry>> toBatches(List<EventEntry> entries) {
+    List<List<EventEntry>> batches = new ArrayList<>();
+    List<EventEntry> batch = new ArrayList<>();
+    int batchSize = 0;
+    for (EventEntry entry : entries) {
+      if (batch.size() == Conf.MAX_PUT_EVENT_ENTRIES
+          || batchSize + entry.getSize() > Conf.MAX_PUT_EVENTS_SIZE) {
+        batches.add(batch);
+        batch = new ArrayList<>();
+        batchSize = 0;
+      }
+      batch.add(entry);
+      batchSize += entry.getSize();
     }
-    if (!successfulEntries.isEmpty()) {
-      log.info("Following events were successfully sent: {}", successfulEntries);
+    if (!batch.isEmpty()) {
+      batches.add(batch);
     }
+    return batches;
   }
 
-  private boolean isPayloadValid(List<TypedEvent> events) {
-    PutEventsRequest eventsRequest = toEventsRequest(events);
-    return eventsRequest.entries().size() <= Conf.MAX_PUT_EVENT_ENTRIES;
+  private EventEntry toEventEntry(TypedEvent typedEvent) {
+    PutEventsRequestEntry requestEntry = toRequestEntry(typedEvent);
+    int size = Conf.PUT_EVENTS_ENTRY_OVERHEAD
+        + requestEntry.source().getBytes(UTF_8).length
+        + requestEntry.detailType().getBytes(UTF_8).length
+        + requestEntry.detail().getBytes(UTF_8).length;
+    return new EventEntry(typedEvent, requestEntry, size);
   }
 
-  private void checkPayload(List<TypedEvent> events) {
-    if (!isPayloadValid(events)) {
-      throw new BadRequestException(
-              "Request entries must be <= " + Conf.MAX_PUT_EVENT_ENTRIES);
+  private PutEventsRequestEntry toRequestEntry(TypedEvent typedEvent) {
+    try {
+      String eventAsString = om.writeValueAsString(typedEvent.getPayload());
+      return PutEventsRequestEntry.builder()
+          .source(EVENT_SOURCE)
+          .detailType(typedEvent.getTypeName())
+          .detail(eventAsString)
+          .eventBusName(eventBusName)
+          .build();
+    } catch (JsonProcessingException e) {
+      throw new ApiException(SERVER_EXCEPTION, e);
     }
   }
+
+  @AllArgsConstructor
+  @Getter
+  private static class EventEntry {
+    private final TypedEvent event;
+    private final PutEventsRequestEntry requestEntry;
+    private final int size;
+  }
 }
@@ -1,33 +1,50 @@
 package school.hei.haapi.endpoint.event;
 
 import java.io.Serializable;
+import java.util.Map;
 import java.util.function.Consumer;
-import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import school.hei.haapi.endpoint.event.model.TypedEvent;
 import school.hei.haapi.endpoint.event.model.gen.LateFeeVerified;
+import school.hei.haapi.endpoint.event.model.gen.LateFeesDigestVerified;
 import school.hei.haapi.endpoint.event.model.gen.UserUpserted;
 import school.hei.haapi.service.LateFeeService;
 import school.hei.haapi.service.UserUpsertedService;
 
+/*
+ * Dispatches events to the handler of their type.
+ * Isolation between types, i.e. their concurrency limits and priorities, is done upstream
+ * by the lanes of EventConsumer, which hold waiting events without taking a thread.
+ * */
 @Component
-@AllArgsConstructor
 @Slf4j
 public class EventServiceInvoker implements Consumer<TypedEvent> {
 
-  private final UserUpsertedService userUpsertedService;
-  private final LateFeeService lateFeeService;
+  /* Handlers by event type. A new type only needs to be registered here. */
+  private final Map<String, Consumer<Serializable>> handlersByTypeName;
+
+  public EventServiceInvoker(
+      UserUpsertedService userUpsertedService, LateFeeService lateFeeService) {
+    this.handlersByTypeName = Map.of(
+        UserUpserted.class.getTypeName(), handler(UserUpserted.class, userUpsertedService),
+        LateFeeVerified.class.getTypeName(), handler(LateFeeVerified.class, lateFeeService),
+        LateFeesDigestVerified.class.getTypeName(),
+        handler(LateFeesDigestVerified.class, lateFeeService::sendDigest));
+  }
+
+  private static <T extends Serializable> Consumer<Serializable> handler(
+      Class<T> payloadClass, Consumer<T> service) {
+    return payload -> service.accept(payloadClass.cast(payload));
+  }
 
   @Override
   public void accept(TypedEvent typedEvent) {
-    Serializable payload = typedEvent.getPayload();
-    if (UserUpserted.class.getTypeName().equals(typedEvent.getTypeName())) {
-      userUpsertedService.accept((UserUpserted) payload);
-    } else if (LateFeeVerified.class.getTypeName().equals(typedEvent.getTypeName())) {
-      lateFeeService.accept((LateFeeVerified) payload);
-    } else {
+    Consumer<Serializable> handler = handlersByTypeName.get(typedEvent.getTypeName());
+    if (handler == null) {
       log.error("Unexpected type for event={}", typedEvent);
+      return;
     }
+    handler.accept(typedEvent.getPayload());
   }
 }
@@ -0,0 +1,128 @@
+package school.hei.haapi.endpoint.event;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageRequest;
+
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+
+/*
+ * Handled messages are deleted from the queue by batches of up to 10,
+ * so that each of them does not cost its own call to SQS.
+ * A batch is sent as soon as it is full, or once it has waited for the linger time.
+ * */
+@Component
+@Slf4j
+public class SqsAcknowledger {
+
+  private static final int MAX_BATCH_SIZE = 10; // MUST be <= 10
+  private final String queueUrl;
+  private final SqsClient sqsClient;
+  private final BlockingQueue<String> receiptHandles = new LinkedBlockingQueue<>();
+  private final ScheduledExecutorService flusher = newSingleThreadScheduledExecutor();
+  private volatile boolean closed;
+
+  public SqsAcknowledger(
+      @Value("${aws.sqs.queueUrl}") String queueUrl,
+      SqsClient sqsClient,
+      @Value("${aws.sqs.ack.lingerInMillis}") long lingerInMillis) {
+    this.queueUrl = queueUrl;
+    this.sqsClient = sqsClient;
+    flusher.scheduleWithFixedDelay(
+        this::flushAll, lingerInMillis, lingerInMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Deletes the message from the queue, with the next batch.
+   *
+   * @param receiptHandle Receipt handle of the received message
+   */
+  public void acknowledge(String receiptHandle) {
+    if (closed) {
+      delete(receiptHandle);
+      return;
+    }
+    receiptHandles.add(receiptHandle);
+    if (receiptHandles.size() >= MAX_BATCH_SIZE) {
+      flusher.execute(this::flushFullBatches);
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() throws InterruptedException {
+    closed = true;
+    flusher.shutdown();
+    flusher.awaitTermination(10, TimeUnit.SECONDS);
+    flushAll();
+  }
+
+  private void flushFullBatches() {
+    while (receiptHandles.size() >= MAX_BATCH_SIZE) {
+      flushBatch();
+    }
+  }
+
+  private void flushAll() {
+    while (!receiptHandles.isEmpty()) {
+      flushBatch();
+    }
+  }
+
+  private void flushBatch() {
+    List<String> batch = new ArrayList<>(MAX_BATCH_SIZE);
+    receiptHandles.drainTo(batch, MAX_BATCH_SIZE);
+    if (batch.isEmpty()) {
+      return;
+    }
+    List<DeleteMessageBatchRequestEntry> entries = new ArrayList<>();
+    for (int i = 0; i < batch.size(); i++) {
+      entries.add(DeleteMessageBatchRequestEntry.builder()
+          .id(String.valueOf(i))
+          .receiptHandle(batch.get(i))
+          .build());
+    }
+
+    DeleteMessageBatchResponse response;
+    try {
+      response = sqsClient.deleteMessageBatch(DeleteMessageBatchRequest.builder()
+          .queueUrl(queueUrl)
+          .entries(entries)
+          .build());
+    } catch (SdkException e) {
+      log.warn("Batch of {} messages could not be deleted, deleting them one by one",
+          batch.size(), e);
+      batch.forEach(this::delete);
+      return;
+    }
+    for (BatchResultErrorEntry failed : response.failed()) {
+      log.warn("Message could not be deleted with its batch: {}", failed);
+      delete(batch.get(Integer.parseInt(failed.id())));
+    }
+  }
+
+  private void delete(String receiptHandle) {
+    try {
+      sqsClient.deleteMessage(DeleteMessageRequest.builder()
+          .queueUrl(queueUrl)
+          .receiptHandle(receiptHandle)
+          .build());
+    } catch (SdkException e) {
+      // The message will be received again once its visibility timeout expires
+      log.error("Message could not be deleted, receiptHandle={}", receiptHandle, e);
+    }
+  }
+}
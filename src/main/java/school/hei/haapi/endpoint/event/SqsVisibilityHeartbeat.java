@@ -0,0 +1,173 @@
+package school.hei.haapi.endpoint.event;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchResponse;
+
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+
+/*
+ * Messages being handled are kept invisible to other consumers, by extending their visibility
+ * timeout by batches every heartbeat interval, so that slow handlers do not get them redelivered.
+ * Messages handled for longer than the processing deadline are abandoned: their visibility
+ * is no longer extended, and they will be received again once it expires. Their handler is told
+ * so that it stops and does not acknowledge them, as they may be handled again in the meantime.
+ * Messages are thus handled at least once: the deadline must exceed the longest handling.
+ * */
+@Component
+@Slf4j
+public class SqsVisibilityHeartbeat {
+
+  private static final int MAX_BATCH_SIZE = 10; // MUST be <= 10
+  private final String queueUrl;
+  private final SqsClient sqsClient;
+  private final Duration visibilityTimeout;
+  private final Duration processingDeadline;
+  private final Clock clock;
+  private final Map<String, Registration> registrationsByReceiptHandle = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService heartbeat = newSingleThreadScheduledExecutor();
+
+  public SqsVisibilityHeartbeat(
+      @Value("${aws.sqs.queueUrl}") String queueUrl,
+      SqsClient sqsClient,
+      @Value("${aws.sqs.visibilityTimeoutInSeconds}") long visibilityTimeoutInSeconds,
+      @Value("${aws.sqs.heartbeatIntervalInSeconds}") long heartbeatIntervalInSeconds,
+      @Value("${aws.sqs.consumer.processingDeadlineInSeconds}")
+      long processingDeadlineInSeconds) {
+    this(queueUrl, sqsClient,
+        Duration.ofSeconds(visibilityTimeoutInSeconds),
+        Duration.ofSeconds(heartbeatIntervalInSeconds),
+        Duration.ofSeconds(processingDeadlineInSeconds),
+        Clock.systemUTC());
+  }
+
+  SqsVisibilityHeartbeat(
+      String queueUrl, SqsClient sqsClient, Duration visibilityTimeout,
+      Duration heartbeatInterval, Duration processingDeadline, Clock clock) {
+    this.queueUrl = queueUrl;
+    this.sqsClient = sqsClient;
+    this.visibilityTimeout = visibilityTimeout;
+    this.processingDeadline = processingDeadline;
+    this.clock = clock;
+    heartbeat.scheduleWithFixedDelay(
+        this::beat,
+        heartbeatInterval.toMillis(), heartbeatInterval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  public Duration getVisibilityTimeout() {
+    return visibilityTimeout;
+  }
+
+  /* onAbandoned is run by the heartbeat when the message exceeds its processing deadline */
+  public void register(String receiptHandle, Runnable onAbandoned) {
+    registrationsByReceiptHandle.put(
+        receiptHandle,
+        new Registration(clock.instant().plus(processingDeadline), onAbandoned));
+  }
+
+  public void unregister(String receiptHandle) {
+    registrationsByReceiptHandle.remove(receiptHandle);
+  }
+
+  public int getRegisteredCount() {
+    return registrationsByReceiptHandle.size();
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    heartbeat.shutdownNow();
+  }
+
+  private void beat() {
+    try {
+      extendVisibility();
+    } catch (RuntimeException e) {
+      // An exception would cancel all the next heartbeats
+      log.error("Heartbeat failed", e);
+    }
+  }
+
+  void extendVisibility() {
+    Instant now = clock.instant();
+    List<String> receiptHandles = new ArrayList<>();
+    registrationsByReceiptHandle.forEach((receiptHandle, registration) -> {
+      if (now.isAfter(registration.getDeadline())) {
+        log.warn("Message exceeded its processing deadline and is abandoned, receiptHandle={}",
+            receiptHandle);
+        if (registrationsByReceiptHandle.remove(receiptHandle, registration)) {
+          abandon(registration);
+        }
+      } else {
+        receiptHandles.add(receiptHandle);
+      }
+    });
+    for (int from = 0; from < receiptHandles.size(); from += MAX_BATCH_SIZE) {
+      extendVisibility(receiptHandles.subList(
+          from, Math.min(from + MAX_BATCH_SIZE, receiptHandles.size())));
+    }
+  }
+
+  private void extendVisibility(List<String> batch) {
+    List<ChangeMessageVisibilityBatchRequestEntry> entries = new ArrayList<>();
+    for (int i = 0; i < batch.size(); i++) {
+      entries.add(ChangeMessageVisibilityBatchRequestEntry.builder()
+          .id(String.valueOf(i))
+          .receiptHandle(batch.get(i))
+          .visibilityTimeout((int) visibilityTimeout.toSeconds())
+          .build());
+    }
+    ChangeMessageVisibilityBatchResponse response;
+    try {
+      response = sqsClient.changeMessageVisibilityBatch(
+          ChangeMessageVisibilityBatchRequest.builder()
+              .queueUrl(queueUrl)
+              .entries(entries)
+              .build());
+    } catch (SdkException e) {
+      // Retried by the next heartbeat, which comes before the visibility timeout expires
+      log.warn("Visibility of {} messages could not be extended", batch.size(), e);
+      return;
+    }
+    for (BatchResultErrorEntry failed : response.failed()) {
+      log.warn("Visibility could not be extended: {}", failed);
+      if (!Boolean.TRUE.equals(failed.senderFault())) {
+        continue;
+      }
+      // e.g. the receipt handle expired: extending it again would fail as well
+      registrationsByReceiptHandle.remove(batch.get(Integer.parseInt(failed.id())));
+    }
+  }
+
+  private static void abandon(Registration registration) {
+    try {
+      registration.getOnAbandoned().run();
+    } catch (RuntimeException e) {
+      log.error("Handler of abandoned message could not be stopped", e);
+    }
+  }
+
+  @AllArgsConstructor
+  @Getter
+  private static class Registration {
+    private final Instant deadline;
+    private final Runnable onAbandoned;
+  }
+}
@@ -0,0 +1,118 @@
+package school.hei.haapi.endpoint.event;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import lombok.AllArgsConstructor;
+import org.springframework.stereotype.Component;
+import school.hei.haapi.endpoint.event.model.TypedCompactLateFeeVerified;
+import school.hei.haapi.endpoint.event.model.TypedCompactLateFeesDigestVerified;
+import school.hei.haapi.endpoint.event.model.TypedEvent;
+import school.hei.haapi.endpoint.event.model.TypedLateFeeVerified;
+import school.hei.haapi.endpoint.event.model.TypedUserUpserted;
+import school.hei.haapi.endpoint.event.model.gen.CompactLateFeeVerified;
+import school.hei.haapi.endpoint.event.model.gen.CompactLateFeesDigestVerified;
+import school.hei.haapi.endpoint.event.model.gen.LateFeeVerified;
+import school.hei.haapi.endpoint.event.model.gen.UserUpserted;
+import school.hei.haapi.model.exception.BadRequestException;
+
+import static java.util.stream.Collectors.toUnmodifiableMap;
+
+/*
+ * Decodes the EventBridge envelopes received from SQS in a single pass:
+ * the envelope is streamed, and its detail is bound straight to the class of its detail-type.
+ * */
+@Component
+public class TypedEventDecoder {
+
+  /* Events that can be received. A new type only needs to be registered here. */
+  private static final List<EventType<?>> EVENT_TYPES = List.of(
+      new EventType<>(UserUpserted.class, TypedUserUpserted::new),
+      new EventType<>(LateFeeVerified.class, TypedLateFeeVerified::new),
+      new EventType<>(CompactLateFeeVerified.class, TypedCompactLateFeeVerified::new),
+      new EventType<>(
+          CompactLateFeesDigestVerified.class, TypedCompactLateFeesDigestVerified::new));
+
+  private static final String DETAIL_TYPE_FIELD = "detail-type";
+  private static final String DETAIL_FIELD = "detail";
+  private final JsonFactory jsonFactory;
+  private final Map<String, Decoder> decodersByTypeName;
+
+  public TypedEventDecoder(ObjectMapper om) {
+    this.jsonFactory = om.getFactory();
+    this.decodersByTypeName = EVENT_TYPES.stream()
+        .collect(toUnmodifiableMap(
+            eventType -> eventType.getPayloadClass().getTypeName(),
+            eventType -> eventType.toDecoder(om)));
+  }
+
+  public TypedEvent decode(String body) throws IOException {
+    String typeName = null;
+    TokenBuffer bufferedDetail = null;
+    try (JsonParser parser = jsonFactory.createParser(body)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new BadRequestException("Event must be a JSON object");
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        parser.nextToken();
+        if (DETAIL_TYPE_FIELD.equals(field)) {
+          typeName = parser.getValueAsString();
+        } else if (DETAIL_FIELD.equals(field)) {
+          if (typeName != null) {
+            return decoder(typeName).decode(parser);
+          }
+          // Unusual order: the detail is kept until its type is known
+          bufferedDetail = new TokenBuffer(parser);
+          bufferedDetail.copyCurrentStructure(parser);
+        } else {
+          parser.skipChildren();
+        }
+      }
+    }
+    if (typeName == null || bufferedDetail == null) {
+      throw new BadRequestException("Event must have a detail-type and a detail");
+    }
+    try (JsonParser detailParser = bufferedDetail.asParser()) {
+      detailParser.nextToken();
+      return decoder(typeName).decode(detailParser);
+    }
+  }
+
+  private Decoder decoder(String typeName) {
+    Decoder decoder = decodersByTypeName.get(typeName);
+    if (decoder == null) {
+      throw new BadRequestException("Unexpected event type: " + typeName);
+    }
+    return decoder;
+  }
+
+  @AllArgsConstructor
+  private static class EventType<T extends Serializable> {
+    private final Class<T> payloadClass;
+    private final Function<T, TypedEvent> toTypedEvent;
+
+    Class<T> getPayloadClass() {
+      return payloadClass;
+    }
+
+    Decoder toDecoder(ObjectMapper om) {
+      // ObjectReaders are immutable and thread-safe: each type resolves its deserializer once
+      ObjectReader reader = om.readerFor(payloadClass);
+      return parser -> toTypedEvent.apply(reader.readValue(parser));
+    }
+  }
+
+  @FunctionalInterface
+  private interface Decoder {
+    TypedEvent decode(JsonParser parser) throws IOException;
+  }
+}
@@ -0,0 +1,59 @@
+package school.hei.haapi.endpoint.event.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import java.io.IOException;
+import java.io.Serializable;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Event whose payload is already serialized, e.g. read from the outbox.
+ * The payload is written as is, instead of being serialized again as a JSON string.
+ */
+@ToString
+public class RawTypedEvent implements TypedEvent {
+
+  @Getter
+  private final String id;
+  private final String typeName;
+  private final RawJson payload;
+
+  public RawTypedEvent(String id, String typeName, String payload) {
+    this.id = id;
+    this.typeName = typeName;
+    this.payload = new RawJson(payload);
+  }
+
+  @Override
+  public String getTypeName() {
+    return typeName;
+  }
+
+  @Override
+  public Serializable getPayload() {
+    return payload;
+  }
+
+  @AllArgsConstructor
+  @ToString
+  private static class RawJson extends JsonSerializable.Base implements Serializable {
+    private final String json;
+
+    @Override
+    public void serialize(JsonGenerator generator, SerializerProvider provider)
+        throws IOException {
+      generator.writeRawValue(json);
+    }
+
+    @Override
+    public void serializeWithType(
+        JsonGenerator generator, SerializerProvider provider, TypeSerializer typeSerializer)
+        throws IOException {
+      serialize(generator, provider);
+    }
+  }
+}
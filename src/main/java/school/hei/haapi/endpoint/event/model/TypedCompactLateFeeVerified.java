@@ -0,0 +1,23 @@
+package school.hei.haapi.endpoint.event.model;
+
+import java.io.Serializable;
+import lombok.AllArgsConstructor;
+import lombok.ToString;
+import school.hei.haapi.endpoint.event.model.gen.CompactLateFeeVerified;
+
+@AllArgsConstructor
+@ToString
+public class TypedCompactLateFeeVerified implements TypedEvent {
+
+  private final CompactLateFeeVerified compactLateFeeVerified;
+
+  @Override
+  public String getTypeName() {
+    return CompactLateFeeVerified.class.getTypeName();
+  }
+
+  @Override
+  public Serializable getPayload() {
+    return compactLateFeeVerified;
+  }
+}
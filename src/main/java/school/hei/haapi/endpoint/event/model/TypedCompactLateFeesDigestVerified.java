@@ -0,0 +1,23 @@
+package school.hei.haapi.endpoint.event.model;
+
+import java.io.Serializable;
+import lombok.AllArgsConstructor;
+import lombok.ToString;
+import school.hei.haapi.endpoint.event.model.gen.CompactLateFeesDigestVerified;
+
+@AllArgsConstructor
+@ToString
+public class TypedCompactLateFeesDigestVerified implements TypedEvent {
+
+  private final CompactLateFeesDigestVerified compactLateFeesDigestVerified;
+
+  @Override
+  public String getTypeName() {
+    return CompactLateFeesDigestVerified.class.getTypeName();
+  }
+
+  @Override
+  public Serializable getPayload() {
+    return compactLateFeesDigestVerified;
+  }
+}
@@ -0,0 +1,23 @@
+package school.hei.haapi.endpoint.event.model;
+
+import java.io.Serializable;
+import lombok.AllArgsConstructor;
+import lombok.ToString;
+import school.hei.haapi.endpoint.event.model.gen.LateFeesDigestVerified;
+
+@AllArgsConstructor
+@ToString
+public class TypedLateFeesDigestVerified implements TypedEvent {
+
+  private final LateFeesDigestVerified lateFeesDigestVerified;
+
+  @Override
+  public String getTypeName() {
+    return LateFeesDigestVerified.class.getTypeName();
+  }
+
+  @Override
+  public Serializable getPayload() {
+    return lateFeesDigestVerified;
+  }
+}
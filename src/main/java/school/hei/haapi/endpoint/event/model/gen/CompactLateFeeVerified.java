@@ -0,0 +1,29 @@
+package school.hei.haapi.endpoint.event.model.gen;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.io.Serializable;
+import javax.annotation.processing.Generated;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+@Generated("EventBridge")
+@AllArgsConstructor
+@NoArgsConstructor
+@EqualsAndHashCode
+@Builder
+@ToString
+@Data
+public class CompactLateFeeVerified implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  @JsonProperty("fee_id")
+  private String feeId;
+
+  @JsonProperty("student_id")
+  private String studentId;
+
+}
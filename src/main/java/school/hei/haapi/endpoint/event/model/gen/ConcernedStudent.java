@@ -0,0 +1,36 @@
+package school.hei.haapi.endpoint.event.model.gen;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import java.io.Serializable;
+import javax.annotation.processing.Generated;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/*
+ * Only what late fee emails need of a student.
+ * Unknown properties are ignored: events published before embedded the whole User.
+ * */
+@Generated("EventBridge")
+@AllArgsConstructor
+@NoArgsConstructor
+@EqualsAndHashCode
+@Builder
+@ToString
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ConcernedStudent implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private String ref;
+
+  private String firstName;
+
+  private String lastName;
+
+  private String email;
+
+}
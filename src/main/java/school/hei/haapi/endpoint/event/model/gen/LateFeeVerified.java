@@ -10,7 +10,6 @@ import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
-import school.hei.haapi.model.User;
 
 import static school.hei.haapi.endpoint.rest.model.Fee.TypeEnum;
 
@@ -25,7 +24,7 @@ public class LateFeeVerified implements Serializable {
   private static final long serialVersionUID = 1L;
 
   @JsonProperty("concerned_student")
-  private User student;
+  private ConcernedStudent student;
 
   @JsonProperty("type")
   private TypeEnum type;
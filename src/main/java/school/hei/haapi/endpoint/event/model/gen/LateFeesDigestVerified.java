@@ -0,0 +1,58 @@
+package school.hei.haapi.endpoint.event.model.gen;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.List;
+import javax.annotation.processing.Generated;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import static school.hei.haapi.endpoint.rest.model.Fee.TypeEnum;
+
+@Generated("EventBridge")
+@AllArgsConstructor
+@NoArgsConstructor
+@EqualsAndHashCode
+@Builder
+@ToString
+@Data
+public class LateFeesDigestVerified implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  @JsonProperty("concerned_student")
+  private ConcernedStudent student;
+
+  @JsonProperty("late_fees")
+  private List<LateFee> lateFees;
+
+  @JsonProperty("total_remaining_amount")
+  private int totalRemainingAmount;
+
+  @Generated("EventBridge")
+  @AllArgsConstructor
+  @NoArgsConstructor
+  @EqualsAndHashCode
+  @Builder
+  @ToString
+  @Data
+  public static class LateFee implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @JsonProperty("type")
+    private TypeEnum type;
+
+    @JsonProperty("remaining_amount")
+    private int remainingAmount;
+
+    @JsonProperty("due_datetime")
+    private Instant dueDatetime;
+
+    @JsonProperty("comment")
+    private String comment;
+  }
+}
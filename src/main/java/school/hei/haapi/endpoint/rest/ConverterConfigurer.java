@@ -3,6 +3,7 @@ package school.hei.haapi.endpoint.rest;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.format.FormatterRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import school.hei.haapi.endpoint.rest.converter.FeeCursorConverter;
 import school.hei.haapi.endpoint.rest.converter.PageConverter;
 import school.hei.haapi.endpoint.rest.converter.PageSizeConverter;
 
@@ -13,5 +14,6 @@ public class ConverterConfigurer implements WebMvcConfigurer {
   public void addFormatters(FormatterRegistry registry) {
     registry.addConverter(new PageConverter());
     registry.addConverter(new PageSizeConverter());
+    registry.addConverter(new FeeCursorConverter());
   }
 }
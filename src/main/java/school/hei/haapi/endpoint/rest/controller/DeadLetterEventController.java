@@ -0,0 +1,37 @@
+package school.hei.haapi.endpoint.rest.controller;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import school.hei.haapi.endpoint.rest.mapper.DeadLetterEventMapper;
+import school.hei.haapi.endpoint.rest.model.DeadLetterEvent;
+import school.hei.haapi.model.BoundedPageSize;
+import school.hei.haapi.model.PageFromOne;
+import school.hei.haapi.service.DeadLetterEventService;
+
+import static java.util.stream.Collectors.toUnmodifiableList;
+
+@RestController
+@AllArgsConstructor
+public class DeadLetterEventController {
+
+  private final DeadLetterEventService deadLetterEventService;
+  private final DeadLetterEventMapper deadLetterEventMapper;
+
+  @GetMapping("/dead_letter_events")
+  public List<DeadLetterEvent> getDeadLetterEvents(
+      @RequestParam PageFromOne page, @RequestParam("page_size") BoundedPageSize pageSize) {
+    return deadLetterEventService.getAll(page, pageSize).stream()
+        .map(deadLetterEventMapper::toRestDeadLetterEvent)
+        .collect(toUnmodifiableList());
+  }
+
+  @PostMapping("/dead_letter_events/{id}/replay")
+  public DeadLetterEvent replayDeadLetterEvent(@PathVariable String id) {
+    return deadLetterEventMapper.toRestDeadLetterEvent(deadLetterEventService.replay(id));
+  }
+}
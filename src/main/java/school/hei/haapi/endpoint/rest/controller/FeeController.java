@@ -2,6 +2,7 @@ package school.hei.haapi.endpoint.rest.controller;
 
 import java.util.List;
 import lombok.AllArgsConstructor;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -12,7 +13,9 @@ import school.hei.haapi.endpoint.rest.mapper.FeeMapper;
 import school.hei.haapi.endpoint.rest.model.CreateFee;
 import school.hei.haapi.endpoint.rest.model.Fee;
 import school.hei.haapi.model.BoundedPageSize;
+import school.hei.haapi.model.FeeCursor;
 import school.hei.haapi.model.PageFromOne;
+import school.hei.haapi.model.exception.BadRequestException;
 import school.hei.haapi.service.FeeService;
 
 import static java.util.stream.Collectors.toUnmodifiableList;
@@ -21,6 +24,8 @@ import static java.util.stream.Collectors.toUnmodifiableList;
 @AllArgsConstructor
 public class FeeController {
 
+  public static final String NEXT_CURSOR_HEADER = "Next-Cursor";
+
   private final FeeService feeService;
   private final FeeMapper feeMapper;
 
@@ -41,23 +46,46 @@ public class FeeController {
   }
 
   @GetMapping("/students/{studentId}/fees")
-  public List<Fee> getFeesByStudentId(
+  public ResponseEntity<List<Fee>> getFeesByStudentId(
       @PathVariable String studentId,
-      @RequestParam PageFromOne page,
+      @RequestParam(required = false) PageFromOne page,
       @RequestParam("page_size") BoundedPageSize pageSize,
-      @RequestParam(required = false) Fee.StatusEnum status) {
-    return feeService.getFeesByStudentId(studentId, page, pageSize, status).stream()
-        .map(feeMapper::toRestFee)
-        .collect(toUnmodifiableList());
+      @RequestParam(required = false) Fee.StatusEnum status,
+      @RequestParam(required = false) FeeCursor cursor) {
+    List<school.hei.haapi.model.Fee> fees = cursor == null
+        ? feeService.getFeesByStudentId(studentId, requirePage(page), pageSize, status)
+        : feeService.getFeesByStudentId(studentId, cursor, pageSize, status);
+    return toRestFeesPage(fees, pageSize);
   }
 
   @GetMapping("/fees")
-  public List<Fee> getFees(
-      @RequestParam PageFromOne page,
+  public ResponseEntity<List<Fee>> getFees(
+      @RequestParam(required = false) PageFromOne page,
       @RequestParam("page_size") BoundedPageSize pageSize,
-      @RequestParam(required = false) Fee.StatusEnum status) {
-    return feeService.getFees(page, pageSize, status).stream()
+      @RequestParam(required = false) Fee.StatusEnum status,
+      @RequestParam(required = false) FeeCursor cursor) {
+    List<school.hei.haapi.model.Fee> fees = cursor == null
+        ? feeService.getFees(requirePage(page), pageSize, status)
+        : feeService.getFees(cursor, pageSize, status);
+    return toRestFeesPage(fees, pageSize);
+  }
+
+  private PageFromOne requirePage(PageFromOne page) {
+    if (page == null) {
+      throw new BadRequestException("page is mandatory when no cursor is provided");
+    }
+    return page;
+  }
+
+  private ResponseEntity<List<Fee>> toRestFeesPage(
+      List<school.hei.haapi.model.Fee> fees, BoundedPageSize pageSize) {
+    ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+    if (!fees.isEmpty() && fees.size() == pageSize.getValue()) {
+      FeeCursor nextCursor = FeeCursor.after(fees.get(fees.size() - 1));
+      response.header(NEXT_CURSOR_HEADER, nextCursor.getValue());
+    }
+    return response.body(fees.stream()
         .map(feeMapper::toRestFee)
-        .collect(toUnmodifiableList());
+        .collect(toUnmodifiableList()));
   }
 }
@@ -1,18 +1,22 @@
 package school.hei.haapi.endpoint.rest.controller;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import java.util.List;
 import lombok.AllArgsConstructor;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import school.hei.haapi.endpoint.rest.mapper.PaymentMapper;
+import school.hei.haapi.endpoint.rest.model.CreateFeePayment;
 import school.hei.haapi.endpoint.rest.model.CreatePayment;
 import school.hei.haapi.endpoint.rest.model.Payment;
 import school.hei.haapi.model.BoundedPageSize;
 import school.hei.haapi.model.PageFromOne;
+import school.hei.haapi.service.IdempotencyService;
 import school.hei.haapi.service.PaymentService;
 
 import static java.util.stream.Collectors.toUnmodifiableList;
@@ -21,18 +25,63 @@ import static java.util.stream.Collectors.toUnmodifiableList;
 @AllArgsConstructor
 public class PaymentController {
 
+  public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+  private static final TypeReference<List<Payment>> PAYMENTS_TYPE = new TypeReference<>() {
+  };
+
   private final PaymentService paymentService;
   private final PaymentMapper paymentMapper;
+  private final IdempotencyService idempotencyService;
 
   @PostMapping("/students/{studentId}/fees/{feeId}/payments")
   public List<Payment> createPayments(
+      @PathVariable String studentId,
       @PathVariable String feeId,
+      @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
       @RequestBody List<CreatePayment> toCreate) {
-    return paymentService
-        .saveAll(paymentMapper.toDomainPayment(feeId, toCreate))
-        .stream()
-        .map(paymentMapper::toRestPayment)
-        .collect(toUnmodifiableList());
+    return idempotencyService.execute(
+        idempotencyKey,
+        "POST /students/" + studentId + "/fees/" + feeId + "/payments",
+        toCreate,
+        PAYMENTS_TYPE,
+        () -> paymentService
+            .saveAll(paymentMapper.toDomainPayment(feeId, toCreate))
+            .stream()
+            .map(paymentMapper::toRestPayment)
+            .collect(toUnmodifiableList()));
+  }
+
+  @PostMapping("/payments")
+  public List<Payment> createPayments(
+      @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+      @RequestBody List<CreateFeePayment> toCreate) {
+    return idempotencyService.execute(
+        idempotencyKey,
+        "POST /payments",
+        toCreate,
+        PAYMENTS_TYPE,
+        () -> paymentService
+            .saveAll(paymentMapper.toDomainPayment(toCreate))
+            .stream()
+            .map(paymentMapper::toRestPayment)
+            .collect(toUnmodifiableList()));
+  }
+
+  @PostMapping("/students/{studentId}/payments")
+  public List<Payment> createLumpSumPayment(
+      @PathVariable String studentId,
+      @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+      @RequestBody CreatePayment toCreate) {
+    return idempotencyService.execute(
+        idempotencyKey,
+        "POST /students/" + studentId + "/payments",
+        toCreate,
+        PAYMENTS_TYPE,
+        () -> paymentService
+            .allocateToOldestFees(studentId, paymentMapper.toDomainPayment(toCreate))
+            .stream()
+            .map(paymentMapper::toRestPayment)
+            .collect(toUnmodifiableList()));
   }
 
   @GetMapping("/students/{studentId}/fees/{feeId}/payments")
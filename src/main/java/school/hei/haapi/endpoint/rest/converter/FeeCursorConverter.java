@@ -0,0 +1,12 @@
+package school.hei.haapi.endpoint.rest.converter;
+
+import org.springframework.core.convert.converter.Converter;
+import school.hei.haapi.model.FeeCursor;
+
+public class FeeCursorConverter implements Converter<String, FeeCursor> {
+
+  @Override
+  public FeeCursor convert(String source) {
+    return source.isBlank() ? null : new FeeCursor(source);
+  }
+}
@@ -0,0 +1,19 @@
+package school.hei.haapi.endpoint.rest.mapper;
+
+import org.springframework.stereotype.Component;
+import school.hei.haapi.endpoint.rest.model.DeadLetterEvent;
+
+@Component
+public class DeadLetterEventMapper {
+
+  public DeadLetterEvent toRestDeadLetterEvent(
+      school.hei.haapi.model.DeadLetterEvent deadLetterEvent) {
+    return new DeadLetterEvent()
+        .id(deadLetterEvent.getId())
+        .typeName(deadLetterEvent.getTypeName())
+        .payload(deadLetterEvent.getPayload())
+        .receiveCount(deadLetterEvent.getReceiveCount())
+        .error(deadLetterEvent.getError())
+        .creationDatetime(deadLetterEvent.getCreationDatetime());
+  }
+}
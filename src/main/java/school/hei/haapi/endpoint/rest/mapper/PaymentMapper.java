@@ -3,12 +3,12 @@ package school.hei.haapi.endpoint.rest.mapper;
 import java.util.List;
 import lombok.AllArgsConstructor;
 import org.springframework.stereotype.Component;
+import school.hei.haapi.endpoint.rest.model.CreateFeePayment;
 import school.hei.haapi.endpoint.rest.model.CreatePayment;
 import school.hei.haapi.endpoint.rest.model.Payment;
 import school.hei.haapi.endpoint.rest.validator.CreatePaymentValidator;
 import school.hei.haapi.model.Fee;
 import school.hei.haapi.model.exception.BadRequestException;
-import school.hei.haapi.model.exception.NotFoundException;
 import school.hei.haapi.service.FeeService;
 
 import static java.util.stream.Collectors.toUnmodifiableList;
@@ -42,15 +42,32 @@ public class PaymentMapper {
 
   public List<school.hei.haapi.model.Payment> toDomainPayment(
       String feeId, List<CreatePayment> createPayment) {
-    Fee associatedFee = feeService.getById(feeId);
-    if (associatedFee == null) {
-      throw new NotFoundException("Fee.id=" + feeId + " is not found");
-    }
+    // Fee existence and balance are checked when the payments are applied
+    Fee associatedFee = feeService.getReference(feeId);
     return createPayment.stream()
         .map(payment -> toDomainPayment(associatedFee, payment))
         .collect(toUnmodifiableList());
   }
 
+  public List<school.hei.haapi.model.Payment> toDomainPayment(
+      List<CreateFeePayment> createFeePayments) {
+    return createFeePayments.stream()
+        .map(payment -> toDomainPayment(
+            feeService.getReference(payment.getFeeId()), toCreatePayment(payment)))
+        .collect(toUnmodifiableList());
+  }
+
+  public school.hei.haapi.model.Payment toDomainPayment(CreatePayment createPayment) {
+    return toDomainPayment(null, createPayment);
+  }
+
+  private CreatePayment toCreatePayment(CreateFeePayment createFeePayment) {
+    return new CreatePayment()
+        .type(CreatePayment.TypeEnum.fromValue(createFeePayment.getType().getValue()))
+        .amount(createFeePayment.getAmount())
+        .comment(createFeePayment.getComment());
+  }
+
   private Payment.TypeEnum toDomainPaymentType(CreatePayment.TypeEnum createPaymentType) {
     switch (createPaymentType) {
       case CASH:
@@ -4,12 +4,15 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import static school.hei.haapi.endpoint.rest.controller.FeeController.NEXT_CURSOR_HEADER;
+
 @Configuration
 public class CorsConfigurer implements WebMvcConfigurer {
   @Override
   public void addCorsMappings(CorsRegistry registry) {
     registry
         .addMapping("/**")
-        .allowedMethods("*");
+        .allowedMethods("*")
+        .exposedHeaders(NEXT_CURSOR_HEADER);
   }
 }
@@ -82,6 +82,8 @@ public class SecurityConf extends WebSecurityConfigurerAdapter {
             .requestMatchers(new SelfMatcher(GET, "/students/*/fees/*/payments")).hasAnyRole(STUDENT.getRole())
             .antMatchers(GET, "/students/*/fees/*/payments").hasAnyRole(MANAGER.getRole())
             .antMatchers(POST, "/students/*/fees/*/payments").hasAnyRole(MANAGER.getRole())
+            .antMatchers(POST, "/students/*/payments").hasAnyRole(MANAGER.getRole())
+            .antMatchers(POST, "/payments").hasAnyRole(MANAGER.getRole())
             .antMatchers(GET, "/students/*/fees").hasAnyRole(MANAGER.getRole())
             .antMatchers(POST, "/students/*/fees").hasAnyRole(MANAGER.getRole())
             .antMatchers(GET, "/students/*/courses").hasAnyRole(MANAGER.getRole())
@@ -107,6 +109,8 @@ public class SecurityConf extends WebSecurityConfigurerAdapter {
             .antMatchers(PUT, "/groups/**").hasAnyRole(MANAGER.getRole())
             .antMatchers(GET, "/courses/**").hasAnyRole(MANAGER.getRole())
             .antMatchers(PUT, "/courses/**").hasAnyRole(MANAGER.getRole())
+            .antMatchers(GET, "/dead_letter_events").hasAnyRole(MANAGER.getRole())
+            .antMatchers(POST, "/dead_letter_events/*/replay").hasAnyRole(MANAGER.getRole())
             .antMatchers("/**").denyAll()
 
             // disable superfluous protections
@@ -1,31 +1,64 @@
 package school.hei.haapi.endpoint.rest.security.cognito;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.proc.BadJOSEException;
 import com.nimbusds.jwt.JWTClaimsSet;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import school.hei.haapi.model.exception.ApiException;
 import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClient;
 import software.amazon.awssdk.services.cognitoidentityprovider.model.AdminCreateUserRequest;
 import software.amazon.awssdk.services.cognitoidentityprovider.model.AdminCreateUserResponse;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static school.hei.haapi.model.exception.ApiException.ExceptionType.SERVER_EXCEPTION;
 
 @Component
+@Slf4j
 public class CognitoComponent {
 
   private final CognitoConf cognitoConf;
   private final CognitoIdentityProviderClient cognitoClient;
+  /* Verified tokens by sha256, so that a token is only verified once until it expires.
+     Tokens themselves are not kept in memory. */
+  private final Cache<String, VerifiedToken> verifiedTokens;
+  private CacheStats loggedTokenCacheStats = CacheStats.empty();
 
   public CognitoComponent(
       CognitoConf cognitoConf,
-      CognitoIdentityProviderClient cognitoClient) {
+      CognitoIdentityProviderClient cognitoClient,
+      @Value("${aws.cognito.jwt.cache.maxSize}") long cacheMaxSize) {
     this.cognitoConf = cognitoConf;
     this.cognitoClient = cognitoClient;
+    this.verifiedTokens = Caffeine.newBuilder()
+        .maximumSize(cacheMaxSize)
+        .expireAfter(new UntilTokenExpiration())
+        .recordStats()
+        .build();
   }
 
   public String getEmailByIdToken(String idToken) {
+    String tokenHash = sha256(idToken);
+    VerifiedToken verified = verifiedTokens.getIfPresent(tokenHash);
+    if (verified != null) {
+      return verified.getEmail();
+    }
+
     JWTClaimsSet claims;
     try {
       claims = cognitoConf.getJwtProcessor().process(idToken, null);
@@ -37,7 +70,43 @@ public class CognitoComponent {
       return null;
     }
 
-    return isClaimsSetValid(claims) ? getEmail(claims) : null;
+    if (!isClaimsSetValid(claims)) {
+      return null;
+    }
+    String email = getEmail(claims);
+    Date expiration = claims.getExpirationTime();
+    if (expiration != null && expiration.toInstant().isAfter(Instant.now())) {
+      verifiedTokens.put(tokenHash, new VerifiedToken(email, expiration.toInstant()));
+    }
+    return email;
+  }
+
+  public long getTokenCacheHitCount() {
+    return verifiedTokens.stats().hitCount();
+  }
+
+  public long getTokenCacheMissCount() {
+    return verifiedTokens.stats().missCount();
+  }
+
+  public long getTokenCacheEvictionCount() {
+    return verifiedTokens.stats().evictionCount();
+  }
+
+  /*
+   * Stats of the last minute, only when tokens were looked up
+   * */
+  @Scheduled(fixedDelay = 60_000)
+  public synchronized void logTokenCacheStats() {
+    CacheStats stats = verifiedTokens.stats();
+    CacheStats lastMinute = stats.minus(loggedTokenCacheStats);
+    loggedTokenCacheStats = stats;
+    if (lastMinute.requestCount() > 0) {
+      log.info("Verified token cache: hits={}, misses={}, hitRate={}, evictions={}, size={}",
+          lastMinute.hitCount(), lastMinute.missCount(),
+          String.format("%.2f", lastMinute.hitRate()), lastMinute.evictionCount(),
+          verifiedTokens.estimatedSize());
+    }
   }
 
   private boolean isClaimsSetValid(JWTClaimsSet claims) {
@@ -62,4 +131,39 @@ public class CognitoComponent {
     }
     return  createResponse.user().username();
   }
+
+  private static String sha256(String value) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(UTF_8));
+      return String.format("%064x", new BigInteger(1, digest));
+    } catch (NoSuchAlgorithmException e) {
+      throw new ApiException(SERVER_EXCEPTION, e);
+    }
+  }
+
+  @AllArgsConstructor
+  @Getter
+  private static class VerifiedToken {
+    private final String email;
+    private final Instant expiration;
+  }
+
+  private static class UntilTokenExpiration implements Expiry<String, VerifiedToken> {
+    @Override
+    public long expireAfterCreate(String tokenHash, VerifiedToken token, long currentTime) {
+      return Math.max(0, Duration.between(Instant.now(), token.getExpiration()).toNanos());
+    }
+
+    @Override
+    public long expireAfterUpdate(
+        String tokenHash, VerifiedToken token, long currentTime, long currentDuration) {
+      return expireAfterCreate(tokenHash, token, currentTime);
+    }
+
+    @Override
+    public long expireAfterRead(
+        String tokenHash, VerifiedToken token, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+  }
 }
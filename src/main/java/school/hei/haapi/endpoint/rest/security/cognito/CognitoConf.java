@@ -1,19 +1,20 @@
 package school.hei.haapi.endpoint.rest.security.cognito;
 
 import com.nimbusds.jose.JWSAlgorithm;
-import com.nimbusds.jose.jwk.source.JWKSource;
-import com.nimbusds.jose.jwk.source.RemoteJWKSet;
 import com.nimbusds.jose.proc.JWSKeySelector;
 import com.nimbusds.jose.proc.JWSVerificationKeySelector;
 import com.nimbusds.jose.proc.SecurityContext;
 import com.nimbusds.jose.util.DefaultResourceRetriever;
-import com.nimbusds.jose.util.ResourceRetriever;
 import com.nimbusds.jwt.proc.ConfigurableJWTProcessor;
 import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.time.Duration;
+import javax.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import school.hei.haapi.model.exception.ApiException;
 import software.amazon.awssdk.regions.Region;
@@ -31,29 +32,54 @@ public class CognitoConf {
   private final Integer connectTimeout;
   private final Integer readTimeout;
 
+  private final PrefetchedJwkSource keySource;
+  private final ConfigurableJWTProcessor<SecurityContext> jwtProcessor;
+
   public CognitoConf(
       @Value("${aws.region}") String region,
       @Value("${aws.cognito.userPool.id}") String userPoolId,
       @Value("${aws.cognito.jwt.jwsAlgorithm}") final String algorithm,
       @Value("${aws.cognito.jwt.connectTimeout}") final Integer connectTimeout,
-      @Value("${aws.cognito.jwt.readTimeout}") final Integer readTimeOut) {
+      @Value("${aws.cognito.jwt.readTimeout}") final Integer readTimeOut,
+      @Value("${aws.cognito.jwt.jwks.file}") final String jwksFile,
+      @Value("${aws.cognito.jwt.jwks.minRefreshIntervalInSeconds}")
+      final long minRefreshIntervalInSeconds) {
     this.region = region;
     this.userPoolId = userPoolId;
     this.connectTimeout = connectTimeout;
     this.readTimeout = readTimeOut;
     this.rs256 = new JWSAlgorithm(algorithm);
+    this.keySource = jwksFile.isBlank()
+        ? PrefetchedJwkSource.remote(
+            getCognitoJwksUrlFormat(),
+            new DefaultResourceRetriever(this.connectTimeout, this.readTimeout),
+            Duration.ofSeconds(minRefreshIntervalInSeconds))
+        : PrefetchedJwkSource.file(
+            new File(jwksFile), Duration.ofSeconds(minRefreshIntervalInSeconds));
+    this.jwtProcessor = new DefaultJWTProcessor<>();
+    JWSKeySelector<SecurityContext> keySelector =
+        new JWSVerificationKeySelector<>(this.rs256, keySource);
+    jwtProcessor.setJWSKeySelector(keySelector);
+  }
+
+  /*
+   * Keys are loaded before the first request, so that it does not wait on the JWKS endpoint.
+   * If they can not be, they are loaded by the first request instead.
+   * */
+  @PostConstruct
+  public void prefetchJwks() {
+    keySource.refresh();
+  }
+
+  @Scheduled(
+      initialDelayString = "${aws.cognito.jwt.jwks.refreshInMillis}",
+      fixedDelayString = "${aws.cognito.jwt.jwks.refreshInMillis}")
+  public void refreshJwks() {
+    keySource.refresh();
   }
 
   @Bean
   public ConfigurableJWTProcessor<SecurityContext> getJwtProcessor() {
-    ResourceRetriever resourceRetriever =
-        new DefaultResourceRetriever(this.connectTimeout, this.readTimeout);
-    URL jwkUrl = getCognitoJwksUrlFormat();
-    JWKSource<SecurityContext> keySource = new RemoteJWKSet<>(jwkUrl, resourceRetriever);
-    ConfigurableJWTProcessor<SecurityContext> jwtProcessor = new DefaultJWTProcessor<>();
-    JWSKeySelector<SecurityContext> keySelector =
-        new JWSVerificationKeySelector<>(this.rs256, keySource);
-    jwtProcessor.setJWSKeySelector(keySelector);
     return jwtProcessor;
   }
 
@@ -0,0 +1,106 @@
+package school.hei.haapi.endpoint.rest.security.cognito;
+
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jose.util.ResourceRetriever;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.text.ParseException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Serves keys from an in-memory snapshot of the JWK set, so that verifying a token never
+ * waits on the network. The snapshot is loaded eagerly and refreshed in the background.
+ * A token signed with an unknown key (e.g. after a key rotation) triggers a refresh,
+ * at most once per minRefreshInterval so that forged tokens can not flood the JWKS endpoint.
+ * */
+@Slf4j
+public class PrefetchedJwkSource implements JWKSource<SecurityContext> {
+
+  private final JwkSetLoader loader;
+  private final Duration minRefreshInterval;
+  private final Clock clock;
+
+  private volatile JWKSet snapshot;
+  private Instant lastRefreshAttempt = Instant.MIN;
+
+  PrefetchedJwkSource(JwkSetLoader loader, Duration minRefreshInterval, Clock clock) {
+    this.loader = loader;
+    this.minRefreshInterval = minRefreshInterval;
+    this.clock = clock;
+  }
+
+  public static PrefetchedJwkSource remote(
+      URL jwksUrl, ResourceRetriever retriever, Duration minRefreshInterval) {
+    return new PrefetchedJwkSource(
+        () -> JWKSet.parse(retriever.retrieveResource(jwksUrl).getContent()),
+        minRefreshInterval,
+        Clock.systemUTC());
+  }
+
+  public static PrefetchedJwkSource file(File jwksFile, Duration minRefreshInterval) {
+    return new PrefetchedJwkSource(
+        () -> JWKSet.load(jwksFile), minRefreshInterval, Clock.systemUTC());
+  }
+
+  /**
+   * Loads the JWK set and replaces the snapshot.
+   * On failure, the previous snapshot is kept.
+   *
+   * @return Whether the snapshot was replaced
+   */
+  public synchronized boolean refresh() {
+    lastRefreshAttempt = clock.instant();
+    try {
+      // Only public keys are kept, and the set is never modified afterwards
+      snapshot = loader.load().toPublicJWKSet();
+      return true;
+    } catch (IOException | ParseException e) {
+      log.warn("JWK set could not be loaded, previous keys are kept", e);
+      return false;
+    }
+  }
+
+  @Override
+  public List<JWK> get(JWKSelector jwkSelector, SecurityContext context)
+      throws KeySourceException {
+    JWKSet current = snapshot;
+    if (current != null) {
+      List<JWK> keys = jwkSelector.select(current);
+      if (!keys.isEmpty()) {
+        return keys;
+      }
+    }
+
+    JWKSet refreshed = refreshIfStale(current);
+    if (refreshed == null) {
+      throw new KeySourceException("JWK set is not available");
+    }
+    return jwkSelector.select(refreshed);
+  }
+
+  private synchronized JWKSet refreshIfStale(JWKSet seen) {
+    if (snapshot != seen) {
+      // Refreshed by another thread in the meantime
+      return snapshot;
+    }
+    if (clock.instant().isAfter(lastRefreshAttempt.plus(minRefreshInterval))) {
+      refresh();
+    }
+    return snapshot;
+  }
+
+  @FunctionalInterface
+  interface JwkSetLoader {
+    JWKSet load() throws IOException, ParseException;
+  }
+}
@@ -0,0 +1,56 @@
+package school.hei.haapi.model;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import lombok.Getter;
+import school.hei.haapi.model.exception.BadRequestException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Opaque position of a fee in the (due datetime desc, id desc) order.
+ */
+public class FeeCursor {
+
+  private static final String SEPARATOR = "|";
+
+  @Getter
+  private final Instant dueDatetime;
+  @Getter
+  private final String id;
+
+  public FeeCursor(Instant dueDatetime, String id) {
+    this.dueDatetime = dueDatetime;
+    this.id = id;
+  }
+
+  public FeeCursor(String value) {
+    String decoded;
+    try {
+      decoded = new String(Base64.getUrlDecoder().decode(value), UTF_8);
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestException("cursor value is invalid");
+    }
+    int separatorIndex = decoded.indexOf(SEPARATOR);
+    if (separatorIndex < 0) {
+      throw new BadRequestException("cursor value is invalid");
+    }
+    try {
+      this.dueDatetime = Instant.parse(decoded.substring(0, separatorIndex));
+    } catch (DateTimeParseException e) {
+      throw new BadRequestException("cursor value is invalid");
+    }
+    this.id = decoded.substring(separatorIndex + SEPARATOR.length());
+  }
+
+  public static FeeCursor after(Fee fee) {
+    return new FeeCursor(fee.getDueDatetime(), fee.getId());
+  }
+
+  public String getValue() {
+    return Base64.getUrlEncoder()
+        .withoutPadding()
+        .encodeToString((dueDatetime + SEPARATOR + id).getBytes(UTF_8));
+  }
+}
@@ -0,0 +1,10 @@
+package school.hei.haapi.model;
+
+/**
+ * How fee status is resolved when fees are filtered by status.
+ * STORED relies on the status column, kept up to date by the hourly job.
+ * DERIVED computes it from remaining_amount and due_datetime at query time.
+ */
+public enum FeeStatusResolution {
+  STORED, DERIVED
+}
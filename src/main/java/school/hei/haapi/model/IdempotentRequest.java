@@ -0,0 +1,62 @@
+package school.hei.haapi.model;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Objects;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.hibernate.Hibernate;
+
+@Entity
+@Table(name = "\"idempotent_request\"")
+@Getter
+@Setter
+@ToString
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class IdempotentRequest implements Serializable {
+  /* The Idempotency-Key */
+  @Id
+  private String id;
+
+  /* Identifies the request the key was first used for */
+  private String scope;
+
+  /* Serialized response, null while the request is in progress */
+  private String response;
+
+  private Instant creationDatetime;
+
+  /* Identifies the claim of the request in progress: only its owner can complete it */
+  private String claimToken;
+
+  /* While the request is in progress, after which the key can be claimed again */
+  private Instant lockExpirationDatetime;
+
+  private Instant expirationDatetime;
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || Hibernate.getClass(this) != Hibernate.getClass(o)) {
+      return false;
+    }
+    IdempotentRequest that = (IdempotentRequest) o;
+    return Objects.equals(id, that.id);
+  }
+
+  @Override
+  public int hashCode() {
+    return getClass().hashCode();
+  }
+}
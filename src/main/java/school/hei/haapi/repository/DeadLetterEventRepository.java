@@ -0,0 +1,9 @@
+package school.hei.haapi.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import school.hei.haapi.model.DeadLetterEvent;
+
+@Repository
+public interface DeadLetterEventRepository extends JpaRepository<DeadLetterEvent, String> {
+}
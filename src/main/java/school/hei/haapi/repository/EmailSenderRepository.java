@@ -0,0 +1,35 @@
+package school.hei.haapi.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import school.hei.haapi.model.EmailSender;
+
+@Repository
+public interface EmailSenderRepository extends JpaRepository<EmailSender, String> {
+
+  @Transactional
+  @Modifying
+  @Query(value = "insert into \"email_sender\" (id, heartbeat_datetime) values (:id, now()) "
+      + "on conflict (id) do update set heartbeat_datetime = now()", nativeQuery = true)
+  void beat(@Param("id") String id);
+
+  /*
+   * Senders that stopped beating, e.g. because their instance was scaled in or crashed.
+   * Heartbeats are only compared to the time of the database, whatever the clocks of instances.
+   * */
+  @Transactional
+  @Modifying
+  @Query(value = "delete from \"email_sender\" "
+      + "where heartbeat_datetime < now() - make_interval(secs => :timeout_in_seconds)",
+      nativeQuery = true)
+  int deleteStale(@Param("timeout_in_seconds") double timeoutInSeconds);
+
+  @Query(value = "select count(*) from \"email_sender\" "
+      + "where heartbeat_datetime >= now() - make_interval(secs => :timeout_in_seconds)",
+      nativeQuery = true)
+  int countAlive(@Param("timeout_in_seconds") double timeoutInSeconds);
+}
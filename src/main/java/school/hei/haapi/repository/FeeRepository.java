@@ -1,30 +1,48 @@
 package school.hei.haapi.repository;
 
+import java.util.Collection;
 import java.util.List;
-import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
-import school.hei.haapi.endpoint.rest.model.Fee.StatusEnum;
+import org.springframework.transaction.annotation.Transactional;
 import school.hei.haapi.model.Fee;
 
 @Repository
 public interface FeeRepository extends JpaRepository<Fee, String> {
   Fee getByStudentIdAndId(String studentId, String feeId);
 
-  List<Fee> getFeesByStatus(StatusEnum status,
-                            Pageable pageable);
+  @Query("select f from Fee f join fetch f.student where f.id in :ids")
+  List<Fee> findAllWithStudentByIdIn(@Param("ids") Collection<String> ids);
 
-  List<Fee> getFeesByStatus(StatusEnum status);
+  /**
+   * Set-based UNPAID to LATE transition of at most chunkSize overdue fees.
+   * Rows locked by a concurrent transaction are skipped and left for the next chunk.
+   *
+   * @return ids of the fees that were updated
+   */
+  @Transactional
+  @Query(value = "update \"fee\" set status = 'LATE' where id in ("
+      + "select id from \"fee\" where status = 'UNPAID' "
+      + "and remaining_amount > 0 "
+      + "and due_datetime < current_date "
+      + "limit :chunk_size for update skip locked) "
+      + "returning id", nativeQuery = true)
+  List<String> updateUnpaidFeesToLate(@Param("chunk_size") int chunkSize);
 
-  List<Fee> getFeesByStudentIdAndStatus(String studentId,
-                                        StatusEnum status,
-                                        Pageable pageable);
-
-  List<Fee> getByStudentId(String studentId, Pageable pageable);
-
-  @Query("select f from Fee f where f.status = 'UNPAID' "
-      + "and f.remainingAmount > 0 "
-      + "and f.dueDatetime < current_date")
-  List<Fee> getUnpaidFees();
+  /**
+   * Atomically debits amount from the fee remaining amount,
+   * and sets the fee PAID when nothing remains.
+   *
+   * @return 1 if the fee was debited, 0 if it does not exist or its remaining amount is too low
+   */
+  @Transactional
+  @Modifying(flushAutomatically = true)
+  @Query(value = "update \"fee\" set remaining_amount = remaining_amount - :amount, "
+      + "status = case when remaining_amount = :amount "
+      + "then cast('PAID' as fee_status) else status end "
+      + "where id = :fee_id and remaining_amount >= :amount", nativeQuery = true)
+  int debitRemainingAmount(@Param("fee_id") String feeId, @Param("amount") int amount);
 }
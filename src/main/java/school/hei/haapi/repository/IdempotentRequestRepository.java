@@ -0,0 +1,65 @@
+package school.hei.haapi.repository;
+
+import java.time.Instant;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import school.hei.haapi.model.IdempotentRequest;
+
+@Repository
+public interface IdempotentRequestRepository extends JpaRepository<IdempotentRequest, String> {
+
+  /**
+   * Claims the idempotency key for the given scope, unless it is already claimed:
+   * an expired key, or a key whose request holds a lock that expired, can be claimed again.
+   *
+   * @return 1 if the key was claimed, 0 otherwise
+   */
+  @Transactional
+  @Modifying
+  @Query(value = "insert into \"idempotent_request\" "
+      + "(id, scope, claim_token, lock_expiration_datetime, expiration_datetime) "
+      + "values (:id, :scope, :claim_token, :lock_expiration_datetime, :expiration_datetime) "
+      + "on conflict (id) do update set scope = excluded.scope, response = null, "
+      + "creation_datetime = now(), claim_token = excluded.claim_token, "
+      + "lock_expiration_datetime = excluded.lock_expiration_datetime, "
+      + "expiration_datetime = excluded.expiration_datetime "
+      + "where \"idempotent_request\".expiration_datetime < now() "
+      + "or (\"idempotent_request\".response is null "
+      + "and \"idempotent_request\".lock_expiration_datetime < now())", nativeQuery = true)
+  int claim(@Param("id") String id, @Param("scope") String scope,
+            @Param("claim_token") String claimToken,
+            @Param("lock_expiration_datetime") Instant lockExpirationDatetime,
+            @Param("expiration_datetime") Instant expirationDatetime);
+
+  /* Extends the lock of a request still in progress, as long as it was not claimed again */
+  @Transactional
+  @Modifying
+  @Query("update IdempotentRequest r set r.lockExpirationDatetime = :lockExpirationDatetime "
+      + "where r.id = :id and r.claimToken = :claimToken and r.response is null")
+  int renewLock(@Param("id") String id, @Param("claimToken") String claimToken,
+                @Param("lockExpirationDatetime") Instant lockExpirationDatetime);
+
+  /* @return 0 if the key was claimed again meanwhile, its response is then kept */
+  @Transactional
+  @Modifying
+  @Query("update IdempotentRequest r set r.response = :response, "
+      + "r.lockExpirationDatetime = null "
+      + "where r.id = :id and r.claimToken = :claimToken and r.response is null")
+  int updateResponse(@Param("id") String id, @Param("claimToken") String claimToken,
+                     @Param("response") String response);
+
+  @Transactional
+  @Modifying
+  @Query("delete from IdempotentRequest r "
+      + "where r.id = :id and r.claimToken = :claimToken and r.response is null")
+  int release(@Param("id") String id, @Param("claimToken") String claimToken);
+
+  @Transactional
+  @Modifying
+  @Query("delete from IdempotentRequest r where r.expirationDatetime < :now")
+  int deleteExpired(@Param("now") Instant now);
+}
@@ -0,0 +1,47 @@
+package school.hei.haapi.repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import school.hei.haapi.model.OutboxEvent;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, String> {
+
+  /**
+   * Leases the oldest events that are not leased yet, or whose lease expired,
+   * e.g. because the relay that leased them crashed.
+   * Events being leased by another relay are skipped, so that relays do not wait on each other.
+   */
+  @Transactional
+  @Query(value = "update \"event_outbox\" set lease_expiration_datetime = :lease_expiration "
+      + "where id in (select id from \"event_outbox\" "
+      + "where lease_expiration_datetime is null or lease_expiration_datetime < now() "
+      + "order by creation_datetime, id limit :limit for update skip locked) "
+      + "returning *", nativeQuery = true)
+  List<OutboxEvent> leaseOldest(@Param("limit") int limit,
+                                @Param("lease_expiration") Instant leaseExpiration);
+
+  /* Failed events are released at once, so that the next relay retries them */
+  @Modifying
+  @Query("update OutboxEvent e set e.attempts = e.attempts + 1, "
+      + "e.leaseExpirationDatetime = null where e.id in :ids")
+  int incrementAttempts(@Param("ids") Collection<String> ids);
+
+  @Modifying
+  @Query(value = "with moved as (delete from \"event_outbox\" "
+      + "where id in (:ids) and attempts >= :max_attempts "
+      + "returning type_name, payload, attempts) "
+      + "insert into \"dead_letter_event\" (type_name, payload, receive_count, error) "
+      + "select type_name, payload, attempts, "
+      + "'Could not be sent to EventBridge after ' || attempts || ' relays' from moved",
+      nativeQuery = true)
+  int moveToDeadLetters(@Param("ids") Collection<String> ids,
+                        @Param("max_attempts") int maxAttempts);
+}
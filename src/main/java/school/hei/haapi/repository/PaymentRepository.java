@@ -1,5 +1,6 @@
 package school.hei.haapi.repository;
 
+import java.util.Collection;
 import java.util.List;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -14,4 +15,8 @@ public interface PaymentRepository extends JpaRepository<Payment, String> {
       + " where f.student.id = :student_id and f.id = :fee_id")
   List<Payment> getByStudentIdAndFeeId(
       @Param("student_id") String studentId, @Param("fee_id") String feeId, Pageable pageable);
+
+  @Query(value = "select p from Payment p join fetch p.fee f join fetch f.student"
+      + " where p.id in :ids")
+  List<Payment> findAllByIdIn(@Param("ids") Collection<String> ids);
 }
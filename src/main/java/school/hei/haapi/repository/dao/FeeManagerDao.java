@@ -0,0 +1,196 @@
+package school.hei.haapi.repository.dao;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.stereotype.Repository;
+import school.hei.haapi.endpoint.rest.model.Fee.StatusEnum;
+import school.hei.haapi.model.Fee;
+import school.hei.haapi.model.FeeCursor;
+import school.hei.haapi.model.FeeStatusResolution;
+import school.hei.haapi.model.User;
+import school.hei.haapi.model.exception.ApiException;
+
+import static java.util.stream.Collectors.toUnmodifiableList;
+import static school.hei.haapi.model.FeeStatusResolution.DERIVED;
+import static school.hei.haapi.model.exception.ApiException.ExceptionType.SERVER_EXCEPTION;
+
+@Repository
+public class FeeManagerDao {
+  private final EntityManager entityManager;
+  private final FeeStatusResolution statusResolution;
+
+  public FeeManagerDao(
+      EntityManager entityManager,
+      @Value("${fee.status.resolution}") FeeStatusResolution statusResolution) {
+    this.entityManager = entityManager;
+    this.statusResolution = statusResolution;
+  }
+
+  public FeeStatusResolution getStatusResolution() {
+    return statusResolution;
+  }
+
+  /**
+   * Fees in the (due datetime desc, id desc) order.
+   * With a cursor, keyset (seek) pagination is used: fees that come after the cursor are
+   * returned, so that no row is scanned twice. Without, the page number gives the offset.
+   *
+   * @param studentId Optional student filter
+   * @param status Optional status filter
+   * @param cursor Position after which fees are returned
+   * @param pageable Page size and sort, page number must be 0 when a cursor is given
+   */
+  public List<Fee> findAfter(String studentId, StatusEnum status, FeeCursor cursor,
+                             Pageable pageable) {
+    CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+    CriteriaQuery<Fee> query = builder.createQuery(Fee.class);
+    Root<Fee> root = query.from(Fee.class);
+    root.fetch("student");
+
+    List<Predicate> predicates = new ArrayList<>();
+    if (studentId != null) {
+      predicates.add(builder.equal(root.get("student").get("id"), studentId));
+    }
+    if (status != null) {
+      predicates.add(hasStatus(builder, root, status));
+    }
+    if (cursor != null) {
+      predicates.add(
+          builder.or(
+              builder.lessThan(root.<Instant>get("dueDatetime"), cursor.getDueDatetime()),
+              builder.and(
+                  builder.equal(root.get("dueDatetime"), cursor.getDueDatetime()),
+                  builder.lessThan(root.get("id"), cursor.getId()))
+          ));
+    }
+
+    query
+        .where(builder.and(predicates.toArray(Predicate[]::new)))
+        .orderBy(QueryUtils.toOrders(pageable.getSort(), root, builder));
+
+    return entityManager.createQuery(query)
+        .setFirstResult((int) pageable.getOffset())
+        .setMaxResults(pageable.getPageSize())
+        .getResultList();
+  }
+
+  /**
+   * Fees with the given status and an id greater than lastId, ordered by id.
+   * Used to scan all fees of a status page by page.
+   * Only ids of the fees and of their students are selected: see {@link #toFeeIds(Tuple)}.
+   */
+  public List<Fee> findByStatusAfterId(StatusEnum status, String lastId, int limit) {
+    CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+    CriteriaQuery<Tuple> query = builder.createTupleQuery();
+    Root<Fee> root = query.from(Fee.class);
+
+    query
+        .multiselect(root.get("id"), root.get("student").get("id"))
+        .where(
+            hasStatus(builder, root, status),
+            builder.greaterThan(root.get("id"), lastId))
+        .orderBy(builder.asc(root.get("id")));
+
+    return entityManager.createQuery(query)
+        .setMaxResults(limit)
+        .getResultStream()
+        .map(FeeManagerDao::toFeeIds)
+        .collect(toUnmodifiableList());
+  }
+
+  /**
+   * Ids of the students having fees with the given status, greater than lastStudentId.
+   * Fees are grouped by student, so that students are scanned page by page.
+   */
+  public List<String> findStudentIdsByStatusAfterStudentId(
+      StatusEnum status, String lastStudentId, int limit) {
+    CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+    CriteriaQuery<String> query = builder.createQuery(String.class);
+    Root<Fee> root = query.from(Fee.class);
+    Path<String> studentId = root.get("student").get("id");
+
+    query
+        .select(studentId)
+        .where(
+            hasStatus(builder, root, status),
+            builder.greaterThan(studentId, lastStudentId))
+        .groupBy(studentId)
+        .orderBy(builder.asc(studentId));
+
+    return entityManager.createQuery(query)
+        .setMaxResults(limit)
+        .getResultList();
+  }
+
+  /**
+   * Fees of the given students with the given status, ordered by student then due datetime.
+   * Only ids of the fees and of their students are selected: see {@link #toFeeIds(Tuple)}.
+   */
+  public List<Fee> findByStatusAndStudentIds(StatusEnum status, Collection<String> studentIds) {
+    CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+    CriteriaQuery<Tuple> query = builder.createTupleQuery();
+    Root<Fee> root = query.from(Fee.class);
+    Path<String> studentId = root.get("student").get("id");
+
+    query
+        .multiselect(root.get("id"), studentId)
+        .where(
+            hasStatus(builder, root, status),
+            studentId.in(studentIds))
+        .orderBy(
+            builder.asc(studentId),
+            builder.asc(root.get("dueDatetime")),
+            builder.asc(root.get("id")));
+
+    return entityManager.createQuery(query)
+        .getResultStream()
+        .map(FeeManagerDao::toFeeIds)
+        .collect(toUnmodifiableList());
+  }
+
+  /*
+   * Fees are published as compact events, that only carry ids and are hydrated by consumers.
+   * Loading whole fees would also load their students, as Fee.student is eagerly fetched,
+   * so the fees are detached and only hold their id and the id of their student.
+   * */
+  private static Fee toFeeIds(Tuple tuple) {
+    return Fee.builder()
+        .id(tuple.get(0, String.class))
+        .student(User.builder().id(tuple.get(1, String.class)).build())
+        .build();
+  }
+
+  private Predicate hasStatus(CriteriaBuilder builder, Root<Fee> root, StatusEnum status) {
+    if (statusResolution != DERIVED) {
+      return builder.equal(root.get("status"), status);
+    }
+    // Same rules as FeeService.updateFeeStatus, matched by the partial indexes on fee
+    Instant now = Instant.now();
+    switch (status) {
+      case PAID:
+        return builder.equal(root.get("remainingAmount"), 0);
+      case LATE:
+        return builder.and(
+            builder.greaterThan(root.get("remainingAmount"), 0),
+            builder.lessThan(root.get("dueDatetime"), now));
+      case UNPAID:
+        return builder.and(
+            builder.greaterThan(root.get("remainingAmount"), 0),
+            builder.greaterThanOrEqualTo(root.get("dueDatetime"), now));
+      default:
+        throw new ApiException(SERVER_EXCEPTION, "Unexpected fee status: " + status);
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package school.hei.haapi.repository.dao;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.AllArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+import school.hei.haapi.model.Payment;
+
+import static java.util.UUID.randomUUID;
+
+/*
+ * Payments are applied with JDBC batches: Hibernate can not batch inserts of entities
+ * with IDENTITY generated ids, and would load every fee to update it.
+ * */
+@Repository
+@AllArgsConstructor
+public class PaymentBatchDao {
+  private final NamedParameterJdbcTemplate jdbcTemplate;
+
+  /**
+   * Remaining amounts of the fees, read in a single query.
+   *
+   * @return Remaining amounts by fee id, unknown fees are absent
+   */
+  public Map<String, Integer> getRemainingAmounts(Collection<String> feeIds) {
+    Map<String, Integer> remainingAmounts = new LinkedHashMap<>();
+    if (feeIds.isEmpty()) {
+      return remainingAmounts;
+    }
+    jdbcTemplate.query(
+        "select id, remaining_amount from \"fee\" where id in (:fee_ids)",
+        new MapSqlParameterSource("fee_ids", feeIds),
+        rs -> {
+          remainingAmounts.put(rs.getString("id"), rs.getInt("remaining_amount"));
+        });
+    return remainingAmounts;
+  }
+
+  /**
+   * Outstanding fees of the student are locked until the end of the transaction.
+   *
+   * @return Remaining amounts by fee id, ordered by due datetime asc
+   */
+  public Map<String, Integer> getOutstandingAmountsForUpdate(String studentId) {
+    Map<String, Integer> remainingAmounts = new LinkedHashMap<>();
+    jdbcTemplate.query(
+        "select id, remaining_amount from \"fee\" "
+            + "where user_id = :student_id and remaining_amount > 0 "
+            + "order by due_datetime, id for update",
+        new MapSqlParameterSource("student_id", studentId),
+        rs -> {
+          remainingAmounts.put(rs.getString("id"), rs.getInt("remaining_amount"));
+        });
+    return remainingAmounts;
+  }
+
+  /**
+   * Debits the amounts from the fees, setting them PAID when nothing remains.
+   * A fee is only debited if its remaining amount is enough.
+   *
+   * @return Ids of the fees that were not debited
+   */
+  public List<String> debitRemainingAmounts(Map<String, Integer> amountsByFeeId) {
+    // Fees are always locked in the same order, so that concurrent batches can not deadlock
+    List<String> feeIds = new ArrayList<>(amountsByFeeId.keySet());
+    Collections.sort(feeIds);
+    SqlParameterSource[] batch = feeIds.stream()
+        .map(feeId -> new MapSqlParameterSource()
+            .addValue("fee_id", feeId)
+            .addValue("amount", amountsByFeeId.get(feeId)))
+        .toArray(SqlParameterSource[]::new);
+    int[] updateCounts = jdbcTemplate.batchUpdate(
+        "update \"fee\" set remaining_amount = remaining_amount - :amount, "
+            + "status = case when remaining_amount = :amount "
+            + "then cast('PAID' as fee_status) else status end "
+            + "where id = :fee_id and remaining_amount >= :amount",
+        batch);
+
+    List<String> notDebited = new ArrayList<>();
+    for (int i = 0; i < updateCounts.length; i++) {
+      if (updateCounts[i] == 0) {
+        notDebited.add(feeIds.get(i));
+      }
+    }
+    return notDebited;
+  }
+
+  /**
+   * Inserts the payments, with generated ids.
+   *
+   * @return Ids of the inserted payments, in the same order
+   */
+  public List<String> insertAll(List<Payment> payments) {
+    List<String> ids = new ArrayList<>();
+    SqlParameterSource[] batch = payments.stream()
+        .map(payment -> {
+          String id = randomUUID().toString();
+          ids.add(id);
+          return new MapSqlParameterSource()
+              .addValue("id", id)
+              .addValue("fee_id", payment.getFee().getId())
+              .addValue("type", payment.getType().getValue())
+              .addValue("amount", payment.getAmount())
+              .addValue("comment", payment.getComment());
+        })
+        .toArray(SqlParameterSource[]::new);
+    jdbcTemplate.batchUpdate(
+        "insert into \"payment\" (id, fee_id, type, amount, comment) "
+            + "values (:id, :fee_id, cast(:type as payment_type), :amount, :comment)",
+        batch);
+    return ids;
+  }
+}
@@ -1,60 +1,80 @@
 package school.hei.haapi.repository.dao;
 
-import lombok.AllArgsConstructor;
-import org.springframework.data.domain.Pageable;
-import org.springframework.data.jpa.repository.query.QueryUtils;
-import org.springframework.stereotype.Repository;
-import school.hei.haapi.model.User;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
-import java.util.List;
+import lombok.AllArgsConstructor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.stereotype.Repository;
+import school.hei.haapi.model.User;
 
 @Repository
 @AllArgsConstructor
 public class UserManagerDao {
+  private static final char LIKE_ESCAPE = '\\';
+
   private EntityManager entityManager;
 
+  /**
+   * Users of the role whose ref, first name and last name contain the given values,
+   * ignoring case and accents. Blank values are ignored.
+   * Matching is done on lower(f_unaccent(column)), which is backed by trigram indexes.
+   */
   public List<User> findByCriteria(User.Role role, String ref, String firstName, String lastName,
                                    Pageable pageable) {
     CriteriaBuilder builder = entityManager.getCriteriaBuilder();
     CriteriaQuery<User> query = builder.createQuery(User.class);
     Root<User> root = query.from(User.class);
 
-    Predicate hasUserRef =
-        builder.or(
-            builder.like(builder.lower(root.get("ref")), "%" + ref + "%"),
-            builder.like(root.get("ref"), "%" + ref + "%")
-        );
-
-    Predicate hasUserFirstName =
-        builder.or(
-            builder.like(builder.lower(root.get("firstName")), "%" + firstName + "%"),
-            builder.like(root.get("firstName"), "%" + firstName + "%")
-        );
-
-    Predicate hasUserLastName =
-        builder.or(
-            builder.like(builder.lower(root.get("lastName")), "%" + lastName + "%"),
-            builder.like(root.get("lastName"), "%" + lastName + "%")
-        );
-
-    Predicate hasUserRole =
-        builder.or(
-            builder.equal(root.get("role"), role)
-        );
+    List<Predicate> predicates = new ArrayList<>();
+    Map<String, String> patterns = new HashMap<>();
+    predicates.add(builder.equal(root.get("role"), role));
+    addContains(builder, root, "ref", ref, predicates, patterns);
+    addContains(builder, root, "firstName", firstName, predicates, patterns);
+    addContains(builder, root, "lastName", lastName, predicates, patterns);
 
     query
-        .where(builder.and(hasUserRole, hasUserRef, hasUserFirstName, hasUserLastName))
+        .where(builder.and(predicates.toArray(Predicate[]::new)))
         .orderBy(QueryUtils.toOrders(pageable.getSort(), root, builder));
 
-    return entityManager.createQuery(query)
+    TypedQuery<User> typedQuery = entityManager.createQuery(query);
+    patterns.forEach(typedQuery::setParameter);
+    return typedQuery
         .setFirstResult((pageable.getPageNumber()) * pageable.getPageSize())
         .setMaxResults(pageable.getPageSize())
         .getResultList();
   }
 
+  private void addContains(
+      CriteriaBuilder builder, Root<User> root, String attribute, String value,
+      List<Predicate> predicates, Map<String, String> patterns) {
+    if (value == null || value.isBlank()) {
+      return;
+    }
+    predicates.add(builder.like(
+        normalized(builder, root.get(attribute)),
+        normalized(builder, builder.parameter(String.class, attribute)),
+        LIKE_ESCAPE));
+    patterns.put(attribute, "%" + escapeLike(value) + "%");
+  }
+
+  private Expression<String> normalized(CriteriaBuilder builder, Expression<String> value) {
+    return builder.lower(builder.function("f_unaccent", String.class, value));
+  }
 
+  private static String escapeLike(String value) {
+    return value
+        .replace(String.valueOf(LIKE_ESCAPE), LIKE_ESCAPE + String.valueOf(LIKE_ESCAPE))
+        .replace("%", LIKE_ESCAPE + "%")
+        .replace("_", LIKE_ESCAPE + "_");
+  }
 }
@@ -0,0 +1,89 @@
+package school.hei.haapi.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import school.hei.haapi.endpoint.event.model.RawTypedEvent;
+import school.hei.haapi.endpoint.event.model.TypedEvent;
+import school.hei.haapi.model.BoundedPageSize;
+import school.hei.haapi.model.DeadLetterEvent;
+import school.hei.haapi.model.PageFromOne;
+import school.hei.haapi.model.exception.ApiException;
+import school.hei.haapi.model.exception.BadRequestException;
+import school.hei.haapi.model.exception.NotFoundException;
+import school.hei.haapi.repository.DeadLetterEventRepository;
+
+import static org.springframework.data.domain.Sort.Direction.DESC;
+import static school.hei.haapi.model.exception.ApiException.ExceptionType.SERVER_EXCEPTION;
+
+/*
+ * Events that kept failing are kept here instead of being received again and again,
+ * until a manager replays them once their cause is fixed.
+ * */
+@Service
+@AllArgsConstructor
+public class DeadLetterEventService {
+
+  /* Type name of the messages that could not be decoded: they are kept to be looked into only */
+  public static final String UNDECODABLE_TYPE_NAME = "Undecodable";
+
+  private final DeadLetterEventRepository deadLetterEventRepository;
+  private final EventOutboxService eventOutboxService;
+  private final ObjectMapper om;
+
+  public DeadLetterEvent save(TypedEvent event, int receiveCount, Exception error) {
+    try {
+      return deadLetterEventRepository.save(DeadLetterEvent.builder()
+          .typeName(event.getTypeName())
+          .payload(om.writeValueAsString(event.getPayload()))
+          .receiveCount(receiveCount)
+          .error(error.toString())
+          .build());
+    } catch (JsonProcessingException e) {
+      throw new ApiException(SERVER_EXCEPTION, e);
+    }
+  }
+
+  public DeadLetterEvent saveUndecodable(String body, int receiveCount, Exception error) {
+    return deadLetterEventRepository.save(DeadLetterEvent.builder()
+        .typeName(UNDECODABLE_TYPE_NAME)
+        .payload(body)
+        .receiveCount(receiveCount)
+        .error(error.toString())
+        .build());
+  }
+
+  public List<DeadLetterEvent> getAll(PageFromOne page, BoundedPageSize pageSize) {
+    Pageable pageable = PageRequest.of(
+        page.getValue() - 1,
+        pageSize.getValue(),
+        Sort.by(DESC, "creationDatetime").and(Sort.by("id")));
+    return deadLetterEventRepository.findAll(pageable).getContent();
+  }
+
+  /**
+   * Sends the event again, through the outbox, and removes it from the dead letters.
+   *
+   * @param id Id of the dead letter event
+   * @return The replayed event
+   */
+  @Transactional
+  public DeadLetterEvent replay(String id) {
+    DeadLetterEvent deadLetterEvent = deadLetterEventRepository.findById(id)
+        .orElseThrow(() -> new NotFoundException("DeadLetterEvent.id=" + id + " is not found"));
+    if (UNDECODABLE_TYPE_NAME.equals(deadLetterEvent.getTypeName())) {
+      throw new BadRequestException(
+          "DeadLetterEvent.id=" + id + " could not be decoded and can not be replayed");
+    }
+    eventOutboxService.accept(List.of(new RawTypedEvent(
+        deadLetterEvent.getId(), deadLetterEvent.getTypeName(), deadLetterEvent.getPayload())));
+    deadLetterEventRepository.delete(deadLetterEvent);
+    return deadLetterEvent;
+  }
+}
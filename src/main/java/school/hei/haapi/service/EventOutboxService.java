@@ -0,0 +1,147 @@
+package school.hei.haapi.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import school.hei.haapi.endpoint.event.EventProducer;
+import school.hei.haapi.endpoint.event.model.RawTypedEvent;
+import school.hei.haapi.endpoint.event.model.TypedEvent;
+import school.hei.haapi.model.OutboxEvent;
+import school.hei.haapi.model.exception.ApiException;
+import school.hei.haapi.repository.OutboxEventRepository;
+
+import static java.util.Comparator.comparing;
+import static java.util.stream.Collectors.toUnmodifiableList;
+import static java.util.stream.Collectors.toUnmodifiableSet;
+import static school.hei.haapi.model.exception.ApiException.ExceptionType.SERVER_EXCEPTION;
+
+/*
+ * Transactional outbox: events are saved in the transaction of the change they describe,
+ * so that they are sent if and only if it is committed, without holding it open
+ * while they are sent. They are then relayed to EventBridge in the background.
+ * Events that still could not be sent after max attempts, e.g. too large ones,
+ * are moved to the dead letters, so that they do not hold back the next ones.
+ * */
+@Service
+@Slf4j
+public class EventOutboxService implements Consumer<List<TypedEvent>> {
+
+  private final OutboxEventRepository outboxEventRepository;
+  private final TransactionTemplate transactionTemplate;
+  private final EventProducer eventProducer;
+  private final ObjectMapper om;
+  private final int maxAttempts;
+  private final Duration lease;
+
+  public EventOutboxService(
+      OutboxEventRepository outboxEventRepository,
+      TransactionTemplate transactionTemplate,
+      EventProducer eventProducer,
+      ObjectMapper om,
+      @Value("${event.outbox.maxAttempts}") int maxAttempts,
+      @Value("${event.outbox.leaseInSeconds}") long leaseInSeconds) {
+    this.outboxEventRepository = outboxEventRepository;
+    this.transactionTemplate = transactionTemplate;
+    this.eventProducer = eventProducer;
+    this.om = om;
+    this.maxAttempts = maxAttempts;
+    this.lease = Duration.ofSeconds(leaseInSeconds);
+  }
+
+  /**
+   * Saves the events in the outbox, within the current transaction.
+   *
+   * @param events Events to send once the transaction is committed.
+   */
+  @Override
+  @Transactional
+  public void accept(List<TypedEvent> events) {
+    outboxEventRepository.saveAll(events.stream()
+        .map(this::toOutboxEvent)
+        .collect(toUnmodifiableList()));
+  }
+
+  /**
+   * Sends the oldest events of the outbox, and deletes those that were sent.
+   * Events that could not be sent are kept, to be sent by a later relay,
+   * unless they reached max attempts.
+   * Events are leased then sent out of any transaction, so that neither row locks nor
+   * connections are held while EventBridge is called, retries and backoffs included.
+   *
+   * @param batchSize Max number of events to send
+   * @return Number of events that were sent
+   */
+  public int relay(int batchSize) {
+    List<OutboxEvent> outboxEvents = outboxEventRepository
+        .leaseOldest(batchSize, Instant.now().plus(lease)).stream()
+        .sorted(comparing(OutboxEvent::getCreationDatetime).thenComparing(OutboxEvent::getId))
+        .collect(toUnmodifiableList());
+    if (outboxEvents.isEmpty()) {
+      return 0;
+    }
+    List<RawTypedEvent> events = outboxEvents.stream()
+        .map(this::toTypedEvent)
+        .collect(toUnmodifiableList());
+
+    Set<String> failedIds = eventProducer.publish(List.copyOf(events)).stream()
+        .map(event -> ((RawTypedEvent) event).getId())
+        .collect(toUnmodifiableSet());
+    Set<String> sentIds = events.stream()
+        .map(RawTypedEvent::getId)
+        .filter(id -> !failedIds.contains(id))
+        .collect(toUnmodifiableSet());
+    transactionTemplate.executeWithoutResult(status -> {
+      if (!sentIds.isEmpty()) {
+        outboxEventRepository.deleteAllByIdInBatch(sentIds);
+      }
+      if (!failedIds.isEmpty()) {
+        onFailure(outboxEvents.stream()
+            .filter(outboxEvent -> failedIds.contains(outboxEvent.getId()))
+            .collect(toUnmodifiableList()));
+      }
+    });
+    return sentIds.size();
+  }
+
+  private void onFailure(List<OutboxEvent> failed) {
+    List<String> failedIds = failed.stream()
+        .map(OutboxEvent::getId)
+        .collect(toUnmodifiableList());
+    outboxEventRepository.incrementAttempts(failedIds);
+    failed.forEach(outboxEvent -> {
+      int attempts = outboxEvent.getAttempts() + 1;
+      if (attempts < maxAttempts) {
+        log.warn("Outbox event could not be sent, it will be retried: id={}, attempts={}",
+            outboxEvent.getId(), attempts);
+      } else {
+        log.error("Outbox event could not be sent after {} attempts, moved to dead letters: id={}",
+            attempts, outboxEvent.getId());
+      }
+    });
+    outboxEventRepository.moveToDeadLetters(failedIds, maxAttempts);
+  }
+
+  private OutboxEvent toOutboxEvent(TypedEvent event) {
+    try {
+      return OutboxEvent.builder()
+          .typeName(event.getTypeName())
+          .payload(om.writeValueAsString(event.getPayload()))
+          .build();
+    } catch (JsonProcessingException e) {
+      throw new ApiException(SERVER_EXCEPTION, e);
+    }
+  }
+
+  private RawTypedEvent toTypedEvent(OutboxEvent event) {
+    return new RawTypedEvent(event.getId(), event.getTypeName(), event.getPayload());
+  }
+}
@@ -1,43 +1,91 @@
 package school.hei.haapi.service;
 
 import java.time.Instant;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Optional;
 import javax.transaction.Transactional;
-import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import school.hei.haapi.endpoint.event.EventProducer;
-import school.hei.haapi.endpoint.event.model.TypedLateFeeVerified;
-import school.hei.haapi.endpoint.event.model.gen.LateFeeVerified;
+import school.hei.haapi.endpoint.event.model.TypedCompactLateFeeVerified;
+import school.hei.haapi.endpoint.event.model.TypedCompactLateFeesDigestVerified;
+import school.hei.haapi.endpoint.event.model.TypedEvent;
+import school.hei.haapi.endpoint.event.model.gen.CompactLateFeeVerified;
+import school.hei.haapi.endpoint.event.model.gen.CompactLateFeesDigestVerified;
 import school.hei.haapi.model.BoundedPageSize;
 import school.hei.haapi.model.Fee;
+import school.hei.haapi.model.FeeCursor;
 import school.hei.haapi.model.PageFromOne;
 import school.hei.haapi.model.validator.FeeValidator;
 import school.hei.haapi.repository.FeeRepository;
+import school.hei.haapi.repository.dao.FeeManagerDao;
 
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toUnmodifiableList;
 import static org.springframework.data.domain.Sort.Direction.DESC;
 import static school.hei.haapi.endpoint.rest.model.Fee.StatusEnum.LATE;
 import static school.hei.haapi.endpoint.rest.model.Fee.StatusEnum.PAID;
+import static school.hei.haapi.model.FeeStatusResolution.DERIVED;
 
 @Service
-@AllArgsConstructor
 @Slf4j
 public class FeeService {
 
   private static final school.hei.haapi.endpoint.rest.model.Fee.StatusEnum DEFAULT_STATUS = LATE;
+  static final int LATE_FEES_UPDATE_CHUNK_SIZE = 1_000;
+  static final int LATE_FEES_EMAIL_PAGE_SIZE = 200;
+  static final int LATE_FEES_DIGEST_PAGE_SIZE = 100; // students, not fees
+  // id makes the order total, as required by cursors
+  private static final Sort FEES_SORT = Sort.by(DESC, "dueDatetime", "id");
   private final FeeRepository feeRepository;
   private final FeeValidator feeValidator;
 
   private final EventProducer eventProducer;
+  private final FeeManagerDao feeManagerDao;
+  private final boolean lateFeesEmailDigest;
+
+  public FeeService(
+      FeeRepository feeRepository,
+      FeeValidator feeValidator,
+      EventProducer eventProducer,
+      FeeManagerDao feeManagerDao,
+      @Value("${fee.lateFeesEmail.digest}") boolean lateFeesEmailDigest) {
+    this.feeRepository = feeRepository;
+    this.feeValidator = feeValidator;
+    this.eventProducer = eventProducer;
+    this.feeManagerDao = feeManagerDao;
+    this.lateFeesEmailDigest = lateFeesEmailDigest;
+  }
 
   public Fee getById(String id) {
     return updateFeeStatus(feeRepository.getById(id));
   }
 
+  public Fee getReference(String id) {
+    return feeRepository.getById(id);
+  }
+
+  public Optional<Fee> findById(String id) {
+    return feeRepository.findById(id).map(this::updateFeeStatus);
+  }
+
+  /**
+   * Debits amount from the fee in a single conditional update, so that concurrent payments
+   * on the same fee can neither lose an update nor overdraw it.
+   *
+   * @return false when the fee does not exist or its remaining amount is less than amount
+   */
+  public boolean debitRemainingAmount(String feeId, int amount) {
+    return feeRepository.debitRemainingAmount(feeId, amount) == 1;
+  }
+
   public Fee getByStudentIdAndFeeId(String studentId, String feeId) {
     return updateFeeStatus(feeRepository.getByStudentIdAndId(studentId, feeId));
   }
@@ -52,11 +100,17 @@ public class FeeService {
       PageFromOne page, BoundedPageSize pageSize,
       school.hei.haapi.endpoint.rest.model.Fee.StatusEnum status) {
     Pageable pageable =
-        PageRequest.of(page.getValue() - 1, pageSize.getValue(), Sort.by(DESC, "dueDatetime"));
-    if (status != null) {
-      return feeRepository.getFeesByStatus(status, pageable);
-    }
-    return feeRepository.getFeesByStatus(DEFAULT_STATUS, pageable);
+        PageRequest.of(page.getValue() - 1, pageSize.getValue(), FEES_SORT);
+    return updateFeesStatus(feeManagerDao.findAfter(
+        null, status != null ? status : DEFAULT_STATUS, null, pageable));
+  }
+
+  public List<Fee> getFees(
+      FeeCursor cursor, BoundedPageSize pageSize,
+      school.hei.haapi.endpoint.rest.model.Fee.StatusEnum status) {
+    Pageable pageable = PageRequest.of(0, pageSize.getValue(), FEES_SORT);
+    return updateFeesStatus(feeManagerDao.findAfter(
+        null, status != null ? status : DEFAULT_STATUS, cursor, pageable));
   }
 
   public List<Fee> getFeesByStudentId(
@@ -65,11 +119,20 @@ public class FeeService {
     Pageable pageable = PageRequest.of(
         page.getValue() - 1,
         pageSize.getValue(),
-        Sort.by(DESC, "dueDatetime"));
-    if (status != null) {
-      return feeRepository.getFeesByStudentIdAndStatus(studentId, status, pageable);
-    }
-    return feeRepository.getByStudentId(studentId, pageable);
+        FEES_SORT);
+    return updateFeesStatus(feeManagerDao.findAfter(studentId, status, null, pageable));
+  }
+
+  public List<Fee> getFeesByStudentId(
+      String studentId, FeeCursor cursor, BoundedPageSize pageSize,
+      school.hei.haapi.endpoint.rest.model.Fee.StatusEnum status) {
+    Pageable pageable = PageRequest.of(0, pageSize.getValue(), FEES_SORT);
+    return updateFeesStatus(feeManagerDao.findAfter(studentId, status, cursor, pageable));
+  }
+
+  private List<Fee> updateFeesStatus(List<Fee> fees) {
+    fees.forEach(this::updateFeeStatus);
+    return fees;
   }
 
   private Fee updateFeeStatus(Fee initialFee) {
@@ -81,24 +144,44 @@ public class FeeService {
     return initialFee;
   }
 
+  /*
+   * Overdue fees are updated by chunks, each in its own short transaction,
+   * so that fees are never loaded into the persistence context.
+   * Not needed when status is derived at query time.
+   * */
   @Scheduled(cron = "0 0 * * * *")
   public void updateFeesStatusToLate() {
-    List<Fee> unpaidFees = feeRepository.getUnpaidFees();
-    unpaidFees.forEach(fee -> {
-      updateFeeStatus(fee);
-      log.info("Fee with id." + fee.getId() + " is going to be updated from UNPAID to LATE");
-    });
-    feeRepository.saveAll(unpaidFees);
-  }
-
-  private TypedLateFeeVerified toTypedEvent(Fee fee) {
-    return new TypedLateFeeVerified(
-        LateFeeVerified.builder()
-            .type(fee.getType())
-            .student(fee.getStudent())
-            .comment(fee.getComment())
-            .remainingAmount(fee.getRemainingAmount())
-            .dueDatetime(fee.getDueDatetime())
+    if (feeManagerDao.getStatusResolution() == DERIVED) {
+      return;
+    }
+    int totalUpdated = 0;
+    int chunkUpdated;
+    do {
+      chunkUpdated = feeRepository.updateUnpaidFeesToLate(LATE_FEES_UPDATE_CHUNK_SIZE).size();
+      totalUpdated += chunkUpdated;
+      log.info("Chunk of {} fees updated from UNPAID to LATE", chunkUpdated);
+    } while (chunkUpdated == LATE_FEES_UPDATE_CHUNK_SIZE);
+    log.info("{} fees updated from UNPAID to LATE", totalUpdated);
+  }
+
+  /* Only ids are sent, the fee and its student are loaded back by the EventHydrator */
+  private TypedCompactLateFeeVerified toTypedEvent(Fee fee) {
+    return new TypedCompactLateFeeVerified(
+        CompactLateFeeVerified.builder()
+            .feeId(fee.getId())
+            .studentId(fee.getStudent().getId())
+            .build()
+    );
+  }
+
+  /* Only ids are sent, the fees still late are loaded back by the EventHydrator */
+  private TypedCompactLateFeesDigestVerified toTypedDigestEvent(List<Fee> studentLateFees) {
+    return new TypedCompactLateFeesDigestVerified(
+        CompactLateFeesDigestVerified.builder()
+            .studentId(studentLateFees.get(0).getStudent().getId())
+            .feeIds(studentLateFees.stream()
+                .map(Fee::getId)
+                .collect(toUnmodifiableList()))
             .build()
     );
   }
@@ -109,13 +192,62 @@ public class FeeService {
    * */
   @Scheduled(cron = "0 0 8 * * *")
   public void sendLateFeesEmail() {
-    List<Fee> lateFees = feeRepository.getFeesByStatus(LATE);
-    lateFees.forEach(
-        fee -> {
-          eventProducer.accept(List.of(toTypedEvent(fee)));
-          log.info("Late Fee with id." + fee.getId() + " is sent to Queue");
-        }
-    );
+    if (lateFeesEmailDigest) {
+      sendLateFeesDigestEmail();
+    } else {
+      sendLateFeeEmails();
+    }
+  }
+
+  /*
+   * One event per student with late fees: students are scanned page by page,
+   * then the late fees of each page are loaded at once.
+   * */
+  private void sendLateFeesDigestEmail() {
+    int scanned = 0;
+    int failed = 0;
+    int fees = 0;
+    List<String> studentIds = feeManagerDao.findStudentIdsByStatusAfterStudentId(
+        LATE, "", LATE_FEES_DIGEST_PAGE_SIZE);
+    while (!studentIds.isEmpty()) {
+      List<Fee> lateFees = feeManagerDao.findByStatusAndStudentIds(LATE, studentIds);
+      List<TypedEvent> digests = lateFees.stream()
+          .collect(groupingBy(fee -> fee.getStudent().getId(), LinkedHashMap::new, toList()))
+          .values().stream()
+          .map(this::toTypedDigestEvent)
+          .collect(toUnmodifiableList());
+      fees += lateFees.size();
+      scanned += digests.size();
+      failed += eventProducer.publish(digests).size();
+      if (studentIds.size() < LATE_FEES_DIGEST_PAGE_SIZE) {
+        break;
+      }
+      String lastStudentId = studentIds.get(studentIds.size() - 1);
+      studentIds = feeManagerDao.findStudentIdsByStatusAfterStudentId(
+          LATE, lastStudentId, LATE_FEES_DIGEST_PAGE_SIZE);
+    }
+    log.info("Late fees digests sent to Queue: students={}, fees={}, sent={}, failed={}",
+        scanned, fees, scanned - failed, failed);
+  }
+
+  private void sendLateFeeEmails() {
+    int scanned = 0;
+    int failed = 0;
+    List<Fee> lateFees = feeManagerDao.findByStatusAfterId(LATE, "", LATE_FEES_EMAIL_PAGE_SIZE);
+    while (!lateFees.isEmpty()) {
+      scanned += lateFees.size();
+      failed += eventProducer.publish(lateFees.stream()
+              .map(this::toTypedEvent)
+              .collect(toUnmodifiableList()))
+          .size();
+      if (lateFees.size() < LATE_FEES_EMAIL_PAGE_SIZE) {
+        break;
+      }
+      String lastId = lateFees.get(lateFees.size() - 1).getId();
+      lateFees = feeManagerDao.findByStatusAfterId(LATE, lastId, LATE_FEES_EMAIL_PAGE_SIZE);
+    }
+    log.info("Late fees sent to Queue: scanned={}, sent={}, failed={}",
+        scanned, scanned - failed, failed);
   }
 
 }
@@ -0,0 +1,260 @@
+package school.hei.haapi.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import school.hei.haapi.model.IdempotentRequest;
+import school.hei.haapi.model.exception.ApiException;
+import school.hei.haapi.model.exception.BadRequestException;
+import school.hei.haapi.model.exception.TooManyRequestsException;
+import school.hei.haapi.repository.IdempotentRequestRepository;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.UUID.randomUUID;
+import static school.hei.haapi.model.exception.ApiException.ExceptionType.SERVER_EXCEPTION;
+
+/*
+ * Executes a request at most once per Idempotency-Key.
+ * Responses are stored in the database until they expire, and the most recent ones
+ * are kept in memory so that replays are answered without any query.
+ * Concurrent requests with the same key on this instance wait for the first one,
+ * while those on other instances are answered with a 429.
+ * A key is only locked for a short lease while its request is in progress, so that it is not
+ * stuck until it expires when the instance executing it crashes. The lease is renewed as long as
+ * the request runs, and the claim token fences the owner: a request whose key was claimed again,
+ * e.g. after the instance stalled longer than the lease, can not overwrite the stored response.
+ * */
+@Service
+@Slf4j
+public class IdempotencyService {
+  private static final int MAX_KEY_LENGTH = 255;
+
+  private final IdempotentRequestRepository idempotentRequestRepository;
+  private final ObjectMapper om;
+  private final Duration ttl;
+  private final Duration lockLease;
+  private final Duration waitTimeout;
+  private final Cache<String, IdempotentRequest> completedRequests;
+  private final ConcurrentMap<String, InFlightRequest> inFlightRequests =
+      new ConcurrentHashMap<>();
+  /* Claim tokens of the keys this instance holds, by key */
+  private final ConcurrentMap<String, String> claimedKeys = new ConcurrentHashMap<>();
+
+  public IdempotencyService(
+      IdempotentRequestRepository idempotentRequestRepository,
+      ObjectMapper om,
+      @Value("${idempotency.ttlInSeconds}") long ttlInSeconds,
+      @Value("${idempotency.lockLeaseInSeconds}") long lockLeaseInSeconds,
+      @Value("${idempotency.waitTimeoutInSeconds}") long waitTimeoutInSeconds,
+      @Value("${idempotency.cache.maxSize}") long cacheMaxSize) {
+    this.idempotentRequestRepository = idempotentRequestRepository;
+    this.om = om;
+    this.ttl = Duration.ofSeconds(ttlInSeconds);
+    this.lockLease = Duration.ofSeconds(lockLeaseInSeconds);
+    this.waitTimeout = Duration.ofSeconds(waitTimeoutInSeconds);
+    this.completedRequests = Caffeine.newBuilder()
+        .maximumSize(cacheMaxSize)
+        .expireAfterWrite(ttl)
+        .build();
+  }
+
+  /**
+   * Executes the request, unless a request with the same key was already executed.
+   *
+   * @param key Idempotency key, the request is always executed when null
+   * @param operation Identifies the operation and its target, e.g. method and path
+   * @param requestBody Body of the request, a key can not be reused with a different one
+   * @param responseType Type of the response, to replay it
+   * @param request The request to execute
+   * @return The response of the request, or of the first request with the same key
+   */
+  public <T> T execute(
+      String key, String operation, Object requestBody,
+      TypeReference<T> responseType, Supplier<T> request) {
+    if (key == null) {
+      return request.get();
+    }
+    if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+      throw new BadRequestException(
+          "Idempotency-Key must be non blank and at most " + MAX_KEY_LENGTH + " characters");
+    }
+    String scope = operation + "#" + sha256(toJson(requestBody));
+
+    IdempotentRequest completed = completedRequests.getIfPresent(key);
+    if (completed != null) {
+      return replay(completed.getScope(), scope, completed.getResponse(), responseType);
+    }
+
+    CompletableFuture<String> execution = new CompletableFuture<>();
+    InFlightRequest inFlight =
+        inFlightRequests.putIfAbsent(key, new InFlightRequest(scope, execution));
+    if (inFlight != null) {
+      return replay(
+          inFlight.getScope(), scope, await(key, inFlight.getResponse()), responseType);
+    }
+    try {
+      return executeOnce(key, scope, responseType, request, execution);
+    } catch (RuntimeException e) {
+      execution.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlightRequests.remove(key);
+    }
+  }
+
+  private <T> T executeOnce(
+      String key, String scope, TypeReference<T> responseType, Supplier<T> request,
+      CompletableFuture<String> execution) {
+    Instant now = Instant.now();
+    String claimToken = randomUUID().toString();
+    if (idempotentRequestRepository.claim(
+        key, scope, claimToken, now.plus(lockLease), now.plus(ttl)) == 0) {
+      IdempotentRequest stored = idempotentRequestRepository.findById(key)
+          .orElseThrow(() -> inProgress(key));
+      if (stored.getResponse() == null) {
+        checkScope(stored.getScope(), scope);
+        throw inProgress(key);
+      }
+      completedRequests.put(key, toCompleted(stored.getScope(), stored.getResponse()));
+      execution.complete(stored.getResponse());
+      return replay(stored.getScope(), scope, stored.getResponse(), responseType);
+    }
+
+    claimedKeys.put(key, claimToken);
+    try {
+      T response;
+      try {
+        response = request.get();
+      } catch (RuntimeException e) {
+        // Failed requests are not recorded, so that they can be retried with the same key
+        idempotentRequestRepository.release(key, claimToken);
+        throw e;
+      }
+      String serializedResponse = toJson(response);
+      if (idempotentRequestRepository.updateResponse(key, claimToken, serializedResponse) == 0) {
+        // Its response is then the one of the request that claimed the key after this one
+        log.error("Lock of Idempotency-Key={} was lost while its request was in progress", key);
+      } else {
+        completedRequests.put(key, toCompleted(scope, serializedResponse));
+      }
+      execution.complete(serializedResponse);
+      return response;
+    } finally {
+      claimedKeys.remove(key);
+    }
+  }
+
+  /* Renews the leases of the requests in progress on this instance, well before they expire */
+  @Scheduled(fixedDelayString = "${idempotency.lockRenewalInMillis}")
+  public void renewLocks() {
+    Instant lockExpiration = Instant.now().plus(lockLease);
+    claimedKeys.forEach((key, claimToken) -> {
+      try {
+        if (idempotentRequestRepository.renewLock(key, claimToken, lockExpiration) == 0
+            && claimedKeys.containsKey(key)) {
+          log.warn("Lock of Idempotency-Key={} could not be renewed", key);
+        }
+      } catch (RuntimeException e) {
+        log.warn("Lock of Idempotency-Key={} could not be renewed", key, e);
+      }
+    });
+  }
+
+  /*
+   * Expired keys are deleted every hour
+   * */
+  @Scheduled(cron = "0 30 * * * *")
+  public void deleteExpiredRequests() {
+    int deleted = idempotentRequestRepository.deleteExpired(Instant.now());
+    log.info("{} expired idempotent requests deleted", deleted);
+  }
+
+  private <T> T replay(
+      String storedScope, String scope, String response, TypeReference<T> responseType) {
+    checkScope(storedScope, scope);
+    try {
+      return om.readValue(response, responseType);
+    } catch (JsonProcessingException e) {
+      throw new ApiException(SERVER_EXCEPTION, e);
+    }
+  }
+
+  private void checkScope(String storedScope, String scope) {
+    if (!storedScope.equals(scope)) {
+      throw new BadRequestException("Idempotency-Key is already used for another request");
+    }
+  }
+
+  /* Waits for the request in progress, a request still running afterwards is answered with a 429 */
+  private String await(String key, CompletableFuture<String> response) {
+    try {
+      return response.get(waitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      throw inProgress(key);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw inProgress(key);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new ApiException(SERVER_EXCEPTION, e);
+    }
+  }
+
+  private TooManyRequestsException inProgress(String key) {
+    return new TooManyRequestsException(
+        "Request with Idempotency-Key=" + key + " is still in progress");
+  }
+
+  private IdempotentRequest toCompleted(String scope, String response) {
+    return IdempotentRequest.builder()
+        .scope(scope)
+        .response(response)
+        .build();
+  }
+
+  private String toJson(Object value) {
+    try {
+      return om.writeValueAsString(value);
+    } catch (JsonProcessingException e) {
+      throw new ApiException(SERVER_EXCEPTION, e);
+    }
+  }
+
+  private static String sha256(String value) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(UTF_8));
+      return String.format("%064x", new BigInteger(1, digest));
+    } catch (NoSuchAlgorithmException e) {
+      throw new ApiException(SERVER_EXCEPTION, e);
+    }
+  }
+
+  @AllArgsConstructor
+  @Getter
+  private static class InFlightRequest {
+    private final String scope;
+    private final CompletableFuture<String> response;
+  }
+}
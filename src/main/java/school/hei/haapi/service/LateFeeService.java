@@ -1,33 +1,42 @@
 package school.hei.haapi.service;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
 import lombok.AllArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.thymeleaf.context.Context;
 import school.hei.haapi.endpoint.event.EventConf;
+import school.hei.haapi.endpoint.event.model.gen.ConcernedStudent;
 import school.hei.haapi.endpoint.event.model.gen.LateFeeVerified;
-import school.hei.haapi.model.User;
+import school.hei.haapi.endpoint.event.model.gen.LateFeesDigestVerified;
 import school.hei.haapi.service.aws.SesService;
 
+import static java.util.stream.Collectors.toUnmodifiableList;
 import static school.hei.haapi.service.utils.DataFormatterUtils.instantToCommonDate;
 import static school.hei.haapi.service.utils.DataFormatterUtils.numberToReadable;
 import static school.hei.haapi.service.utils.DataFormatterUtils.numberToWords;
-import static school.hei.haapi.service.utils.TemplateUtils.htmlToString;
 
 @Service
 @AllArgsConstructor
 public class LateFeeService implements Consumer<LateFeeVerified> {
   private final SesService sesService;
   private final EventConf eventConf;
+  private final TemplateService templateService;
 
-  private static String emailSubject(User student, LateFeeVerified lateFee) {
+  private static String emailSubject(ConcernedStudent student, LateFeeVerified lateFee) {
     return "Retard de paiement - "
         + student.getRef()
         + " - "
         + lateFee.getComment();
   }
 
-  private static String formatName(User student) {
+  private static String digestEmailSubject(ConcernedStudent student) {
+    return "Retards de paiement - " + student.getRef();
+  }
+
+  private static String formatName(ConcernedStudent student) {
     return student.getLastName()
         + " "
         + student.getFirstName();
@@ -43,14 +52,40 @@ public class LateFeeService implements Consumer<LateFeeVerified> {
     return initial;
   }
 
+  private static Context getDigestMailContext(LateFeesDigestVerified digest) {
+    List<Map<String, String>> lateFees = digest.getLateFees().stream()
+        .map(lateFee -> {
+          // Comments are optional, which Map.of does not allow
+          Map<String, String> item = new HashMap<>();
+          item.put("comment", lateFee.getComment());
+          item.put("dueDatetime", instantToCommonDate(lateFee.getDueDatetime()));
+          item.put("remainingAmount", numberToReadable(lateFee.getRemainingAmount()));
+          return item;
+        })
+        .collect(toUnmodifiableList());
+    Context initial = new Context();
+    initial.setVariable("fullName", formatName(digest.getStudent()));
+    initial.setVariable("lateFees", lateFees);
+    initial.setVariable("totalAmount", numberToReadable(digest.getTotalRemainingAmount()));
+    initial.setVariable("totalAmWords", numberToWords(digest.getTotalRemainingAmount()));
+    return initial;
+  }
+
   @Override
   public void accept(LateFeeVerified lateFee) {
-    User student = lateFee.getStudent();
+    ConcernedStudent student = lateFee.getStudent();
     String recipient = student.getEmail();
     String sender = eventConf.getSesSource();
     String subject = emailSubject(student, lateFee);
-    String htmlBody = htmlToString("lateFeeEmail", getMailContext(lateFee));
+    String htmlBody = templateService.render("lateFeeEmail", getMailContext(lateFee));
     sesService.sendEmail(sender, recipient, subject, htmlBody);
   }
 
+  /* A single email listing all the late fees of a student, with the total owed */
+  public void sendDigest(LateFeesDigestVerified digest) {
+    ConcernedStudent student = digest.getStudent();
+    String htmlBody = templateService.render("lateFeesDigestEmail", getDigestMailContext(digest));
+    sesService.sendEmail(
+        eventConf.getSesSource(), student.getEmail(), digestEmailSubject(student), htmlBody);
+  }
 }
@@ -1,6 +1,9 @@
 package school.hei.haapi.service;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import lombok.AllArgsConstructor;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -8,14 +11,21 @@ import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import school.hei.haapi.model.BoundedPageSize;
-import school.hei.haapi.model.Fee;
 import school.hei.haapi.model.PageFromOne;
 import school.hei.haapi.model.Payment;
+import school.hei.haapi.model.exception.BadRequestException;
+import school.hei.haapi.model.exception.NotFoundException;
+import school.hei.haapi.model.exception.TooManyRequestsException;
 import school.hei.haapi.model.validator.PaymentValidator;
 import school.hei.haapi.repository.PaymentRepository;
+import school.hei.haapi.repository.dao.PaymentBatchDao;
 
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.summingInt;
+import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toUnmodifiableList;
 import static org.springframework.data.domain.Sort.Direction.DESC;
-import static school.hei.haapi.endpoint.rest.model.Fee.StatusEnum.PAID;
 
 @Service
 @AllArgsConstructor
@@ -24,6 +34,7 @@ public class PaymentService {
   private final FeeService feeService;
   private final PaymentRepository paymentRepository;
   private final PaymentValidator paymentValidator;
+  private final PaymentBatchDao paymentBatchDao;
 
   public List<Payment> getByStudentIdAndFeeId(
       String studentId, String feeId, PageFromOne page, BoundedPageSize pageSize) {
@@ -34,19 +45,101 @@ public class PaymentService {
     return paymentRepository.getByStudentIdAndFeeId(studentId, feeId, pageable);
   }
 
-  public void computeRemainingAmount(String feeId, int amount) {
-    Fee associatedFee = feeService.getById(feeId);
-    associatedFee.setRemainingAmount(associatedFee.getRemainingAmount() - amount);
-    if (associatedFee.getRemainingAmount() == 0) {
-      associatedFee.setStatus(PAID);
-    }
-  }
-
   @Transactional
   public List<Payment> saveAll(List<Payment> toCreate) {
     paymentValidator.accept(toCreate);
-    toCreate.forEach(
-        payment -> computeRemainingAmount(payment.getFee().getId(), payment.getAmount()));
-    return paymentRepository.saveAll(toCreate);
+    Map<String, Integer> amountsByFeeId = toCreate.stream()
+        .collect(groupingBy(
+            payment -> payment.getFee().getId(),
+            LinkedHashMap::new,
+            summingInt(Payment::getAmount)));
+    return apply(amountsByFeeId, toCreate);
+  }
+
+  /**
+   * Allocates the lump-sum payment to the outstanding fees of the student by due datetime asc.
+   *
+   * @param lumpSum Payment without fee
+   * @return One payment per fee the lump sum was allocated to
+   */
+  @Transactional
+  public List<Payment> allocateToOldestFees(String studentId, Payment lumpSum) {
+    paymentValidator.accept(lumpSum);
+    Map<String, Integer> outstandingAmounts =
+        paymentBatchDao.getOutstandingAmountsForUpdate(studentId);
+    int totalRemainingAmount = outstandingAmounts.values().stream()
+        .mapToInt(Integer::intValue)
+        .sum();
+    if (lumpSum.getAmount() > totalRemainingAmount) {
+      throw new BadRequestException(
+          "Payment amount (" + lumpSum.getAmount()
+              + ") exceeds student remaining amount (" + totalRemainingAmount + ")");
+    }
+
+    Map<String, Integer> amountsByFeeId = new LinkedHashMap<>();
+    List<Payment> allocated = new ArrayList<>();
+    int toAllocate = lumpSum.getAmount();
+    for (Map.Entry<String, Integer> outstanding : outstandingAmounts.entrySet()) {
+      if (toAllocate == 0) {
+        break;
+      }
+      int amount = Math.min(toAllocate, outstanding.getValue());
+      toAllocate -= amount;
+      amountsByFeeId.put(outstanding.getKey(), amount);
+      allocated.add(Payment.builder()
+          .fee(feeService.getReference(outstanding.getKey()))
+          .type(lumpSum.getType())
+          .amount(amount)
+          .comment(lumpSum.getComment())
+          .build());
+    }
+    return apply(amountsByFeeId, allocated);
+  }
+
+  /*
+   * The remaining amounts are checked by the conditional updates themselves:
+   * fees are only read when some of them could not be debited, to report why.
+   * */
+  private void debitRemainingAmounts(Map<String, Integer> amountsByFeeId) {
+    List<String> notDebitedFeeIds;
+    if (amountsByFeeId.size() == 1) {
+      Map.Entry<String, Integer> single = amountsByFeeId.entrySet().iterator().next();
+      notDebitedFeeIds = feeService.debitRemainingAmount(single.getKey(), single.getValue())
+          ? List.of()
+          : List.of(single.getKey());
+    } else {
+      notDebitedFeeIds = paymentBatchDao.debitRemainingAmounts(amountsByFeeId);
+    }
+    if (notDebitedFeeIds.isEmpty()) {
+      return;
+    }
+    Map<String, Integer> remainingAmounts = paymentBatchDao.getRemainingAmounts(notDebitedFeeIds);
+    for (String feeId : notDebitedFeeIds) {
+      Integer remainingAmount = remainingAmounts.get(feeId);
+      if (remainingAmount == null) {
+        throw new NotFoundException("Fee.id=" + feeId + " is not found");
+      }
+      int amount = amountsByFeeId.get(feeId);
+      if (remainingAmount < amount) {
+        throw new BadRequestException(
+            "Payment amount (" + amount
+                + ") exceeds fee remaining amount (" + remainingAmount + ")");
+      }
+    }
+    // Remaining amounts can only decrease, so this should not happen
+    throw new TooManyRequestsException("Fees were concurrently updated: " + notDebitedFeeIds);
+  }
+
+  private List<Payment> apply(Map<String, Integer> amountsByFeeId, List<Payment> payments) {
+    if (payments.isEmpty()) {
+      return List.of();
+    }
+    debitRemainingAmounts(amountsByFeeId);
+    List<String> ids = paymentBatchDao.insertAll(payments);
+    Map<String, Payment> inserted = paymentRepository.findAllByIdIn(ids).stream()
+        .collect(toMap(Payment::getId, identity()));
+    return ids.stream()
+        .map(inserted::get)
+        .collect(toUnmodifiableList());
   }
 }
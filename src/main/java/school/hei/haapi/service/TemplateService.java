@@ -0,0 +1,56 @@
+package school.hei.haapi.service;
+
+import java.io.Writer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.cache.StandardCacheManager;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+/*
+ * Templates are resolved and parsed once, then kept parsed in the cache of the engine:
+ * rendering a cached template only evaluates its expressions.
+ * */
+@Service
+public class TemplateService {
+
+  private final TemplateEngine templateEngine;
+
+  public TemplateService(
+      @Value("${template.cache.ttlInSeconds}") long cacheTtlInSeconds,
+      @Value("${template.cache.maxSize}") int cacheMaxSize) {
+    ClassLoaderTemplateResolver templateResolver = new ClassLoaderTemplateResolver();
+    templateResolver.setPrefix("/templates/");
+    templateResolver.setSuffix(".html");
+    templateResolver.setCharacterEncoding("UTF-8");
+    templateResolver.setTemplateMode(TemplateMode.HTML);
+    templateResolver.setCacheable(true);
+    if (cacheTtlInSeconds > 0) {
+      templateResolver.setCacheTTLMs(cacheTtlInSeconds * 1_000);
+    }
+
+    StandardCacheManager cacheManager = new StandardCacheManager();
+    cacheManager.setTemplateCacheMaxSize(cacheMaxSize);
+
+    this.templateEngine = new TemplateEngine();
+    templateEngine.setTemplateResolver(templateResolver);
+    templateEngine.setCacheManager(cacheManager);
+  }
+
+  public String render(String template, Context context) {
+    return templateEngine.process(template, context);
+  }
+
+  /**
+   * Renders the template straight to the writer, without building it as a String first.
+   *
+   * @param template Name of the template, without its .html suffix
+   * @param context Variables of the template
+   * @param writer Where the template is rendered. It is not closed.
+   */
+  public void render(String template, Context context, Writer writer) {
+    templateEngine.process(template, context, writer);
+  }
+}
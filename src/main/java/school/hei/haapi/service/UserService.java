@@ -1,13 +1,18 @@
 package school.hei.haapi.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.time.Duration;
 import java.util.List;
-import lombok.AllArgsConstructor;
+import java.util.Set;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import school.hei.haapi.endpoint.event.EventProducer;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import school.hei.haapi.endpoint.event.model.TypedUserUpserted;
 import school.hei.haapi.endpoint.event.model.gen.UserUpserted;
 import school.hei.haapi.model.BoundedPageSize;
@@ -18,36 +23,78 @@ import school.hei.haapi.repository.UserRepository;
 import school.hei.haapi.repository.dao.UserManagerDao;
 
 import static java.util.stream.Collectors.toUnmodifiableList;
+import static java.util.stream.Collectors.toUnmodifiableSet;
 import static org.springframework.data.domain.Sort.Direction.ASC;
 
 @Service
-@AllArgsConstructor
 public class UserService {
 
   private final UserRepository userRepository;
-  private final EventProducer eventProducer;
+  private final EventOutboxService eventOutboxService;
   private final UserValidator userValidator;
 
   private final UserManagerDao userManagerDao;
 
+  /* Users by email, as every authenticated request looks up its principal.
+     Entries are invalidated when users are saved by this instance,
+     and expire after the TTL for changes made by other instances. */
+  private final Cache<String, User> usersByEmail;
+
+  public UserService(
+      UserRepository userRepository,
+      EventOutboxService eventOutboxService,
+      UserValidator userValidator,
+      UserManagerDao userManagerDao,
+      @Value("${user.cache.ttlInSeconds}") long cacheTtlInSeconds,
+      @Value("${user.cache.maxSize}") long cacheMaxSize) {
+    this.userRepository = userRepository;
+    this.eventOutboxService = eventOutboxService;
+    this.userValidator = userValidator;
+    this.userManagerDao = userManagerDao;
+    this.usersByEmail = Caffeine.newBuilder()
+        .maximumSize(cacheMaxSize)
+        .expireAfterWrite(Duration.ofSeconds(cacheTtlInSeconds))
+        .build();
+  }
+
   public User getById(String userId) {
     return userRepository.getById(userId);
   }
 
   public User getByEmail(String email) {
-    return userRepository.getByEmail(email);
+    // Unknown emails are not cached: the mapping function returns null
+    return usersByEmail.get(email, userRepository::getByEmail);
   }
 
   @Transactional
   public List<User> saveAll(List<User> users) {
     userValidator.accept(users);
     List<User> savedUsers = userRepository.saveAll(users);
-    eventProducer.accept(users.stream()
+    eventOutboxService.accept(users.stream()
         .map(this::toTypedEvent)
         .collect(toUnmodifiableList()));
+    invalidateCachedUsers(savedUsers);
     return savedUsers;
   }
 
+  private void invalidateCachedUsers(List<User> users) {
+    Set<String> ids = users.stream().map(User::getId).collect(toUnmodifiableSet());
+    Runnable invalidation = () ->
+        // Cached users are also matched by id, as their email may have changed
+        usersByEmail.asMap().values().removeIf(user -> ids.contains(user.getId()));
+    invalidation.run();
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      // Until the commit, concurrent requests may still read and cache the previous version
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+              invalidation.run();
+            }
+          });
+    }
+  }
+
   private TypedUserUpserted toTypedEvent(User user) {
     return new TypedUserUpserted(
         new UserUpserted()
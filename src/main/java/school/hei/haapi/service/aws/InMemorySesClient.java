@@ -0,0 +1,95 @@
+package school.hei.haapi.service.aws;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.services.ses.SesClient;
+import software.amazon.awssdk.services.ses.model.GetSendQuotaRequest;
+import software.amazon.awssdk.services.ses.model.GetSendQuotaResponse;
+import software.amazon.awssdk.services.ses.model.SendEmailRequest;
+import software.amazon.awssdk.services.ses.model.SendEmailResponse;
+import software.amazon.awssdk.services.ses.model.SesException;
+
+import static java.util.UUID.randomUUID;
+
+/*
+ * Local stand-in for SES, to run the sending of emails offline (aws.ses.inMemory=true).
+ * Emails are only kept in memory, and are throttled like SES does
+ * when more of them are sent within a second than the max send rate.
+ * */
+@Slf4j
+public class InMemorySesClient implements SesClient {
+  private final double maxSendRate;
+  private final ConcurrentLinkedQueue<SentEmail> sentEmails = new ConcurrentLinkedQueue<>();
+  private long currentSecond;
+  private int sentInCurrentSecond;
+
+  public InMemorySesClient(double maxSendRate) {
+    this.maxSendRate = maxSendRate;
+  }
+
+  @Override
+  public GetSendQuotaResponse getSendQuota(GetSendQuotaRequest request) {
+    return GetSendQuotaResponse.builder()
+        .maxSendRate(maxSendRate)
+        .max24HourSend(maxSendRate * 86_400)
+        .sentLast24Hours((double) sentEmails.size())
+        .build();
+  }
+
+  @Override
+  public SendEmailResponse sendEmail(SendEmailRequest request) {
+    throttle(1);
+    request.destination().toAddresses().forEach(recipient -> sentEmails.add(new SentEmail(
+        recipient, request.message().subject().data(), request.message().body().html().data())));
+    return SendEmailResponse.builder().messageId(randomUUID().toString()).build();
+  }
+
+  private synchronized void throttle(int nbOfEmails) {
+    long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+    if (second != currentSecond) {
+      currentSecond = second;
+      sentInCurrentSecond = 0;
+    }
+    if (sentInCurrentSecond + nbOfEmails > maxSendRate) {
+      throw (SesException) SesException.builder()
+          .statusCode(400)
+          .message("Maximum sending rate exceeded.")
+          .awsErrorDetails(AwsErrorDetails.builder()
+              .errorCode("Throttling")
+              .errorMessage("Maximum sending rate exceeded.")
+              .serviceName(serviceName())
+              .build())
+          .build();
+    }
+    sentInCurrentSecond += nbOfEmails;
+  }
+
+  public List<SentEmail> getSentEmails() {
+    return List.copyOf(sentEmails);
+  }
+
+  @Override
+  public String serviceName() {
+    return SERVICE_NAME;
+  }
+
+  @Override
+  public void close() {
+    log.info("{} emails were sent in memory", sentEmails.size());
+  }
+
+  @AllArgsConstructor
+  @Getter
+  @ToString
+  public static class SentEmail {
+    private final String recipient;
+    private final String subject;
+    private final String body;
+  }
+}
@@ -1,21 +1,61 @@
 package school.hei.haapi.service.aws;
 
-import lombok.AllArgsConstructor;
-import org.springframework.stereotype.Component;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import school.hei.haapi.model.exception.ApiException;
+import school.hei.haapi.repository.EmailSenderRepository;
 import software.amazon.awssdk.awscore.exception.AwsServiceException;
 import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.services.ses.SesClient;
+import software.amazon.awssdk.services.ses.model.GetSendQuotaResponse;
 import software.amazon.awssdk.services.ses.model.SendEmailRequest;
 
+import static java.util.UUID.randomUUID;
 import static school.hei.haapi.model.exception.ApiException.ExceptionType.SERVER_EXCEPTION;
 
-@Component
+/*
+ * Emails are sent at most at the max send rate of the account, as given by SES,
+ * and sends throttled by SES anyway are retried with a jittered exponential backoff.
+ * The rate is limited by each instance: it is shared evenly by the instances sending emails,
+ * which are counted from the heartbeats they keep saving, so that it follows scaling.
+ * */
 @Service
-@AllArgsConstructor
+@Slf4j
 public class SesService {
   private final SesClient client;
+  private final EmailSenderRepository emailSenderRepository;
+  private final TokenBucket sendRate;
+  private final int maxAttempts;
+  private final Duration retryBaseDelay;
+  private final String senderId = randomUUID().toString();
+  /* Senders that did not beat for that long are no longer counted */
+  private final double senderTimeoutInSeconds;
+  private volatile double accountMaxSendRate;
+  private volatile int nbOfSenders = 1;
+  private volatile boolean sendQuotaLoaded;
+
+  public SesService(
+      SesClient client,
+      EmailSenderRepository emailSenderRepository,
+      @Value("${aws.ses.maxSendRate}") double defaultMaxSendRate,
+      @Value("${aws.ses.maxAttempts}") int maxAttempts,
+      @Value("${aws.ses.retryBaseDelayInMillis}") long retryBaseDelayInMillis,
+      @Value("${aws.ses.senderHeartbeatInMillis}") long senderHeartbeatInMillis) {
+    this.client = client;
+    this.emailSenderRepository = emailSenderRepository;
+    this.accountMaxSendRate = defaultMaxSendRate;
+    this.sendRate = new TokenBucket(defaultMaxSendRate);
+    this.senderTimeoutInSeconds = 3 * senderHeartbeatInMillis / 1_000.;
+    this.maxAttempts = maxAttempts;
+    this.retryBaseDelay = Duration.ofMillis(retryBaseDelayInMillis);
+  }
 
   public void sendEmail(String sender, String recipient,
                         String subject, String htmlBody) {
@@ -28,9 +68,117 @@ public class SesService {
         })
         .build();
     try {
-      client.sendEmail(emailRequest);
+      withRetries(() -> client.sendEmail(emailRequest));
     } catch (AwsServiceException | SdkClientException exception) {
       throw new ApiException(SERVER_EXCEPTION, exception.getMessage());
     }
   }
+
+  /*
+   * Sends are rate limited, then retried while throttled by SES,
+   * e.g. when other clients of the account send at the same time.
+   * */
+  private <T> T withRetries(Supplier<T> send) {
+    loadSendQuota();
+    for (int attempt = 1; ; attempt++) {
+      acquire();
+      try {
+        return send.get();
+      } catch (AwsServiceException e) {
+        if (!e.isThrottlingException() || attempt >= maxAttempts) {
+          throw e;
+        }
+        Duration backoff = backoff(attempt);
+        log.warn("Throttled by SES, retrying in {}", backoff);
+        sleep(backoff);
+      }
+    }
+  }
+
+  /* Between half and all of retryBaseDelay * 2^(attempt - 1) */
+  private Duration backoff(int attempt) {
+    long delayMillis = retryBaseDelay.toMillis() << Math.min(attempt - 1, 20);
+    return Duration.ofMillis(
+        delayMillis / 2 + ThreadLocalRandom.current().nextLong(delayMillis / 2 + 1));
+  }
+
+  private void acquire() {
+    try {
+      sendRate.acquire(1);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ApiException(SERVER_EXCEPTION, e);
+    }
+  }
+
+  private void sleep(Duration duration) {
+    try {
+      Thread.sleep(duration.toMillis());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ApiException(SERVER_EXCEPTION, e);
+    }
+  }
+
+  private void loadSendQuota() {
+    if (!sendQuotaLoaded) {
+      beat();
+      refreshSendQuota();
+    }
+  }
+
+  /* Instances are counted again at each heartbeat, as they are scaled out or in */
+  @Scheduled(fixedDelayString = "${aws.ses.senderHeartbeatInMillis}")
+  public void beat() {
+    try {
+      emailSenderRepository.beat(senderId);
+      emailSenderRepository.deleteStale(senderTimeoutInSeconds);
+      int alive = emailSenderRepository.countAlive(senderTimeoutInSeconds);
+      if (alive != nbOfSenders) {
+        log.info("Email senders: {}", alive);
+      }
+      nbOfSenders = Math.max(alive, 1);
+    } catch (RuntimeException e) {
+      log.warn("Email senders could not be counted, keeping {}", nbOfSenders, e);
+    }
+    updateSendRate();
+  }
+
+  /* Other instances then take its share at their next heartbeat */
+  @PreDestroy
+  public void stopBeating() {
+    try {
+      emailSenderRepository.deleteById(senderId);
+    } catch (RuntimeException e) {
+      log.warn("Email sender could not be deleted, it will expire", e);
+    }
+  }
+
+  private void updateSendRate() {
+    sendRate.setPermitsPerSecond(accountMaxSendRate / nbOfSenders);
+  }
+
+  /* The send rate of the account changes when SES raises its quotas */
+  @Scheduled(
+      initialDelayString = "${aws.ses.quotaRefreshInMillis}",
+      fixedDelayString = "${aws.ses.quotaRefreshInMillis}")
+  public void refreshSendQuota() {
+    try {
+      GetSendQuotaResponse sendQuota = client.getSendQuota();
+      if (sendQuota.maxSendRate() != null && sendQuota.maxSendRate() > 0) {
+        accountMaxSendRate = sendQuota.maxSendRate();
+        updateSendRate();
+      }
+      log.info("SES max send rate: {}/s, of this instance: {}/s",
+          accountMaxSendRate, sendRate.getPermitsPerSecond());
+    } catch (SdkException e) {
+      log.warn("SES send quota could not be read, keeping {}/s",
+          sendRate.getPermitsPerSecond(), e);
+    }
+    sendQuotaLoaded = true;
+  }
+
+  public double getMaxSendRate() {
+    return sendRate.getPermitsPerSecond();
+  }
 }
@@ -0,0 +1,58 @@
+package school.hei.haapi.service.aws;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/*
+ * Permits are refilled continuously at the rate, and up to one second of them can be saved.
+ * Callers reserve their permits first then wait for them outside of the lock, so that a waiting
+ * caller does not delay the reservations of the next ones.
+ * */
+class TokenBucket {
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+  private final LongSupplier nanoTime;
+  private double permitsPerSecond;
+  private double availablePermits;
+  private long lastRefillNanos;
+
+  TokenBucket(double permitsPerSecond) {
+    this(permitsPerSecond, System::nanoTime);
+  }
+
+  TokenBucket(double permitsPerSecond, LongSupplier nanoTime) {
+    this.nanoTime = nanoTime;
+    this.permitsPerSecond = permitsPerSecond;
+    this.availablePermits = permitsPerSecond;
+    this.lastRefillNanos = nanoTime.getAsLong();
+  }
+
+  void acquire(int permits) throws InterruptedException {
+    TimeUnit.NANOSECONDS.sleep(reserve(permits));
+  }
+
+  /* Returns how long to wait before the permits are available */
+  synchronized long reserve(int permits) {
+    refill();
+    availablePermits -= permits;
+    return availablePermits >= 0
+        ? 0
+        : (long) (-availablePermits / permitsPerSecond * NANOS_PER_SECOND);
+  }
+
+  synchronized void setPermitsPerSecond(double permitsPerSecond) {
+    refill();
+    this.permitsPerSecond = permitsPerSecond;
+  }
+
+  synchronized double getPermitsPerSecond() {
+    return permitsPerSecond;
+  }
+
+  private void refill() {
+    long now = nanoTime.getAsLong();
+    availablePermits = Math.min(
+        permitsPerSecond,
+        availablePermits + (now - lastRefillNanos) * permitsPerSecond / NANOS_PER_SECOND);
+    lastRefillNanos = now;
+  }
+}
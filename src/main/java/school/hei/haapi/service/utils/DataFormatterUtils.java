@@ -1,5 +1,7 @@
 package school.hei.haapi.service.utils;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import java.text.NumberFormat;
 import java.time.Instant;
 import java.time.ZoneId;
@@ -8,28 +10,39 @@ import java.time.format.FormatStyle;
 import java.util.Locale;
 import pl.allegro.finance.tradukisto.ValueConverters;
 
+/*
+ * Formatters are built once: DateTimeFormatter is immutable and shared,
+ * while NumberFormat is not thread-safe and is thus kept by thread.
+ * Amounts in words are memoized, as fees amounts come from a small set of values.
+ * */
 public class DataFormatterUtils {
+  private static final DateTimeFormatter COMMON_DATE_FORMATTER = DateTimeFormatter
+      .ofLocalizedDate(FormatStyle.LONG)
+      .withLocale(Locale.FRENCH)
+      // Madagascar's timezone
+      .withZone(ZoneId.of("UTC+3"));
+  private static final ThreadLocal<NumberFormat> NUMBER_FORMAT =
+      ThreadLocal.withInitial(NumberFormat::getNumberInstance);
+  private static final int NUMBER_TO_WORDS_CACHE_MAX_SIZE = 1_000;
+  private static final Cache<Integer, String> NUMBER_TO_WORDS = Caffeine.newBuilder()
+      .maximumSize(NUMBER_TO_WORDS_CACHE_MAX_SIZE)
+      .build();
+
   private DataFormatterUtils() {
 
   }
 
   public static String instantToCommonDate(Instant instant) {
-    DateTimeFormatter formatter = DateTimeFormatter
-        .ofLocalizedDate(FormatStyle.LONG)
-        .withLocale(Locale.FRENCH)
-        // Madagascar's timezone
-        .withZone(ZoneId.of("UTC+3"));
-    return formatter.format(instant);
+    return COMMON_DATE_FORMATTER.format(instant);
   }
 
   public static String numberToReadable(int number) {
-    NumberFormat numberFormat = NumberFormat.getNumberInstance();
-    return numberFormat.format(number);
+    return NUMBER_FORMAT.get().format(number);
   }
 
   public static String numberToWords(int number) {
-    ValueConverters intConverter = ValueConverters.FRENCH_INTEGER;
-    return intConverter.asWords(number).toUpperCase();
+    return NUMBER_TO_WORDS.get(
+        number, key -> ValueConverters.FRENCH_INTEGER.asWords(key).toUpperCase());
   }
 
 }
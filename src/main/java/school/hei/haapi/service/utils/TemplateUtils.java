@@ -1,30 +0,0 @@
-package school.hei.haapi.service.utils;
-
-import org.thymeleaf.TemplateEngine;
-import org.thymeleaf.context.Context;
-import org.thymeleaf.templatemode.TemplateMode;
-import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
-
-public class TemplateUtils {
-  private TemplateUtils() {
-
-  }
-
-  private static TemplateEngine initializeTemplateEngine() {
-    ClassLoaderTemplateResolver templateResolver = new ClassLoaderTemplateResolver();
-    templateResolver.setPrefix("/templates/");
-    templateResolver.setSuffix(".html");
-    templateResolver.setCharacterEncoding("UTF-8");
-    templateResolver.setTemplateMode(TemplateMode.HTML);
-
-    TemplateEngine templateEngine = new TemplateEngine();
-    templateEngine.setTemplateResolver(templateResolver);
-    return templateEngine;
-  }
-
-  public static String htmlToString(String template, Context context) {
-    TemplateEngine templateEngine = initializeTemplateEngine();
-    return templateEngine.process(template, context);
-  }
-
-}
@@ -0,0 +1,2 @@
+create index if not exists fee_status_due_datetime_id_index on "fee" (status, due_datetime desc, id desc);
+create index if not exists fee_user_id_due_datetime_id_index on "fee" (user_id, due_datetime desc, id desc);
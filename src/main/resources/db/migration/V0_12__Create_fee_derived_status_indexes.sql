@@ -0,0 +1,6 @@
+create index if not exists fee_unpaid_due_datetime_id_index on "fee" (due_datetime desc, id desc)
+    where remaining_amount > 0;
+create index if not exists fee_paid_due_datetime_id_index on "fee" (due_datetime desc, id desc)
+    where remaining_amount = 0;
+create index if not exists fee_unpaid_id_index on "fee" (id)
+    where remaining_amount > 0;
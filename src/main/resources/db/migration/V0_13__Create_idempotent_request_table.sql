@@ -0,0 +1,11 @@
+create table if not exists "idempotent_request"
+(
+    id                  varchar
+        constraint idempotent_request_pk primary key,
+    scope               varchar                  not null,
+    response            text,
+    creation_datetime   timestamp with time zone not null default now(),
+    expiration_datetime timestamp with time zone not null
+);
+create index if not exists idempotent_request_expiration_datetime_index
+    on "idempotent_request" (expiration_datetime);
@@ -0,0 +1,16 @@
+create extension if not exists pg_trgm;
+create extension if not exists unaccent;
+
+-- unaccent() is only stable, as it depends on its dictionary:
+-- this immutable wrapper, bound to the default dictionary, can be used in indexes
+create or replace function f_unaccent(text) returns text as
+$$
+select public.unaccent('public.unaccent', $1)
+$$ language sql immutable parallel safe strict;
+
+create index if not exists user_ref_trgm_index
+    on "user" using gin (lower(f_unaccent(ref)) gin_trgm_ops);
+create index if not exists user_first_name_trgm_index
+    on "user" using gin (lower(f_unaccent(first_name)) gin_trgm_ops);
+create index if not exists user_last_name_trgm_index
+    on "user" using gin (lower(f_unaccent(last_name)) gin_trgm_ops);
@@ -0,0 +1,10 @@
+create table if not exists "event_outbox"
+(
+    id                varchar
+        constraint event_outbox_pk primary key default uuid_generate_v4(),
+    type_name         varchar                  not null,
+    payload           text                     not null,
+    creation_datetime timestamp with time zone not null default now()
+);
+create index if not exists event_outbox_creation_datetime_index
+    on "event_outbox" (creation_datetime, id);
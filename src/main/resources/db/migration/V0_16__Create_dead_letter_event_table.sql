@@ -0,0 +1,12 @@
+create table if not exists "dead_letter_event"
+(
+    id                varchar
+        constraint dead_letter_event_pk primary key default uuid_generate_v4(),
+    type_name         varchar                  not null,
+    payload           text                     not null,
+    receive_count     integer                  not null,
+    error             text,
+    creation_datetime timestamp with time zone not null default now()
+);
+create index if not exists dead_letter_event_creation_datetime_index
+    on "dead_letter_event" (creation_datetime);
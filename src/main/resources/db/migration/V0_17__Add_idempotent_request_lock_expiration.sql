@@ -0,0 +1,2 @@
+alter table "idempotent_request"
+    add column if not exists lock_expiration_datetime timestamp with time zone;
@@ -0,0 +1,2 @@
+alter table "event_outbox"
+    add column if not exists attempts integer not null default 0;
@@ -0,0 +1,2 @@
+alter table "idempotent_request"
+    add column if not exists claim_token varchar;
@@ -0,0 +1,2 @@
+alter table "event_outbox"
+    add column if not exists lease_expiration_datetime timestamp with time zone;
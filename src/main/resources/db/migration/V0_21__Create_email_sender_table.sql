@@ -0,0 +1,6 @@
+create table if not exists "email_sender"
+(
+    id                 varchar
+        constraint email_sender_pk primary key,
+    heartbeat_datetime timestamp with time zone not null
+);
@@ -0,0 +1,8 @@
+insert into "dead_letter_event"
+(id, type_name, payload, receive_count, error, creation_datetime)
+values ('dead_letter_event1_id', 'school.hei.haapi.endpoint.event.model.gen.UserUpserted',
+        '{"userId":"student1_id","email":"test+ryan@hei.school"}', 5,
+        'Cognito is not available', '2022-01-10T08:00:00.00Z'),
+       ('dead_letter_event2_id', 'school.hei.haapi.endpoint.event.model.gen.UserUpserted',
+        '{"userId":"student2_id","email":"test+student2@hei.school"}', 5,
+        'Cognito is not available', '2022-01-11T08:00:00.00Z');
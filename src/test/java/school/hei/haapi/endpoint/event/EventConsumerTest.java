@@ -1,29 +1,68 @@
 package school.hei.haapi.endpoint.event;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import school.hei.haapi.endpoint.event.EventConsumer.AcknowledgeableTypedEvent;
+import school.hei.haapi.endpoint.event.model.TypedEvent;
+import school.hei.haapi.endpoint.event.model.TypedLateFeeVerified;
 import school.hei.haapi.endpoint.event.model.TypedUserUpserted;
+import school.hei.haapi.endpoint.event.model.gen.LateFeeVerified;
 import school.hei.haapi.endpoint.event.model.gen.UserUpserted;
 
 import static java.util.UUID.randomUUID;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 class EventConsumerTest {
   EventConsumer eventConsumer;
   EventServiceInvoker eventServiceInvoker;
+  SqsVisibilityHeartbeat visibilityHeartbeat;
+  EventFailureHandler eventFailureHandler;
 
   static final Duration TIMEOUT = Duration.ofSeconds(3);
 
   @BeforeEach
   void setUp() {
     eventServiceInvoker = mock(EventServiceInvoker.class);
-    eventConsumer = new EventConsumer(eventServiceInvoker);
+    visibilityHeartbeat = mock(SqsVisibilityHeartbeat.class);
+    eventFailureHandler = mock(EventFailureHandler.class);
+    eventConsumer = new EventConsumer(
+        eventServiceInvoker, visibilityHeartbeat, eventFailureHandler,
+        4, 10, Map.of("LateFeeVerified", 1), Map.of(), 1);
+  }
+
+  @AfterEach
+  void tearDown() throws InterruptedException {
+    eventConsumer.shutdown();
+  }
+
+  private static AcknowledgeableTypedEvent lateFeeVerified(Runnable acknowledger) {
+    return new AcknowledgeableTypedEvent(
+        new TypedLateFeeVerified(
+            LateFeeVerified.builder().comment(randomUUID().toString()).build()),
+        acknowledger);
   }
 
   @Test
@@ -50,4 +89,228 @@ class EventConsumerTest {
     verify(eventServiceInvoker, timeout(TIMEOUT.toMillis())).accept(userUpserted);
     verify(acknowledger, timeout(TIMEOUT.toMillis()).times(0)).run();
   }
-}
\ No newline at end of file
+
+  @Test
+  void failed_events_are_given_to_the_failure_handler() {
+    TypedUserUpserted userUpserted = new TypedUserUpserted(new UserUpserted());
+    RuntimeException error = new RuntimeException("Cognito is not available");
+    doThrow(error).when(eventServiceInvoker).accept(userUpserted);
+    AcknowledgeableTypedEvent ackTypedEvent = new AcknowledgeableTypedEvent(
+        userUpserted, "receiptHandle", 2, mock(Runnable.class));
+
+    eventConsumer.accept(List.of(ackTypedEvent));
+
+    verify(eventFailureHandler, timeout(TIMEOUT.toMillis())).onFailure(ackTypedEvent, error);
+    // Stopped once, before the failure handler changes the visibility
+    InOrder inOrder = inOrder(visibilityHeartbeat, eventFailureHandler);
+    inOrder.verify(visibilityHeartbeat, times(1)).unregister("receiptHandle");
+    inOrder.verify(eventFailureHandler).onFailure(ackTypedEvent, error);
+  }
+
+  @Test
+  void in_flight_events_reduce_remaining_capacity() throws InterruptedException {
+    CountDownLatch handling = new CountDownLatch(1);
+    doAnswer(invocation -> {
+      handling.await();
+      return null;
+    }).when(eventServiceInvoker).accept(any());
+    int initialCapacity = eventConsumer.getRemainingCapacity();
+    TypedUserUpserted userUpserted = new TypedUserUpserted(new UserUpserted());
+
+    eventConsumer.accept(List.of(
+        new AcknowledgeableTypedEvent(userUpserted, mock(Runnable.class)),
+        new AcknowledgeableTypedEvent(userUpserted, mock(Runnable.class))));
+
+    assertEquals(2, eventConsumer.getInFlightCount());
+    assertEquals(initialCapacity - 2, eventConsumer.getRemainingCapacity());
+    handling.countDown();
+    verify(eventServiceInvoker, timeout(TIMEOUT.toMillis()).times(2)).accept(userUpserted);
+    Thread.sleep(100);
+    assertEquals(0, eventConsumer.getInFlightCount());
+  }
+
+  @Test
+  void events_of_a_type_are_handled_within_its_concurrency_limit() {
+    AtomicInteger concurrent = new AtomicInteger();
+    AtomicInteger maxConcurrent = new AtomicInteger();
+    doAnswer(invocation -> {
+      maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+      Thread.sleep(20);
+      concurrent.decrementAndGet();
+      return null;
+    }).when(eventServiceInvoker).accept(any());
+    Runnable acknowledger = mock(Runnable.class);
+
+    eventConsumer.accept(List.of(
+        lateFeeVerified(acknowledger), lateFeeVerified(acknowledger),
+        lateFeeVerified(acknowledger), lateFeeVerified(acknowledger)));
+
+    verify(acknowledger, timeout(TIMEOUT.toMillis()).times(4)).run();
+    assertEquals(1, maxConcurrent.get());
+  }
+
+  @Test
+  void other_types_are_not_blocked_by_a_type_at_its_limit() throws InterruptedException {
+    CountDownLatch lateFeeHandling = new CountDownLatch(1);
+    doAnswer(invocation -> {
+      lateFeeHandling.await();
+      return null;
+    }).when(eventServiceInvoker).accept(any(TypedLateFeeVerified.class));
+    Runnable userAcknowledger = mock(Runnable.class);
+
+    eventConsumer.accept(List.of(
+        lateFeeVerified(mock(Runnable.class)), lateFeeVerified(mock(Runnable.class)),
+        lateFeeVerified(mock(Runnable.class)), lateFeeVerified(mock(Runnable.class)),
+        new AcknowledgeableTypedEvent(
+            new TypedUserUpserted(new UserUpserted()), userAcknowledger)));
+
+    verify(userAcknowledger, timeout(TIMEOUT.toMillis())).run();
+    assertEquals(3, eventConsumer.getMetrics().getQueueDepth());
+    lateFeeHandling.countDown();
+  }
+
+  @Test
+  void metrics_count_handled_and_failed_events() {
+    TypedUserUpserted failing = new TypedUserUpserted(new UserUpserted().email("failing"));
+    doThrow(RuntimeException.class).when(eventServiceInvoker).accept(failing);
+    Runnable acknowledger = mock(Runnable.class);
+
+    eventConsumer.accept(List.of(
+        new AcknowledgeableTypedEvent(failing, mock(Runnable.class)),
+        new AcknowledgeableTypedEvent(
+            new TypedUserUpserted(new UserUpserted()), acknowledger)));
+
+    verify(acknowledger, timeout(TIMEOUT.toMillis())).run();
+    verify(eventServiceInvoker, timeout(TIMEOUT.toMillis())).accept(failing);
+    EventConsumer.Metrics metrics = eventConsumer.getMetrics();
+    assertEquals(1, metrics.getHandled());
+    assertEquals(1, metrics.getFailed());
+    EventConsumer.LaneMetrics laneMetrics = metrics.getByEventType().get("UserUpserted");
+    assertEquals(1, laneMetrics.getHandled());
+    assertEquals(1, laneMetrics.getFailed());
+    assertEquals(4, laneMetrics.getMaxConcurrency());
+  }
+
+  @Test
+  void events_of_higher_priority_are_handled_first() throws InterruptedException {
+    eventConsumer.shutdown();
+    eventConsumer = new EventConsumer(
+        eventServiceInvoker, visibilityHeartbeat, eventFailureHandler, 1, 10,
+        Map.of("LateFeeVerified", 3), Map.of("UserUpserted", 10), 1);
+    CountDownLatch firstHandling = new CountDownLatch(1);
+    List<String> handledTypes = Collections.synchronizedList(new ArrayList<>());
+    doAnswer(invocation -> {
+      firstHandling.await();
+      handledTypes.add(invocation.<TypedEvent>getArgument(0).getTypeName());
+      return null;
+    }).when(eventServiceInvoker).accept(any());
+    Runnable acknowledger = mock(Runnable.class);
+
+    eventConsumer.accept(List.of(
+        lateFeeVerified(acknowledger), lateFeeVerified(acknowledger),
+        lateFeeVerified(acknowledger),
+        new AcknowledgeableTypedEvent(
+            new TypedUserUpserted(new UserUpserted()), acknowledger)));
+    firstHandling.countDown();
+
+    verify(acknowledger, timeout(TIMEOUT.toMillis()).times(4)).run();
+    assertEquals(
+        List.of(
+            LateFeeVerified.class.getTypeName(),
+            UserUpserted.class.getTypeName(),
+            LateFeeVerified.class.getTypeName(),
+            LateFeeVerified.class.getTypeName()),
+        handledTypes);
+  }
+
+  @Test
+  void accepted_events_are_drained_on_shutdown() throws InterruptedException {
+    doAnswer(invocation -> {
+      Thread.sleep(100);
+      return null;
+    }).when(eventServiceInvoker).accept(any());
+    Runnable acknowledger = mock(Runnable.class);
+    eventConsumer.accept(List.of(lateFeeVerified(acknowledger), lateFeeVerified(acknowledger)));
+
+    eventConsumer.shutdown();
+
+    verify(acknowledger, times(2)).run();
+    assertEquals(0, eventConsumer.getInFlightCount());
+  }
+
+  @Test
+  void messages_are_kept_invisible_until_handled() {
+    CountDownLatch handling = new CountDownLatch(1);
+    doAnswer(invocation -> {
+      handling.await();
+      return null;
+    }).when(eventServiceInvoker).accept(any());
+    Runnable acknowledger = mock(Runnable.class);
+
+    eventConsumer.accept(List.of(new AcknowledgeableTypedEvent(
+        new TypedUserUpserted(new UserUpserted()), "receiptHandle", 1, acknowledger)));
+
+    verify(visibilityHeartbeat).register(eq("receiptHandle"), any());
+    verify(visibilityHeartbeat, never()).unregister(any());
+    handling.countDown();
+    verify(acknowledger, timeout(TIMEOUT.toMillis())).run();
+    verify(visibilityHeartbeat, timeout(TIMEOUT.toMillis())).unregister("receiptHandle");
+  }
+
+  @Test
+  void abandoned_events_are_interrupted_and_not_ack() throws InterruptedException {
+    CountDownLatch interrupted = new CountDownLatch(1);
+    doAnswer(invocation -> {
+      try {
+        new CountDownLatch(1).await();
+      } catch (InterruptedException e) {
+        interrupted.countDown();
+      }
+      return null;
+    }).when(eventServiceInvoker).accept(any());
+    Runnable acknowledger = mock(Runnable.class);
+    eventConsumer.accept(List.of(new AcknowledgeableTypedEvent(
+        new TypedUserUpserted(new UserUpserted()), "receiptHandle", 1, acknowledger)));
+    ArgumentCaptor<Runnable> onAbandoned = ArgumentCaptor.forClass(Runnable.class);
+    verify(visibilityHeartbeat).register(eq("receiptHandle"), onAbandoned.capture());
+    verify(eventServiceInvoker, timeout(TIMEOUT.toMillis())).accept(any());
+
+    onAbandoned.getValue().run();
+
+    assertTrue(interrupted.await(TIMEOUT.toMillis(), MILLISECONDS));
+    Thread.sleep(100);
+    verify(acknowledger, never()).run();
+    verify(eventFailureHandler, never()).onFailure(any(), any());
+    assertEquals(0, eventConsumer.getInFlightCount());
+    assertEquals(1, eventConsumer.getMetrics().getFailed());
+  }
+
+  @Test
+  void accept_blocks_while_max_in_flight_events_are_handled() throws InterruptedException {
+    eventConsumer.shutdown();
+    eventConsumer = new EventConsumer(
+        eventServiceInvoker, visibilityHeartbeat, eventFailureHandler,
+        4, 1, Map.of(), Map.of(), 1);
+    CountDownLatch handling = new CountDownLatch(1);
+    doAnswer(invocation -> {
+      handling.await();
+      return null;
+    }).when(eventServiceInvoker).accept(any());
+    Runnable acknowledger = mock(Runnable.class);
+    TypedUserUpserted userUpserted = new TypedUserUpserted(new UserUpserted());
+    Thread poller = new Thread(() -> eventConsumer.accept(List.of(
+        new AcknowledgeableTypedEvent(userUpserted, acknowledger),
+        new AcknowledgeableTypedEvent(userUpserted, acknowledger))));
+
+    poller.start();
+
+    poller.join(200);
+    assertTrue(poller.isAlive());
+    assertEquals(1, eventConsumer.getInFlightCount());
+    verify(eventServiceInvoker, times(1)).accept(userUpserted);
+    handling.countDown();
+    poller.join(TIMEOUT.toMillis());
+    assertFalse(poller.isAlive());
+    verify(acknowledger, timeout(TIMEOUT.toMillis()).times(2)).run();
+  }
+}
@@ -0,0 +1,119 @@
+package school.hei.haapi.endpoint.event;
+
+import java.time.Duration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import school.hei.haapi.endpoint.event.EventConsumer.AcknowledgeableTypedEvent;
+import school.hei.haapi.endpoint.event.model.TypedCompactLateFeeVerified;
+import school.hei.haapi.endpoint.event.model.TypedLateFeeVerified;
+import school.hei.haapi.endpoint.event.model.TypedUserUpserted;
+import school.hei.haapi.endpoint.event.model.gen.CompactLateFeeVerified;
+import school.hei.haapi.endpoint.event.model.gen.ConcernedStudent;
+import school.hei.haapi.endpoint.event.model.gen.LateFeeVerified;
+import school.hei.haapi.endpoint.event.model.gen.UserUpserted;
+import school.hei.haapi.service.DeadLetterEventService;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityRequest;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EventFailureHandlerTest {
+  EventFailureHandler eventFailureHandler;
+  SqsClient sqsClient;
+  SqsAcknowledger sqsAcknowledger;
+  DeadLetterEventService deadLetterEventService;
+  RuntimeException error = new RuntimeException("Cognito is not available");
+
+  @BeforeEach
+  void setUp() {
+    sqsClient = mock(SqsClient.class);
+    sqsAcknowledger = mock(SqsAcknowledger.class);
+    deadLetterEventService = mock(DeadLetterEventService.class);
+    eventFailureHandler = new EventFailureHandler(
+        "queueUrl", sqsClient, sqsAcknowledger, deadLetterEventService, 5, 30, 900);
+  }
+
+  private static AcknowledgeableTypedEvent ackTypedEvent(int receiveCount) {
+    return new AcknowledgeableTypedEvent(
+        new TypedUserUpserted(new UserUpserted().email("test@hei.school")),
+        "receiptHandle", receiveCount, mock(Runnable.class));
+  }
+
+  @Test
+  void failed_events_are_retried_after_a_backoff() {
+    eventFailureHandler.onFailure(ackTypedEvent(3), error);
+
+    ArgumentCaptor<ChangeMessageVisibilityRequest> captor =
+        ArgumentCaptor.forClass(ChangeMessageVisibilityRequest.class);
+    verify(sqsClient).changeMessageVisibility(captor.capture());
+    int delay = captor.getValue().visibilityTimeout();
+    // Between half and all of 30s * 2^2
+    assertTrue(60 <= delay && delay <= 120, "delay=" + delay);
+    verify(deadLetterEventService, never()).save(any(), anyInt(), any());
+    verify(sqsAcknowledger, never()).acknowledge(any());
+  }
+
+  @Test
+  void backoff_is_capped() {
+    for (int receiveCount = 1; receiveCount < 100; receiveCount++) {
+      Duration backoff = eventFailureHandler.backoff(receiveCount);
+      assertTrue(backoff.compareTo(Duration.ofSeconds(15)) >= 0, "backoff=" + backoff);
+      assertTrue(backoff.compareTo(Duration.ofSeconds(900)) <= 0, "backoff=" + backoff);
+    }
+  }
+
+  @Test
+  void events_failing_too_many_times_are_dead_lettered() {
+    AcknowledgeableTypedEvent ackTypedEvent = ackTypedEvent(5);
+
+    eventFailureHandler.onFailure(ackTypedEvent, error);
+
+    verify(deadLetterEventService).save(ackTypedEvent.getTypedEvent(), 5, error);
+    verify(sqsAcknowledger).acknowledge("receiptHandle");
+    verify(sqsClient, never()).changeMessageVisibility((ChangeMessageVisibilityRequest) any());
+  }
+
+  @Test
+  void hydrated_events_are_dead_lettered_as_received() {
+    TypedCompactLateFeeVerified compact = new TypedCompactLateFeeVerified(
+        new CompactLateFeeVerified("fee1_id", "student1_id"));
+    AcknowledgeableTypedEvent ackTypedEvent = new AcknowledgeableTypedEvent(
+        compact, "receiptHandle", 5, mock(Runnable.class))
+        .withTypedEvent(new TypedLateFeeVerified(LateFeeVerified.builder()
+            .student(ConcernedStudent.builder().email("test@hei.school").build())
+            .build()));
+
+    eventFailureHandler.onFailure(ackTypedEvent, error);
+
+    verify(deadLetterEventService).save(compact, 5, error);
+    verify(sqsAcknowledger).acknowledge("receiptHandle");
+  }
+
+  @Test
+  void events_not_dead_lettered_are_not_deleted() {
+    when(deadLetterEventService.save(any(), anyInt(), any()))
+        .thenThrow(new RuntimeException("Database is not available"));
+
+    eventFailureHandler.onFailure(ackTypedEvent(5), error);
+
+    verify(sqsAcknowledger, never()).acknowledge(any());
+  }
+
+  @Test
+  void sqs_errors_are_tolerated() {
+    when(sqsClient.changeMessageVisibility((ChangeMessageVisibilityRequest) any()))
+        .thenThrow(SdkClientException.create("SQS is not available"));
+
+    eventFailureHandler.onFailure(ackTypedEvent(1), error);
+
+    verify(sqsAcknowledger, never()).acknowledge(any());
+  }
+}
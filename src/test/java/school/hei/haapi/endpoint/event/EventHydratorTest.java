@@ -0,0 +1,146 @@
+package school.hei.haapi.endpoint.event;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import school.hei.haapi.endpoint.event.EventConsumer.AcknowledgeableTypedEvent;
+import school.hei.haapi.endpoint.event.model.TypedCompactLateFeeVerified;
+import school.hei.haapi.endpoint.event.model.TypedCompactLateFeesDigestVerified;
+import school.hei.haapi.endpoint.event.model.TypedUserUpserted;
+import school.hei.haapi.endpoint.event.model.gen.CompactLateFeeVerified;
+import school.hei.haapi.endpoint.event.model.gen.CompactLateFeesDigestVerified;
+import school.hei.haapi.endpoint.event.model.gen.LateFeeVerified;
+import school.hei.haapi.endpoint.event.model.gen.LateFeesDigestVerified;
+import school.hei.haapi.endpoint.event.model.gen.UserUpserted;
+import school.hei.haapi.model.Fee;
+import school.hei.haapi.model.User;
+import school.hei.haapi.repository.FeeRepository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EventHydratorTest {
+  EventHydrator eventHydrator;
+  FeeRepository feeRepository;
+
+  @BeforeEach
+  void setUp() {
+    feeRepository = mock(FeeRepository.class);
+    eventHydrator = new EventHydrator(feeRepository);
+  }
+
+  private static Fee fee(String id, String studentId, int remainingAmount) {
+    return Fee.builder()
+        .id(id)
+        .student(User.builder().id(studentId).email(studentId + "@hei.school").build())
+        .remainingAmount(remainingAmount)
+        .dueDatetime(Instant.parse("2023-02-08T08:30:24Z"))
+        .build();
+  }
+
+  private static AcknowledgeableTypedEvent compactLateFee(
+      String feeId, String studentId, Runnable acknowledger) {
+    return new AcknowledgeableTypedEvent(
+        new TypedCompactLateFeeVerified(new CompactLateFeeVerified(feeId, studentId)),
+        "receiptHandle_" + feeId, 2, acknowledger);
+  }
+
+  @Test
+  void compact_events_are_hydrated_with_a_single_query() {
+    when(feeRepository.findAllWithStudentByIdIn(Set.of("fee1_id", "fee2_id"))).thenReturn(List.of(
+        fee("fee2_id", "student2_id", 2000), fee("fee1_id", "student1_id", 1000)));
+    Runnable acknowledger = mock(Runnable.class);
+
+    List<AcknowledgeableTypedEvent> actual = eventHydrator.hydrate(List.of(
+        compactLateFee("fee1_id", "student1_id", acknowledger),
+        compactLateFee("fee2_id", "student2_id", acknowledger)));
+
+    verify(feeRepository, times(1)).findAllWithStudentByIdIn(any());
+    assertEquals(2, actual.size());
+    LateFeeVerified first = (LateFeeVerified) actual.get(0).getTypedEvent().getPayload();
+    assertEquals("student1_id@hei.school", first.getStudent().getEmail());
+    assertEquals(1000, first.getRemainingAmount());
+    assertEquals("receiptHandle_fee1_id", actual.get(0).getReceiptHandle());
+    assertEquals(
+        new CompactLateFeeVerified("fee1_id", "student1_id"),
+        actual.get(0).getReceivedTypedEvent().getPayload());
+    assertEquals(2, actual.get(0).getReceiveCount());
+    actual.get(1).ack();
+    verify(acknowledger, times(1)).run();
+  }
+
+  @Test
+  void events_of_paid_or_missing_fees_are_acknowledged_and_dropped() {
+    when(feeRepository.findAllWithStudentByIdIn(any())).thenReturn(List.of(
+        fee("fee1_id", "student1_id", 0), fee("fee2_id", "student1_id", 2000)));
+    Runnable acknowledger = mock(Runnable.class);
+
+    List<AcknowledgeableTypedEvent> actual = eventHydrator.hydrate(List.of(
+        compactLateFee("fee1_id", "student1_id", acknowledger),
+        compactLateFee("fee2_id", "student2_id", acknowledger),
+        compactLateFee("fee3_id", "student1_id", acknowledger)));
+
+    assertEquals(0, actual.size());
+    verify(acknowledger, times(3)).run();
+  }
+
+  @Test
+  void digests_are_hydrated_with_late_fees_of_the_batch_in_a_single_query() {
+    when(feeRepository.findAllWithStudentByIdIn(Set.of("fee1_id", "fee2_id", "fee3_id")))
+        .thenReturn(List.of(
+            fee("fee1_id", "student1_id", 1000),
+            fee("fee2_id", "student1_id", 0),
+            fee("fee3_id", "student1_id", 3000)));
+    TypedCompactLateFeesDigestVerified compactDigest = new TypedCompactLateFeesDigestVerified(
+        new CompactLateFeesDigestVerified("student1_id", List.of("fee3_id", "fee2_id", "fee1_id")));
+
+    List<AcknowledgeableTypedEvent> actual = eventHydrator.hydrate(List.of(
+        compactLateFee("fee1_id", "student1_id", mock(Runnable.class)),
+        new AcknowledgeableTypedEvent(compactDigest, "receiptHandle", 1, mock(Runnable.class))));
+
+    verify(feeRepository, times(1)).findAllWithStudentByIdIn(any());
+    assertEquals(2, actual.size());
+    LateFeesDigestVerified digest =
+        (LateFeesDigestVerified) actual.get(1).getTypedEvent().getPayload();
+    assertEquals("student1_id@hei.school", digest.getStudent().getEmail());
+    assertEquals(2, digest.getLateFees().size());
+    assertEquals(3000, digest.getLateFees().get(0).getRemainingAmount());
+    assertEquals(4000, digest.getTotalRemainingAmount());
+    assertSame(compactDigest, actual.get(1).getReceivedTypedEvent());
+  }
+
+  @Test
+  void digests_without_late_fees_left_are_acknowledged_and_dropped() {
+    when(feeRepository.findAllWithStudentByIdIn(any())).thenReturn(List.of(
+        fee("fee1_id", "student1_id", 0), fee("fee2_id", "student2_id", 2000)));
+    Runnable acknowledger = mock(Runnable.class);
+
+    List<AcknowledgeableTypedEvent> actual = eventHydrator.hydrate(List.of(
+        new AcknowledgeableTypedEvent(
+            new TypedCompactLateFeesDigestVerified(new CompactLateFeesDigestVerified(
+                "student1_id", List.of("fee1_id", "fee2_id"))),
+            acknowledger)));
+
+    assertEquals(0, actual.size());
+    verify(acknowledger, times(1)).run();
+  }
+
+  @Test
+  void other_events_are_kept_as_they_are() {
+    AcknowledgeableTypedEvent userUpserted = new AcknowledgeableTypedEvent(
+        new TypedUserUpserted(new UserUpserted().userId("user1_id")), mock(Runnable.class));
+
+    List<AcknowledgeableTypedEvent> actual = eventHydrator.hydrate(List.of(userUpserted));
+
+    assertSame(userUpserted, actual.get(0));
+    verify(feeRepository, never()).findAllWithStudentByIdIn(any());
+  }
+}
@@ -1,14 +1,20 @@
 package school.hei.haapi.endpoint.event;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import school.hei.haapi.endpoint.event.EventConsumer.AcknowledgeableTypedEvent;
 import school.hei.haapi.endpoint.event.model.gen.UserUpserted;
+import school.hei.haapi.repository.FeeRepository;
+import school.hei.haapi.service.DeadLetterEventService;
 import software.amazon.awssdk.services.sqs.SqsClient;
 import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.QueueAttributeName;
 import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
 import software.amazon.awssdk.services.sqs.model.ReceiveMessageResponse;
 
@@ -17,26 +23,105 @@ import static java.util.UUID.randomUUID;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static software.amazon.awssdk.services.sqs.model.MessageSystemAttributeName.APPROXIMATE_RECEIVE_COUNT;
 
 class EventPollerTest {
   EventPoller eventPoller;
   SqsClient sqsClient;
   EventConsumer eventConsumer;
+  SqsAcknowledger sqsAcknowledger;
+  SqsVisibilityHeartbeat visibilityHeartbeat;
+  DeadLetterEventService deadLetterEventService;
+
+  static final Duration TIMEOUT = Duration.ofSeconds(3);
 
   @BeforeEach
   void setUp() {
     sqsClient = mock(SqsClient.class);
     eventConsumer = mock(EventConsumer.class);
+    sqsAcknowledger = mock(SqsAcknowledger.class);
+    visibilityHeartbeat = mock(SqsVisibilityHeartbeat.class);
+    when(visibilityHeartbeat.getVisibilityTimeout()).thenReturn(Duration.ofSeconds(60));
+    deadLetterEventService = mock(DeadLetterEventService.class);
     eventPoller = new EventPoller(
         "queueUrl",
         sqsClient,
-        new ObjectMapper(),
-        eventConsumer);
+        new TypedEventDecoder(new ObjectMapper()),
+        new EventHydrator(mock(FeeRepository.class)),
+        eventConsumer,
+        sqsAcknowledger,
+        visibilityHeartbeat,
+        deadLetterEventService,
+        1);
+  }
+
+  @AfterEach
+  void tearDown() throws InterruptedException {
+    eventPoller.stop();
+  }
+
+  @Test
+  void workers_poll_continuously_until_stopped() throws InterruptedException {
+    when(eventConsumer.getRemainingCapacity()).thenReturn(20);
+    when(sqsClient.receiveMessage((ReceiveMessageRequest) any())).thenReturn(
+        ReceiveMessageResponse.builder().messages(someMessage(UserUpserted.class)).build());
+
+    eventPoller.start();
+
+    verify(eventConsumer, timeout(TIMEOUT.toMillis()).atLeast(3)).accept(any());
+    eventPoller.stop();
+    assertFalse(eventPoller.isRunning());
+    reset(sqsClient);
+    Thread.sleep(100);
+    verify(sqsClient, never()).receiveMessage((ReceiveMessageRequest) any());
+  }
+
+  @Test
+  void workers_back_off_when_consumer_is_full() throws InterruptedException {
+    when(eventConsumer.getRemainingCapacity()).thenReturn(0);
+
+    eventPoller.start();
+    Thread.sleep(300);
+
+    verify(sqsClient, never()).receiveMessage((ReceiveMessageRequest) any());
+  }
+
+  @Test
+  void workers_receive_at_most_the_remaining_capacity() {
+    when(eventConsumer.getRemainingCapacity()).thenReturn(3);
+    when(sqsClient.receiveMessage((ReceiveMessageRequest) any())).thenReturn(
+        ReceiveMessageResponse.builder().messages(List.of()).build());
+
+    eventPoller.start();
+
+    ArgumentCaptor<ReceiveMessageRequest> captor =
+        ArgumentCaptor.forClass(ReceiveMessageRequest.class);
+    verify(sqsClient, timeout(TIMEOUT.toMillis()).atLeastOnce()).receiveMessage(captor.capture());
+    assertEquals(3, captor.getValue().maxNumberOfMessages());
+    assertEquals(60, captor.getValue().visibilityTimeout());
+  }
+
+  @Test
+  void workers_keep_polling_after_errors() {
+    when(eventConsumer.getRemainingCapacity()).thenReturn(20);
+    when(sqsClient.receiveMessage((ReceiveMessageRequest) any()))
+        .thenThrow(new RuntimeException("SQS is not available"))
+        .thenReturn(ReceiveMessageResponse.builder()
+            .messages(someMessage(UserUpserted.class))
+            .build());
+
+    eventPoller.start();
+
+    verify(eventConsumer, timeout(TIMEOUT.toMillis()).atLeastOnce()).accept(any());
   }
 
   @Test
@@ -74,7 +159,56 @@ class EventPollerTest {
     UserUpserted userUpserted0 = (UserUpserted) typeEvent0.getPayload();
     assertFalse(userUpserted0.getUserId().isEmpty());
     assertFalse(userUpserted0.getEmail().isEmpty());
+    assertEquals(1, ackTypedEvent0.getReceiveCount());
     // Second ackTypedEvent
+    ackTypedEvent0.ack();
+    verify(sqsAcknowledger, times(1)).acknowledge(ackTypedEvent0.getReceiptHandle());
+  }
+
+  @Test
+  void undecodable_messages_are_dead_lettered_and_acknowledged() {
+    Message undecodable = someMessage(Exception.class);
+    Message notJson = Message.builder().body("not json").receiptHandle("receiptHandle").build();
+    when(sqsClient.receiveMessage((ReceiveMessageRequest) any())).thenReturn(
+        ReceiveMessageResponse.builder().messages(undecodable, notJson).build());
+
+    eventPoller.poll();
+
+    verify(deadLetterEventService).saveUndecodable(eq(undecodable.body()), eq(1), any());
+    verify(deadLetterEventService).saveUndecodable(eq("not json"), eq(1), any());
+    verify(sqsAcknowledger).acknowledge(undecodable.receiptHandle());
+    verify(sqsAcknowledger).acknowledge("receiptHandle");
+  }
+
+  @Test
+  void undecodable_messages_are_not_acknowledged_when_not_dead_lettered() {
+    when(deadLetterEventService.saveUndecodable(any(), anyInt(), any()))
+        .thenThrow(new RuntimeException("Database is not available"));
+    when(sqsClient.receiveMessage((ReceiveMessageRequest) any())).thenReturn(
+        ReceiveMessageResponse.builder().messages(someMessage(Exception.class)).build());
+
+    eventPoller.poll();
+
+    verify(sqsAcknowledger, never()).acknowledge(any());
+  }
+
+  @Test
+  void receive_count_of_messages_is_kept() {
+    Message message = someMessage(UserUpserted.class).toBuilder()
+        .attributes(Map.of(APPROXIMATE_RECEIVE_COUNT, "3"))
+        .build();
+    when(sqsClient.receiveMessage((ReceiveMessageRequest) any())).thenReturn(
+        ReceiveMessageResponse.builder().messages(message).build());
+
+    eventPoller.poll();
+
+    ArgumentCaptor<ReceiveMessageRequest> request =
+        ArgumentCaptor.forClass(ReceiveMessageRequest.class);
+    verify(sqsClient).receiveMessage(request.capture());
+    assertEquals(List.of(QueueAttributeName.ALL), request.getValue().attributeNames());
+    ArgumentCaptor<List<AcknowledgeableTypedEvent>> captor = ArgumentCaptor.forClass(List.class);
+    verify(eventConsumer).accept(captor.capture());
+    assertEquals(3, captor.getValue().get(0).getReceiveCount());
   }
 
   private Message someMessage(Class<?> clazz) {
@@ -0,0 +1,167 @@
+package school.hei.haapi.endpoint.event;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import school.hei.haapi.endpoint.event.model.TypedEvent;
+import school.hei.haapi.endpoint.event.model.TypedUserUpserted;
+import school.hei.haapi.endpoint.event.model.gen.UserUpserted;
+import school.hei.haapi.model.exception.ApiException;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.eventbridge.EventBridgeClient;
+import software.amazon.awssdk.services.eventbridge.model.PutEventsRequest;
+import software.amazon.awssdk.services.eventbridge.model.PutEventsResponse;
+import software.amazon.awssdk.services.eventbridge.model.PutEventsResultEntry;
+
+import static java.util.UUID.randomUUID;
+import static java.util.stream.Collectors.toUnmodifiableList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EventProducerTest {
+  EventProducer eventProducer;
+  EventBridgeClient eventBridgeClient;
+
+  static TypedEvent userUpserted(String email) {
+    return new TypedUserUpserted(new UserUpserted()
+        .userId(randomUUID().toString())
+        .email(email));
+  }
+
+  static List<TypedEvent> someUserUpserted(int count) {
+    return IntStream.range(0, count)
+        .mapToObj(i -> userUpserted("test+" + randomUUID() + "@hei.school"))
+        .collect(toUnmodifiableList());
+  }
+
+  @BeforeEach
+  void setUp() {
+    eventBridgeClient = mock(EventBridgeClient.class);
+    eventProducer = new EventProducer(eventBridgeClient, "bus", 2, 3, 1, new ObjectMapper());
+  }
+
+  @AfterEach
+  void tearDown() {
+    eventProducer.shutdown();
+  }
+
+  @Test
+  void events_are_published_by_batches_of_ten() {
+    when(eventBridgeClient.putEvents((PutEventsRequest) any()))
+        .thenReturn(PutEventsResponse.builder().build());
+
+    List<TypedEvent> failed = eventProducer.publish(someUserUpserted(25));
+
+    ArgumentCaptor<PutEventsRequest> captor = ArgumentCaptor.forClass(PutEventsRequest.class);
+    verify(eventBridgeClient, times(3)).putEvents(captor.capture());
+    List<Integer> batchSizes = captor.getAllValues().stream()
+        .map(request -> request.entries().size())
+        .sorted()
+        .collect(toUnmodifiableList());
+    assertEquals(List.of(5, 10, 10), batchSizes);
+    assertTrue(failed.isEmpty());
+  }
+
+  @Test
+  void large_events_are_published_within_size_limit() {
+    when(eventBridgeClient.putEvents((PutEventsRequest) any()))
+        .thenReturn(PutEventsResponse.builder().build());
+    String largeEmail = "x".repeat(100 * 1024) + "@hei.school";
+    List<TypedEvent> largeEvents = List.of(
+        userUpserted(largeEmail), userUpserted(largeEmail), userUpserted(largeEmail));
+
+    eventProducer.publish(largeEvents);
+
+    verify(eventBridgeClient, times(2)).putEvents((PutEventsRequest) any());
+  }
+
+  @Test
+  void too_large_events_are_returned_without_being_sent() {
+    when(eventBridgeClient.putEvents((PutEventsRequest) any()))
+        .thenReturn(PutEventsResponse.builder().entries(sent()).build());
+    TypedEvent tooLarge = userUpserted("x".repeat(256 * 1024) + "@hei.school");
+    TypedEvent sendable = userUpserted("test@hei.school");
+
+    List<TypedEvent> failed = eventProducer.publish(List.of(tooLarge, sendable));
+
+    assertEquals(List.of(tooLarge), failed);
+    ArgumentCaptor<PutEventsRequest> captor = ArgumentCaptor.forClass(PutEventsRequest.class);
+    verify(eventBridgeClient, times(1)).putEvents(captor.capture());
+    assertEquals(1, captor.getValue().entries().size());
+  }
+
+  private static PutEventsResultEntry sent() {
+    return PutEventsResultEntry.builder().eventId(randomUUID().toString()).build();
+  }
+
+  private static PutEventsResultEntry failed() {
+    return PutEventsResultEntry.builder().errorCode("InternalFailure").build();
+  }
+
+  @Test
+  void failed_entries_are_retried() {
+    List<TypedEvent> events = someUserUpserted(3);
+    when(eventBridgeClient.putEvents((PutEventsRequest) any()))
+        .thenReturn(PutEventsResponse.builder()
+            .failedEntryCount(1)
+            .entries(sent(), failed(), sent())
+            .build())
+        .thenReturn(PutEventsResponse.builder().entries(sent()).build());
+
+    List<TypedEvent> failed = eventProducer.publish(events);
+
+    ArgumentCaptor<PutEventsRequest> captor = ArgumentCaptor.forClass(PutEventsRequest.class);
+    verify(eventBridgeClient, times(2)).putEvents(captor.capture());
+    PutEventsRequest retry = captor.getAllValues().get(1);
+    assertEquals(List.of(captor.getAllValues().get(0).entries().get(1)), retry.entries());
+    assertTrue(failed.isEmpty());
+  }
+
+  @Test
+  void failed_entries_are_returned_after_max_attempts() {
+    List<TypedEvent> events = someUserUpserted(3);
+    when(eventBridgeClient.putEvents((PutEventsRequest) any()))
+        .thenReturn(PutEventsResponse.builder()
+            .failedEntryCount(1)
+            .entries(sent(), failed(), sent())
+            .build())
+        .thenReturn(PutEventsResponse.builder().entries(failed()).build());
+
+    List<TypedEvent> failed = eventProducer.publish(events);
+
+    verify(eventBridgeClient, times(3)).putEvents((PutEventsRequest) any());
+    assertEquals(List.of(events.get(1)), failed);
+  }
+
+  @Test
+  void more_than_ten_events_are_accepted() {
+    when(eventBridgeClient.putEvents((PutEventsRequest) any()))
+        .thenReturn(PutEventsResponse.builder().build());
+
+    eventProducer.accept(someUserUpserted(500));
+
+    verify(eventBridgeClient, times(50)).putEvents((PutEventsRequest) any());
+  }
+
+  @Test
+  void accept_fails_when_events_could_not_be_sent() {
+    when(eventBridgeClient.putEvents((PutEventsRequest) any()))
+        .thenThrow(SdkClientException.create("EventBridge is not available"));
+    List<TypedEvent> events = someUserUpserted(2);
+
+    ApiException exception = assertThrows(ApiException.class, () -> eventProducer.accept(events));
+
+    assertEquals("2 of 2 events could not be sent", exception.getMessage());
+    verify(eventBridgeClient, times(3)).putEvents((PutEventsRequest) any());
+  }
+}
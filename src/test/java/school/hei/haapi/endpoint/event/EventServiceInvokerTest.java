@@ -1,21 +1,31 @@
 package school.hei.haapi.endpoint.event;
 
 import java.time.Instant;
+import java.util.List;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import school.hei.haapi.endpoint.event.model.RawTypedEvent;
+import school.hei.haapi.endpoint.event.model.TypedLateFeeVerified;
+import school.hei.haapi.endpoint.event.model.TypedLateFeesDigestVerified;
 import school.hei.haapi.endpoint.event.model.TypedUserUpserted;
+import school.hei.haapi.endpoint.event.model.gen.ConcernedStudent;
 import school.hei.haapi.endpoint.event.model.gen.LateFeeVerified;
+import school.hei.haapi.endpoint.event.model.gen.LateFeesDigestVerified;
 import school.hei.haapi.endpoint.event.model.gen.UserUpserted;
-import school.hei.haapi.model.User;
 import school.hei.haapi.service.LateFeeService;
+import school.hei.haapi.service.TemplateService;
 import school.hei.haapi.service.UserUpsertedService;
 import school.hei.haapi.service.aws.SesService;
 
 import static java.util.UUID.randomUUID;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 
 class EventServiceInvokerTest {
   EventServiceInvoker eventServiceInvoker;
@@ -24,8 +34,8 @@ class EventServiceInvokerTest {
   SesService sesService;
   EventConf eventConf;
 
-  static User randomStudent() {
-    return User.builder()
+  static ConcernedStudent randomStudent() {
+    return ConcernedStudent.builder()
         .lastName("user")
         .firstName("random")
         .email("test+" + randomUUID() + "@hei.school")
@@ -40,12 +50,29 @@ class EventServiceInvokerTest {
         .build();
   }
 
+  static LateFeesDigestVerified lateFeesDigest() {
+    return LateFeesDigestVerified.builder()
+        .student(randomStudent())
+        .lateFees(List.of(
+            LateFeesDigestVerified.LateFee.builder()
+                .comment("Frais de scolarité")
+                .remainingAmount(25_000)
+                .dueDatetime(Instant.parse("2023-02-08T08:30:24Z"))
+                .build(),
+            LateFeesDigestVerified.LateFee.builder()
+                .remainingAmount(5_000)
+                .dueDatetime(Instant.parse("2023-03-08T08:30:24Z"))
+                .build()))
+        .totalRemainingAmount(30_000)
+        .build();
+  }
+
   @BeforeEach
   void setUp() {
     userUpsertedService = mock(UserUpsertedService.class);
     sesService = mock(SesService.class);
     eventConf = mock(EventConf.class);
-    lateFeeService = new LateFeeService(sesService, eventConf);
+    lateFeeService = new LateFeeService(sesService, eventConf, new TemplateService(60, 10));
     eventServiceInvoker = new EventServiceInvoker(userUpsertedService, lateFeeService);
   }
 
@@ -59,10 +86,37 @@ class EventServiceInvokerTest {
     verify(userUpsertedService, times(1)).accept((UserUpserted) userUpserted.getPayload());
   }
 
+  @Test
+  void lateFeeVerified_invokes_corresponding_service() {
+    eventServiceInvoker.accept(new TypedLateFeeVerified(lateFee()));
+
+    verify(sesService, times(1)).sendEmail(any(), any(), any(), any());
+  }
+
+  @Test
+  void unexpected_types_are_ignored() {
+    eventServiceInvoker.accept(new RawTypedEvent("id", Exception.class.getTypeName(), "{}"));
+
+    verifyNoInteractions(userUpsertedService, sesService);
+  }
+
   @Test
   void lateFeeService_invokes_corresponding_service() {
     lateFeeService.accept(lateFee());
 
     verify(sesService, times(1)).sendEmail(any(), any(), any(), any());
   }
-}
\ No newline at end of file
+
+  @Test
+  void lateFeesDigestVerified_sends_a_single_email() {
+    LateFeesDigestVerified digest = lateFeesDigest();
+
+    eventServiceInvoker.accept(new TypedLateFeesDigestVerified(digest));
+
+    ArgumentCaptor<String> htmlBody = ArgumentCaptor.forClass(String.class);
+    verify(sesService, times(1)).sendEmail(
+        any(), eq(digest.getStudent().getEmail()), any(), htmlBody.capture());
+    assertTrue(htmlBody.getValue().contains("Frais de scolarité"));
+    assertTrue(htmlBody.getValue().contains("TRENTE MILLE"));
+  }
+}
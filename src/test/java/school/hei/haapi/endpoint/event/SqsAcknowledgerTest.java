@@ -0,0 +1,117 @@
+package school.hei.haapi.endpoint.event;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageRequest;
+
+import static java.util.stream.Collectors.toUnmodifiableList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SqsAcknowledgerTest {
+  SqsAcknowledger sqsAcknowledger;
+  SqsClient sqsClient;
+
+  static final Duration LINGER = Duration.ofMillis(300);
+  static final Duration TIMEOUT = Duration.ofSeconds(3);
+
+  @BeforeEach
+  void setUp() {
+    sqsClient = mock(SqsClient.class);
+    when(sqsClient.deleteMessageBatch((DeleteMessageBatchRequest) any()))
+        .thenReturn(DeleteMessageBatchResponse.builder().build());
+    sqsAcknowledger = new SqsAcknowledger("queueUrl", sqsClient, LINGER.toMillis());
+  }
+
+  @AfterEach
+  void tearDown() throws InterruptedException {
+    sqsAcknowledger.shutdown();
+  }
+
+  private static List<String> receiptHandles(DeleteMessageBatchRequest request) {
+    return request.entries().stream()
+        .map(DeleteMessageBatchRequestEntry::receiptHandle)
+        .collect(toUnmodifiableList());
+  }
+
+  @Test
+  void full_batch_is_deleted_without_waiting() {
+    List<String> handles = IntStream.range(0, 10)
+        .mapToObj(i -> "handle" + i)
+        .collect(toUnmodifiableList());
+
+    handles.forEach(sqsAcknowledger::acknowledge);
+
+    ArgumentCaptor<DeleteMessageBatchRequest> captor =
+        ArgumentCaptor.forClass(DeleteMessageBatchRequest.class);
+    verify(sqsClient, timeout(LINGER.toMillis() / 2)).deleteMessageBatch(captor.capture());
+    assertEquals("queueUrl", captor.getValue().queueUrl());
+    assertEquals(handles, receiptHandles(captor.getValue()));
+  }
+
+  @Test
+  void partial_batch_is_deleted_after_linger() {
+    sqsAcknowledger.acknowledge("handle1");
+    sqsAcknowledger.acknowledge("handle2");
+
+    ArgumentCaptor<DeleteMessageBatchRequest> captor =
+        ArgumentCaptor.forClass(DeleteMessageBatchRequest.class);
+    verify(sqsClient, timeout(TIMEOUT.toMillis())).deleteMessageBatch(captor.capture());
+    assertEquals(List.of("handle1", "handle2"), receiptHandles(captor.getValue()));
+    verify(sqsClient, never()).deleteMessage((DeleteMessageRequest) any());
+  }
+
+  @Test
+  void failed_entries_are_deleted_one_by_one() {
+    when(sqsClient.deleteMessageBatch((DeleteMessageBatchRequest) any()))
+        .thenReturn(DeleteMessageBatchResponse.builder()
+            .failed(BatchResultErrorEntry.builder().id("1").code("InternalError").build())
+            .build());
+
+    sqsAcknowledger.acknowledge("handle1");
+    sqsAcknowledger.acknowledge("handle2");
+
+    ArgumentCaptor<DeleteMessageRequest> captor =
+        ArgumentCaptor.forClass(DeleteMessageRequest.class);
+    verify(sqsClient, timeout(TIMEOUT.toMillis())).deleteMessage(captor.capture());
+    assertEquals("handle2", captor.getValue().receiptHandle());
+  }
+
+  @Test
+  void failed_batch_is_deleted_one_by_one() {
+    when(sqsClient.deleteMessageBatch((DeleteMessageBatchRequest) any()))
+        .thenThrow(SdkClientException.create("SQS is not available"));
+
+    sqsAcknowledger.acknowledge("handle1");
+    sqsAcknowledger.acknowledge("handle2");
+
+    verify(sqsClient, timeout(TIMEOUT.toMillis()).times(2))
+        .deleteMessage((DeleteMessageRequest) any());
+  }
+
+  @Test
+  void pending_acknowledgements_are_flushed_on_shutdown() throws InterruptedException {
+    sqsAcknowledger = new SqsAcknowledger("queueUrl", sqsClient, TIMEOUT.toMillis() * 10);
+    sqsAcknowledger.acknowledge("handle1");
+
+    sqsAcknowledger.shutdown();
+
+    verify(sqsClient).deleteMessageBatch((DeleteMessageBatchRequest) any());
+  }
+}
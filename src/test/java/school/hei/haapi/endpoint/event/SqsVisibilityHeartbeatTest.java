@@ -0,0 +1,131 @@
+package school.hei.haapi.endpoint.event;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchResponse;
+
+import static java.util.stream.Collectors.toUnmodifiableList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SqsVisibilityHeartbeatTest {
+  static final Duration VISIBILITY_TIMEOUT = Duration.ofSeconds(60);
+  static final Duration PROCESSING_DEADLINE = Duration.ofMinutes(15);
+  static final Instant NOW = Instant.parse("2022-01-01T00:00:00Z");
+
+  SqsVisibilityHeartbeat heartbeat;
+  SqsClient sqsClient;
+  Clock clock;
+
+  @BeforeEach
+  void setUp() {
+    sqsClient = mock(SqsClient.class);
+    when(sqsClient.changeMessageVisibilityBatch((ChangeMessageVisibilityBatchRequest) any()))
+        .thenReturn(ChangeMessageVisibilityBatchResponse.builder().build());
+    clock = mock(Clock.class);
+    when(clock.instant()).thenReturn(NOW);
+    when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+    // Heartbeats are triggered by the tests
+    heartbeat = new SqsVisibilityHeartbeat(
+        "queueUrl", sqsClient, VISIBILITY_TIMEOUT, Duration.ofHours(1), PROCESSING_DEADLINE,
+        clock);
+  }
+
+  @AfterEach
+  void tearDown() {
+    heartbeat.shutdown();
+  }
+
+  private static List<String> receiptHandles(ChangeMessageVisibilityBatchRequest request) {
+    return request.entries().stream()
+        .map(ChangeMessageVisibilityBatchRequestEntry::receiptHandle)
+        .collect(toUnmodifiableList());
+  }
+
+  @Test
+  void visibility_of_registered_messages_is_extended_by_batches() {
+    IntStream.range(0, 12).forEach(i -> heartbeat.register("handle" + i, () -> {}));
+    heartbeat.unregister("handle11");
+
+    heartbeat.extendVisibility();
+
+    ArgumentCaptor<ChangeMessageVisibilityBatchRequest> captor =
+        ArgumentCaptor.forClass(ChangeMessageVisibilityBatchRequest.class);
+    verify(sqsClient, times(2)).changeMessageVisibilityBatch(captor.capture());
+    List<ChangeMessageVisibilityBatchRequest> requests = captor.getAllValues();
+    assertEquals(10, requests.get(0).entries().size());
+    assertEquals(1, requests.get(1).entries().size());
+    assertEquals(60, requests.get(0).entries().get(0).visibilityTimeout());
+    assertEquals("queueUrl", requests.get(0).queueUrl());
+  }
+
+  @Test
+  void nothing_is_sent_without_registered_messages() {
+    heartbeat.extendVisibility();
+
+    verify(sqsClient, never())
+        .changeMessageVisibilityBatch((ChangeMessageVisibilityBatchRequest) any());
+  }
+
+  @Test
+  void messages_past_their_deadline_are_abandoned() {
+    Runnable lateAbandoned = mock(Runnable.class);
+    Runnable recentAbandoned = mock(Runnable.class);
+    heartbeat.register("late", lateAbandoned);
+    when(clock.instant()).thenReturn(NOW.plus(PROCESSING_DEADLINE).plusSeconds(1));
+    heartbeat.register("recent", recentAbandoned);
+
+    heartbeat.extendVisibility();
+
+    ArgumentCaptor<ChangeMessageVisibilityBatchRequest> captor =
+        ArgumentCaptor.forClass(ChangeMessageVisibilityBatchRequest.class);
+    verify(sqsClient).changeMessageVisibilityBatch(captor.capture());
+    assertEquals(List.of("recent"), receiptHandles(captor.getValue()));
+    assertEquals(1, heartbeat.getRegisteredCount());
+    verify(lateAbandoned).run();
+    verify(recentAbandoned, never()).run();
+  }
+
+  @Test
+  void messages_with_invalid_receipt_handles_are_no_longer_extended() {
+    heartbeat.register("invalid", () -> {});
+    when(sqsClient.changeMessageVisibilityBatch((ChangeMessageVisibilityBatchRequest) any()))
+        .thenReturn(ChangeMessageVisibilityBatchResponse.builder()
+            .failed(BatchResultErrorEntry.builder()
+                .id("0").code("ReceiptHandleIsInvalid").senderFault(true).build())
+            .build());
+
+    heartbeat.extendVisibility();
+
+    assertEquals(0, heartbeat.getRegisteredCount());
+  }
+
+  @Test
+  void messages_are_extended_again_after_errors() {
+    heartbeat.register("handle", () -> {});
+    when(sqsClient.changeMessageVisibilityBatch((ChangeMessageVisibilityBatchRequest) any()))
+        .thenThrow(SdkClientException.create("SQS is not available"));
+
+    heartbeat.extendVisibility();
+
+    assertEquals(1, heartbeat.getRegisteredCount());
+  }
+}
@@ -0,0 +1,114 @@
+package school.hei.haapi.endpoint.event;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import school.hei.haapi.endpoint.event.model.TypedEvent;
+import school.hei.haapi.endpoint.event.model.gen.CompactLateFeesDigestVerified;
+import school.hei.haapi.endpoint.event.model.gen.ConcernedStudent;
+import school.hei.haapi.endpoint.event.model.gen.LateFeeVerified;
+import school.hei.haapi.endpoint.event.model.gen.UserUpserted;
+import school.hei.haapi.endpoint.rest.model.Fee;
+import school.hei.haapi.model.User;
+import school.hei.haapi.model.exception.BadRequestException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TypedEventDecoderTest {
+  ObjectMapper om = new ObjectMapper()
+      .findAndRegisterModules()
+      .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+  TypedEventDecoder typedEventDecoder = new TypedEventDecoder(om);
+
+  private static String envelope(String typeName, String detail) {
+    return "{\"version\":\"0\",\"id\":\"eventId\",\"detail-type\":\"" + typeName + "\","
+        + "\"source\":\"school.hei.haapi\",\"resources\":[\"r1\",{\"a\":[1,2]}],"
+        + "\"detail\":" + detail + "}";
+  }
+
+  @Test
+  void user_upserted_is_decoded() throws IOException {
+    TypedEvent typedEvent = typedEventDecoder.decode(envelope(
+        UserUpserted.class.getTypeName(),
+        "{\"userId\":\"user1_id\",\"email\":\"test@hei.school\"}"));
+
+    assertEquals(UserUpserted.class.getTypeName(), typedEvent.getTypeName());
+    assertEquals(
+        new UserUpserted().userId("user1_id").email("test@hei.school"),
+        typedEvent.getPayload());
+  }
+
+  @Test
+  void late_fee_verified_is_decoded() throws IOException {
+    LateFeeVerified lateFee = LateFeeVerified.builder()
+        .student(ConcernedStudent.builder().ref("STD21001").email("test+ryan@hei.school").build())
+        .type(Fee.TypeEnum.TUITION)
+        .remainingAmount(5000)
+        .dueDatetime(Instant.parse("2022-02-08T08:25:24Z"))
+        .comment("Comment")
+        .build();
+
+    TypedEvent typedEvent = typedEventDecoder.decode(envelope(
+        LateFeeVerified.class.getTypeName(), om.writeValueAsString(lateFee)));
+
+    assertEquals(LateFeeVerified.class.getTypeName(), typedEvent.getTypeName());
+    assertEquals(lateFee, typedEvent.getPayload());
+  }
+
+  @Test
+  void late_fee_verified_with_the_whole_student_is_decoded() throws IOException {
+    ObjectNode lateFee = om.createObjectNode()
+        .put("remaining_amount", 5000)
+        .put("comment", "Comment");
+    lateFee.set("concerned_student", om.valueToTree(User.builder()
+        .id("student1_id")
+        .ref("STD21001")
+        .email("test+ryan@hei.school")
+        .entranceDatetime(Instant.parse("2021-11-08T08:25:24Z"))
+        .build()));
+
+    TypedEvent typedEvent = typedEventDecoder.decode(envelope(
+        LateFeeVerified.class.getTypeName(), om.writeValueAsString(lateFee)));
+
+    LateFeeVerified decoded = (LateFeeVerified) typedEvent.getPayload();
+    assertEquals(
+        ConcernedStudent.builder().ref("STD21001").email("test+ryan@hei.school").build(),
+        decoded.getStudent());
+    assertEquals(5000, decoded.getRemainingAmount());
+  }
+
+  @Test
+  void compact_late_fees_digest_verified_is_decoded() throws IOException {
+    TypedEvent typedEvent = typedEventDecoder.decode(envelope(
+        CompactLateFeesDigestVerified.class.getTypeName(),
+        "{\"student_id\":\"student1_id\",\"fee_ids\":[\"fee1_id\",\"fee2_id\"]}"));
+
+    assertEquals(
+        new CompactLateFeesDigestVerified("student1_id", List.of("fee1_id", "fee2_id")),
+        typedEvent.getPayload());
+  }
+
+  @Test
+  void detail_may_come_before_its_type() throws IOException {
+    TypedEvent typedEvent = typedEventDecoder.decode("{"
+        + "\"detail\":{\"userId\":\"user1_id\",\"email\":\"test@hei.school\"},"
+        + "\"detail-type\":\"" + UserUpserted.class.getTypeName() + "\"}");
+
+    assertEquals(
+        new UserUpserted().userId("user1_id").email("test@hei.school"),
+        typedEvent.getPayload());
+  }
+
+  @Test
+  void unknown_types_are_rejected() {
+    assertThrows(BadRequestException.class, () -> typedEventDecoder.decode(
+        envelope(Exception.class.getTypeName(), "{}")));
+    assertThrows(BadRequestException.class, () -> typedEventDecoder.decode(
+        "{\"detail\":{}}"));
+  }
+}
@@ -1,5 +1,11 @@
 package school.hei.haapi.endpoint.rest.security.cognito;
 
+import com.nimbusds.jose.proc.BadJOSEException;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.proc.ConfigurableJWTProcessor;
+import java.time.Instant;
+import java.util.Date;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClient;
@@ -9,20 +15,81 @@ import software.amazon.awssdk.services.cognitoidentityprovider.model.UserType;
 
 import static java.util.UUID.randomUUID;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class CognitoComponentTest {
 
   CognitoComponent cognitoComponent;
   CognitoIdentityProviderClient cognitoClient;
+  CognitoConf cognitoConf;
+  ConfigurableJWTProcessor<SecurityContext> jwtProcessor;
+
+  private static final String USER_POOL_URL = "https://cognito-idp.eu-west-3.amazonaws.com/pool";
 
   @BeforeEach
   void setUp() {
     cognitoClient = mock(CognitoIdentityProviderClient.class);
-    cognitoClient = mock(CognitoIdentityProviderClient.class);
-    cognitoComponent = new CognitoComponent(mock(CognitoConf.class), cognitoClient);
+    cognitoConf = mock(CognitoConf.class);
+    jwtProcessor = mock(ConfigurableJWTProcessor.class);
+    when(cognitoConf.getJwtProcessor()).thenReturn(jwtProcessor);
+    when(cognitoConf.getUserPoolUrl()).thenReturn(USER_POOL_URL);
+    cognitoComponent = new CognitoComponent(cognitoConf, cognitoClient, 100);
+  }
+
+  private static JWTClaimsSet claims(String issuer, String email, Instant expiration) {
+    return new JWTClaimsSet.Builder()
+        .issuer(issuer)
+        .claim("email", email)
+        .expirationTime(Date.from(expiration))
+        .build();
+  }
+
+  @Test
+  void verified_token_is_cached_until_expiration() throws Exception {
+    when(jwtProcessor.process(eq("token1"), any()))
+        .thenReturn(claims(USER_POOL_URL, "test@hei.school", Instant.now().plusSeconds(3600)));
+
+    assertEquals("test@hei.school", cognitoComponent.getEmailByIdToken("token1"));
+    assertEquals("test@hei.school", cognitoComponent.getEmailByIdToken("token1"));
+    assertEquals("test@hei.school", cognitoComponent.getEmailByIdToken("token1"));
+
+    verify(jwtProcessor, times(1)).process(eq("token1"), any());
+    assertEquals(2, cognitoComponent.getTokenCacheHitCount());
+    assertEquals(1, cognitoComponent.getTokenCacheMissCount());
+  }
+
+  @Test
+  void expired_token_is_not_cached() throws Exception {
+    when(jwtProcessor.process(eq("token1"), any()))
+        .thenReturn(claims(USER_POOL_URL, "test@hei.school", Instant.now().minusSeconds(1)));
+
+    cognitoComponent.getEmailByIdToken("token1");
+    cognitoComponent.getEmailByIdToken("token1");
+
+    verify(jwtProcessor, times(2)).process(eq("token1"), any());
+    assertEquals(0, cognitoComponent.getTokenCacheHitCount());
+  }
+
+  @Test
+  void invalid_tokens_are_not_cached() throws Exception {
+    when(jwtProcessor.process(eq("rejected"), any())).thenThrow(new BadJOSEException("bad"));
+    when(jwtProcessor.process(eq("other_pool"), any()))
+        .thenReturn(claims("https://other", "test@hei.school", Instant.now().plusSeconds(3600)));
+
+    assertNull(cognitoComponent.getEmailByIdToken("rejected"));
+    assertNull(cognitoComponent.getEmailByIdToken("rejected"));
+    assertNull(cognitoComponent.getEmailByIdToken("other_pool"));
+    assertNull(cognitoComponent.getEmailByIdToken("other_pool"));
+
+    verify(jwtProcessor, times(2)).process(eq("rejected"), any());
+    verify(jwtProcessor, times(2)).process(eq("other_pool"), any());
+    assertEquals(4, cognitoComponent.getTokenCacheMissCount());
   }
 
   @Test
@@ -0,0 +1,158 @@
+package school.hei.haapi.endpoint.rest.security.cognito;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PrefetchedJwkSourceTest {
+  private static final Duration MIN_REFRESH_INTERVAL = Duration.ofSeconds(30);
+
+  RSAKey key1;
+  RSAKey key2;
+  List<JWKSet> loadedSets;
+  AtomicInteger loadCount;
+  MutableClock clock;
+  PrefetchedJwkSource jwkSource;
+
+  @BeforeEach
+  void setUp() throws JOSEException {
+    key1 = new RSAKeyGenerator(2048).keyID("kid1").generate();
+    key2 = new RSAKeyGenerator(2048).keyID("kid2").generate();
+    loadedSets = new ArrayList<>();
+    loadCount = new AtomicInteger();
+    clock = new MutableClock(Instant.parse("2022-01-01T00:00:00Z"));
+    jwkSource = new PrefetchedJwkSource(
+        () -> {
+          int count = loadCount.getAndIncrement();
+          if (count >= loadedSets.size()) {
+            throw new IOException("JWKS endpoint is not available");
+          }
+          return loadedSets.get(count);
+        },
+        MIN_REFRESH_INTERVAL,
+        clock);
+  }
+
+  private static JWKSelector byKeyId(String keyId) {
+    return new JWKSelector(new JWKMatcher.Builder().keyID(keyId).build());
+  }
+
+  @Test
+  void keys_are_served_from_snapshot() throws KeySourceException {
+    loadedSets.add(new JWKSet(key1));
+    assertTrue(jwkSource.refresh());
+
+    List<JWK> keys1 = jwkSource.get(byKeyId("kid1"), null);
+    List<JWK> keys2 = jwkSource.get(byKeyId("kid1"), null);
+
+    assertEquals(1, loadCount.get());
+    assertEquals(List.of(key1.toPublicJWK()), keys1);
+    assertEquals(keys1, keys2);
+    assertFalse(keys1.get(0).isPrivate());
+  }
+
+  @Test
+  void keys_are_loaded_on_demand_when_prefetch_failed() throws KeySourceException {
+    assertFalse(jwkSource.refresh());
+    loadedSets.add(null); // the failed prefetch
+    loadedSets.add(new JWKSet(key1));
+    clock.plus(MIN_REFRESH_INTERVAL.plusSeconds(1));
+
+    assertEquals(List.of(key1.toPublicJWK()), jwkSource.get(byKeyId("kid1"), null));
+  }
+
+  @Test
+  void unknown_key_triggers_a_rate_limited_refresh() throws KeySourceException {
+    loadedSets.add(new JWKSet(key1));
+    loadedSets.add(new JWKSet(List.of(key1, key2)));
+    jwkSource.refresh();
+
+    assertEquals(List.of(), jwkSource.get(byKeyId("kid2"), null));
+    assertEquals(1, loadCount.get());
+
+    clock.plus(MIN_REFRESH_INTERVAL.plusSeconds(1));
+    assertEquals(List.of(key2.toPublicJWK()), jwkSource.get(byKeyId("kid2"), null));
+    assertEquals(2, loadCount.get());
+    assertEquals(List.of(), jwkSource.get(byKeyId("unknown"), null));
+    assertEquals(2, loadCount.get());
+  }
+
+  @Test
+  void failed_refresh_keeps_previous_keys() throws KeySourceException {
+    loadedSets.add(new JWKSet(key1));
+    jwkSource.refresh();
+
+    assertFalse(jwkSource.refresh());
+
+    assertEquals(List.of(key1.toPublicJWK()), jwkSource.get(byKeyId("kid1"), null));
+  }
+
+  @Test
+  void no_keys_at_all_is_a_key_source_exception() {
+    jwkSource.refresh();
+
+    assertThrows(KeySourceException.class, () -> jwkSource.get(byKeyId("kid1"), null));
+  }
+
+  @Test
+  void keys_are_loaded_from_file() throws IOException, KeySourceException {
+    File jwksFile = File.createTempFile("jwks", ".json");
+    jwksFile.deleteOnExit();
+    Files.writeString(jwksFile.toPath(), new JWKSet(key1).toString(), UTF_8);
+    PrefetchedJwkSource fileSource = PrefetchedJwkSource.file(jwksFile, MIN_REFRESH_INTERVAL);
+
+    assertTrue(fileSource.refresh());
+    assertEquals(List.of(key1.toPublicJWK()), fileSource.get(byKeyId("kid1"), null));
+  }
+
+  private static class MutableClock extends Clock {
+    private Instant instant;
+
+    MutableClock(Instant instant) {
+      this.instant = instant;
+    }
+
+    void plus(Duration duration) {
+      instant = instant.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return instant;
+    }
+  }
+}
@@ -0,0 +1,128 @@
+package school.hei.haapi.integration;
+
+import java.time.Instant;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ContextConfiguration;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import school.hei.haapi.SentryConf;
+import school.hei.haapi.endpoint.rest.api.EventsApi;
+import school.hei.haapi.endpoint.rest.client.ApiClient;
+import school.hei.haapi.endpoint.rest.client.ApiException;
+import school.hei.haapi.endpoint.rest.model.DeadLetterEvent;
+import school.hei.haapi.endpoint.rest.security.cognito.CognitoComponent;
+import school.hei.haapi.integration.conf.AbstractContextInitializer;
+import school.hei.haapi.integration.conf.TestUtils;
+import school.hei.haapi.model.OutboxEvent;
+import school.hei.haapi.repository.OutboxEventRepository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static school.hei.haapi.integration.conf.TestUtils.MANAGER1_TOKEN;
+import static school.hei.haapi.integration.conf.TestUtils.STUDENT1_TOKEN;
+import static school.hei.haapi.integration.conf.TestUtils.TEACHER1_TOKEN;
+import static school.hei.haapi.integration.conf.TestUtils.anAvailableRandomPort;
+import static school.hei.haapi.integration.conf.TestUtils.assertThrowsApiException;
+import static school.hei.haapi.integration.conf.TestUtils.assertThrowsForbiddenException;
+import static school.hei.haapi.integration.conf.TestUtils.setUpCognito;
+
+@SpringBootTest(webEnvironment = RANDOM_PORT)
+@Testcontainers
+@ContextConfiguration(initializers = DeadLetterEventIT.ContextInitializer.class)
+@AutoConfigureMockMvc
+class DeadLetterEventIT {
+
+  @MockBean
+  private SentryConf sentryConf;
+
+  @MockBean
+  private CognitoComponent cognitoComponentMock;
+
+  @Autowired
+  private OutboxEventRepository outboxEventRepository;
+
+  private static ApiClient anApiClient(String token) {
+    return TestUtils.anApiClient(token, ContextInitializer.SERVER_PORT);
+  }
+
+  static DeadLetterEvent deadLetterEvent1() {
+    return new DeadLetterEvent()
+        .id("dead_letter_event1_id")
+        .typeName("school.hei.haapi.endpoint.event.model.gen.UserUpserted")
+        .payload("{\"userId\":\"student1_id\",\"email\":\"test+ryan@hei.school\"}")
+        .receiveCount(5)
+        .error("Cognito is not available")
+        .creationDatetime(Instant.parse("2022-01-10T08:00:00.00Z"));
+  }
+
+  @BeforeEach
+  public void setUp() {
+    setUpCognito(cognitoComponentMock);
+  }
+
+  @Test
+  void student_read_ko() {
+    EventsApi api = new EventsApi(anApiClient(STUDENT1_TOKEN));
+
+    assertThrowsForbiddenException(() -> api.getDeadLetterEvents(1, 20));
+    assertThrowsForbiddenException(() -> api.replayDeadLetterEvent("dead_letter_event1_id"));
+  }
+
+  @Test
+  void teacher_read_ko() {
+    EventsApi api = new EventsApi(anApiClient(TEACHER1_TOKEN));
+
+    assertThrowsForbiddenException(() -> api.getDeadLetterEvents(1, 20));
+    assertThrowsForbiddenException(() -> api.replayDeadLetterEvent("dead_letter_event1_id"));
+  }
+
+  @Test
+  void manager_read_ok() throws ApiException {
+    EventsApi api = new EventsApi(anApiClient(MANAGER1_TOKEN));
+
+    List<DeadLetterEvent> actual = api.getDeadLetterEvents(1, 20);
+
+    assertTrue(actual.contains(deadLetterEvent1()));
+  }
+
+  @Test
+  void manager_replay_ok() throws ApiException {
+    EventsApi api = new EventsApi(anApiClient(MANAGER1_TOKEN));
+
+    DeadLetterEvent actual = api.replayDeadLetterEvent("dead_letter_event2_id");
+
+    assertEquals("dead_letter_event2_id", actual.getId());
+    assertFalse(api.getDeadLetterEvents(1, 20).stream()
+        .anyMatch(event -> "dead_letter_event2_id".equals(event.getId())));
+    List<OutboxEvent> outboxEvents = outboxEventRepository.findAll();
+    assertTrue(outboxEvents.stream()
+        .anyMatch(event -> actual.getPayload().equals(event.getPayload())
+            && actual.getTypeName().equals(event.getTypeName())));
+  }
+
+  @Test
+  void manager_replay_unknown_ko() {
+    EventsApi api = new EventsApi(anApiClient(MANAGER1_TOKEN));
+
+    assertThrowsApiException(
+        "{\"type\":\"404 NOT_FOUND\","
+            + "\"message\":\"DeadLetterEvent.id=unknown_id is not found\"}",
+        () -> api.replayDeadLetterEvent("unknown_id"));
+  }
+
+  static class ContextInitializer extends AbstractContextInitializer {
+    public static final int SERVER_PORT = anAvailableRandomPort();
+
+    @Override
+    public int getServerPort() {
+      return SERVER_PORT;
+    }
+  }
+}
@@ -113,7 +113,7 @@ class FeeIT {
     PayingApi api = new PayingApi(student1Client);
 
     Fee actualFee = api.getStudentFeeById(STUDENT1_ID, FEE1_ID);
-    List<Fee> actual = api.getStudentFees(STUDENT1_ID, 1, 5, null);
+    List<Fee> actual = api.getStudentFees(STUDENT1_ID, 1, 5, null, null);
 
     assertEquals(fee1(), actualFee);
     assertTrue(actual.contains(fee1()));
@@ -127,8 +127,8 @@ class FeeIT {
     PayingApi api = new PayingApi(manager1Client);
 
     Fee actualFee = api.getStudentFeeById(STUDENT1_ID, FEE1_ID);
-    List<Fee> actualFees1 = api.getStudentFees(STUDENT1_ID, 1, 5, null);
-    List<Fee> actualFees2 = api.getFees(String.valueOf(Fee.StatusEnum.PAID), 1, 10);
+    List<Fee> actualFees1 = api.getStudentFees(STUDENT1_ID, 1, 5, null, null);
+    List<Fee> actualFees2 = api.getFees(String.valueOf(Fee.StatusEnum.PAID), 1, 10, null);
 
     assertEquals(fee1(), actualFee);
     assertEquals(2, actualFees2.size());
@@ -149,10 +149,10 @@ class FeeIT {
         () -> api.getStudentFeeById(STUDENT2_ID, FEE2_ID));
     assertThrowsApiException(
         "{\"type\":\"403 FORBIDDEN\",\"message\":\"Access is denied\"}",
-        () -> api.getStudentFees(STUDENT2_ID, null, null, null));
+        () -> api.getStudentFees(STUDENT2_ID, null, null, null, null));
     assertThrowsApiException(
         "{\"type\":\"403 FORBIDDEN\",\"message\":\"Access is denied\"}",
-        () -> api.getFees(null, null, null));
+        () -> api.getFees(null, null, null, null));
   }
 
   @Test
@@ -165,10 +165,10 @@ class FeeIT {
         () -> api.getStudentFeeById(STUDENT2_ID, FEE2_ID));
     assertThrowsApiException(
         "{\"type\":\"403 FORBIDDEN\",\"message\":\"Access is denied\"}",
-        () -> api.getStudentFees(STUDENT2_ID, null, null, null));
+        () -> api.getStudentFees(STUDENT2_ID, null, null, null, null));
     assertThrowsApiException(
         "{\"type\":\"403 FORBIDDEN\",\"message\":\"Access is denied\"}",
-        () -> api.getFees(null, null, null));
+        () -> api.getFees(null, null, null, null));
   }
 
   @Test
@@ -178,7 +178,7 @@ class FeeIT {
 
     List<Fee> actual = api.createStudentFees(STUDENT1_ID, List.of(creatableFee1()));
 
-    List<Fee> expected = api.getStudentFees(STUDENT1_ID, 1, 5, null);
+    List<Fee> expected = api.getStudentFees(STUDENT1_ID, 1, 5, null, null);
     assertTrue(expected.containsAll(actual));
   }
 
@@ -209,7 +209,7 @@ class FeeIT {
     CreateFee toCreate1 = creatableFee1().totalAmount(null);
     CreateFee toCreate2 = creatableFee1().totalAmount(-1);
     CreateFee toCreate3 = creatableFee1().dueDatetime(null);
-    List<Fee> expected = api.getStudentFees(STUDENT1_ID, 1, 5, null);
+    List<Fee> expected = api.getStudentFees(STUDENT1_ID, 1, 5, null, null);
 
     ApiException exception1 = assertThrows(ApiException.class,
         () -> api.createStudentFees(STUDENT1_ID, List.of(toCreate1)));
@@ -218,7 +218,7 @@ class FeeIT {
     ApiException exception3 = assertThrows(ApiException.class,
         () -> api.createStudentFees(STUDENT1_ID, List.of(toCreate3)));
 
-    List<Fee> actual = api.getStudentFees(STUDENT1_ID, 1, 5, null);
+    List<Fee> actual = api.getStudentFees(STUDENT1_ID, 1, 5, null, null);
     assertEquals(expected.size(), actual.size());
     assertTrue(expected.containsAll(actual));
     String exceptionMessage1 = exception1.getMessage();
@@ -15,6 +15,7 @@ import school.hei.haapi.endpoint.rest.api.PayingApi;
 import school.hei.haapi.endpoint.rest.api.UsersApi;
 import school.hei.haapi.endpoint.rest.client.ApiClient;
 import school.hei.haapi.endpoint.rest.client.ApiException;
+import school.hei.haapi.endpoint.rest.client.ApiResponse;
 import school.hei.haapi.endpoint.rest.model.Fee;
 import school.hei.haapi.endpoint.rest.model.Payment;
 import school.hei.haapi.endpoint.rest.model.Student;
@@ -24,6 +25,7 @@ import school.hei.haapi.integration.conf.TestUtils;
 import software.amazon.awssdk.services.eventbridge.EventBridgeClient;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
 import static school.hei.haapi.integration.conf.TestUtils.FEE1_ID;
@@ -111,9 +113,9 @@ class PaginationIT {
     PayingApi api = new PayingApi(student1Client);
     int pageSize = 2;
 
-    List<Fee> page1 = api.getStudentFees(STUDENT1_ID, 1, pageSize, null);
-    List<Fee> page2 = api.getStudentFees(STUDENT1_ID, 2, pageSize, null);
-    List<Fee> page3 = api.getStudentFees(STUDENT1_ID, 3, pageSize, null);
+    List<Fee> page1 = api.getStudentFees(STUDENT1_ID, 1, pageSize, null, null);
+    List<Fee> page2 = api.getStudentFees(STUDENT1_ID, 2, pageSize, null, null);
+    List<Fee> page3 = api.getStudentFees(STUDENT1_ID, 3, pageSize, null, null);
 
     assertEquals(pageSize, page1.size());
     assertEquals(2, page2.size());
@@ -122,6 +124,37 @@ class PaginationIT {
     assertTrue(isAfter(page1.get(1).getDueDatetime(), page2.get(0).getDueDatetime()));
   }
 
+  @Test
+  void fees_pages_are_walked_through_by_cursor() throws ApiException {
+    ApiClient student1Client = anApiClient(STUDENT1_TOKEN);
+    PayingApi api = new PayingApi(student1Client);
+    int pageSize = 2;
+
+    ApiResponse<List<Fee>> page1 =
+        api.getStudentFeesWithHttpInfo(STUDENT1_ID, 1, pageSize, null, null);
+    String cursor1 = nextCursor(page1);
+    ApiResponse<List<Fee>> page2 =
+        api.getStudentFeesWithHttpInfo(STUDENT1_ID, null, pageSize, null, cursor1);
+    String cursor2 = nextCursor(page2);
+    ApiResponse<List<Fee>> page3 =
+        api.getStudentFeesWithHttpInfo(STUDENT1_ID, null, pageSize, null, cursor2);
+
+    List<Fee> offsetPage2 = api.getStudentFees(STUDENT1_ID, 2, pageSize, null, null);
+    assertEquals(offsetPage2, page2.getData());
+    assertTrue(isAfter(
+        page1.getData().get(1).getDueDatetime(), page2.getData().get(0).getDueDatetime()));
+    assertEquals(0, page3.getData().size());
+    assertNull(nextCursor(page3));
+    assertThrowsApiException(
+        "{\"type\":\"400 BAD_REQUEST\",\"message\":\"cursor value is invalid\"}",
+        () -> api.getStudentFees(STUDENT1_ID, null, pageSize, null, "not a cursor"));
+  }
+
+  private String nextCursor(ApiResponse<?> response) {
+    List<String> values = response.getHeaders().get("Next-Cursor");
+    return values == null ? null : values.get(0);
+  }
+
   @Test
   void payments_pages_are_ordered_by_due_datetime_desc() throws ApiException {
     ApiClient manager1Client = anApiClient(MANAGER1_TOKEN);
@@ -13,6 +13,7 @@ import school.hei.haapi.SentryConf;
 import school.hei.haapi.endpoint.rest.api.PayingApi;
 import school.hei.haapi.endpoint.rest.client.ApiClient;
 import school.hei.haapi.endpoint.rest.client.ApiException;
+import school.hei.haapi.endpoint.rest.model.CreateFeePayment;
 import school.hei.haapi.endpoint.rest.model.CreatePayment;
 import school.hei.haapi.endpoint.rest.model.Fee;
 import school.hei.haapi.endpoint.rest.model.Payment;
@@ -20,6 +21,7 @@ import school.hei.haapi.endpoint.rest.security.cognito.CognitoComponent;
 import school.hei.haapi.integration.conf.AbstractContextInitializer;
 import school.hei.haapi.integration.conf.TestUtils;
 
+import static java.util.UUID.randomUUID;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -28,6 +30,7 @@ import static org.springframework.boot.test.context.SpringBootTest.WebEnvironmen
 import static school.hei.haapi.integration.conf.TestUtils.FEE1_ID;
 import static school.hei.haapi.integration.conf.TestUtils.FEE3_ID;
 import static school.hei.haapi.integration.conf.TestUtils.FEE4_ID;
+import static school.hei.haapi.integration.conf.TestUtils.FEE5_ID;
 import static school.hei.haapi.integration.conf.TestUtils.FEE6_ID;
 import static school.hei.haapi.integration.conf.TestUtils.MANAGER1_TOKEN;
 import static school.hei.haapi.integration.conf.TestUtils.PAYMENT1_ID;
@@ -152,7 +155,7 @@ class PaymentIT {
     PayingApi api = new PayingApi(manager1Client);
 
     List<Payment> actual = api.createStudentPayments(STUDENT1_ID, FEE3_ID,
-        List.of(creatablePayment1()));
+        List.of(creatablePayment1()), null);
 
     List<Payment> expected = api.getStudentPayments(STUDENT1_ID, FEE3_ID, 1, 5);
     assertTrue(expected.containsAll(actual));
@@ -165,7 +168,7 @@ class PaymentIT {
 
     assertThrowsApiException(
         "{\"type\":\"403 FORBIDDEN\",\"message\":\"Access is denied\"}",
-        () -> api.createStudentPayments(STUDENT1_ID, FEE1_ID, List.of()));
+        () -> api.createStudentPayments(STUDENT1_ID, FEE1_ID, List.of(), null));
 
   }
 
@@ -176,7 +179,7 @@ class PaymentIT {
 
     assertThrowsApiException(
         "{\"type\":\"403 FORBIDDEN\",\"message\":\"Access is denied\"}",
-        () -> api.createStudentPayments(STUDENT1_ID, FEE1_ID, List.of()));
+        () -> api.createStudentPayments(STUDENT1_ID, FEE1_ID, List.of(), null));
   }
 
   @Test
@@ -189,7 +192,7 @@ class PaymentIT {
         "{\"type\":\"400 BAD_REQUEST\",\"message\":\"Payment amount (8000)"
             + " exceeds fee remaining amount (5000)\"}",
         () -> api.createStudentPayments(STUDENT1_ID, FEE3_ID, List.of(creatablePayment1(),
-            creatablePayment2())));
+            creatablePayment2()), null));
 
     List<Payment> actual = api.getStudentPayments(STUDENT1_ID, FEE3_ID, 1, 5);
     assertEquals(0, expected.size());
@@ -204,9 +207,9 @@ class PaymentIT {
     CreatePayment toCreate2 = creatablePayment1().amount(-1);
 
     ApiException exception1 = assertThrows(ApiException.class,
-        () -> api.createStudentPayments(STUDENT1_ID, FEE1_ID, List.of(toCreate1)));
+        () -> api.createStudentPayments(STUDENT1_ID, FEE1_ID, List.of(toCreate1), null));
     ApiException exception2 = assertThrows(ApiException.class,
-        () -> api.createStudentPayments(STUDENT1_ID, FEE1_ID, List.of(toCreate2)));
+        () -> api.createStudentPayments(STUDENT1_ID, FEE1_ID, List.of(toCreate2), null));
 
     String exceptionMessage1 = exception1.getMessage();
     String exceptionMessage2 = exception2.getMessage();
@@ -221,7 +224,8 @@ class PaymentIT {
     Fee fee = api.getStudentFeeById(STUDENT1_ID, FEE6_ID);
 
     List<Payment> actual =
-        api.createStudentPayments(fee.getStudentId(), fee.getId(), List.of(creatablePayment1()));
+        api.createStudentPayments(
+            fee.getStudentId(), fee.getId(), List.of(creatablePayment1()), null);
 
     List<Payment> expected = api.getStudentPayments(fee.getStudentId(), fee.getId(), 1, 10);
 
@@ -233,6 +237,133 @@ class PaymentIT {
     assertEquals(expected, actual);
   }
 
+  @Test
+  void manager_write_with_idempotency_key_is_applied_once() throws ApiException {
+    ApiClient manager1Client = anApiClient(MANAGER1_TOKEN);
+    PayingApi api = new PayingApi(manager1Client);
+    Fee fee = api.getStudentFeeById(STUDENT1_ID, FEE6_ID);
+    String idempotencyKey = randomUUID().toString();
+
+    List<Payment> actual1 = api.createStudentPayments(
+        fee.getStudentId(), fee.getId(), List.of(creatablePayment1()), idempotencyKey);
+    List<Payment> actual2 = api.createStudentPayments(
+        fee.getStudentId(), fee.getId(), List.of(creatablePayment1()), idempotencyKey);
+
+    Fee actualFee = api.getStudentFeeById(fee.getStudentId(), fee.getId());
+    assertEquals(actual1, actual2);
+    assertEquals((fee.getRemainingAmount() - creatablePayment1().getAmount()),
+        actualFee.getRemainingAmount());
+    assertThrowsApiException(
+        "{\"type\":\"400 BAD_REQUEST\",\"message\":\"Idempotency-Key is already used"
+            + " for another request\"}",
+        () -> api.createStudentPayments(
+            fee.getStudentId(), fee.getId(), List.of(creatablePayment2()), idempotencyKey));
+  }
+
+  @Test
+  void manager_write_on_multiple_fees_ok() throws ApiException {
+    ApiClient manager1Client = anApiClient(MANAGER1_TOKEN);
+    PayingApi api = new PayingApi(manager1Client);
+    Fee fee6 = api.getStudentFeeById(STUDENT1_ID, FEE6_ID);
+    Fee fee4 = api.getStudentFeeById(STUDENT2_ID, FEE4_ID);
+
+    List<Payment> actual = api.createPayments(List.of(
+        creatableFeePayment(FEE6_ID, 100),
+        creatableFeePayment(FEE4_ID, 200),
+        creatableFeePayment(FEE6_ID, 300)), null);
+
+    assertEquals(3, actual.size());
+    assertEquals(FEE6_ID, actual.get(0).getFeeId());
+    assertEquals(FEE4_ID, actual.get(1).getFeeId());
+    assertEquals(300, actual.get(2).getAmount());
+    assertEquals(fee6.getRemainingAmount() - 400,
+        api.getStudentFeeById(STUDENT1_ID, FEE6_ID).getRemainingAmount());
+    assertEquals(fee4.getRemainingAmount() - 200,
+        api.getStudentFeeById(STUDENT2_ID, FEE4_ID).getRemainingAmount());
+  }
+
+  @Test
+  void manager_write_on_multiple_fees_ko() throws ApiException {
+    ApiClient manager1Client = anApiClient(MANAGER1_TOKEN);
+    PayingApi api = new PayingApi(manager1Client);
+    Fee fee6 = api.getStudentFeeById(STUDENT1_ID, FEE6_ID);
+
+    assertThrowsApiException(
+        "{\"type\":\"400 BAD_REQUEST\",\"message\":\"Payment amount (1000)"
+            + " exceeds fee remaining amount (0)\"}",
+        () -> api.createPayments(List.of(
+            creatableFeePayment(FEE6_ID, 100),
+            creatableFeePayment(FEE1_ID, 1000)), null));
+
+    assertEquals(fee6.getRemainingAmount(),
+        api.getStudentFeeById(STUDENT1_ID, FEE6_ID).getRemainingAmount());
+  }
+
+  @Test
+  void manager_write_lump_sum_ok() throws ApiException {
+    ApiClient manager1Client = anApiClient(MANAGER1_TOKEN);
+    PayingApi api = new PayingApi(manager1Client);
+    Fee fee5 = api.getStudentFeeById(STUDENT2_ID, FEE5_ID);
+
+    List<Payment> actual = api.createStudentLumpSumPayment(
+        STUDENT2_ID, new CreatePayment().type(CreatePayment.TypeEnum.CASH).amount(1), null);
+
+    // fee5 is the oldest outstanding fee of student2
+    assertEquals(1, actual.size());
+    assertEquals(FEE5_ID, actual.get(0).getFeeId());
+    assertEquals(1, actual.get(0).getAmount());
+    assertEquals(fee5.getRemainingAmount() - 1,
+        api.getStudentFeeById(STUDENT2_ID, FEE5_ID).getRemainingAmount());
+    assertThrows(ApiException.class, () -> api.createStudentLumpSumPayment(
+        STUDENT2_ID,
+        new CreatePayment().type(CreatePayment.TypeEnum.CASH).amount(1_000_000),
+        null));
+  }
+
+  @Test
+  void manager_write_without_payment_ko() {
+    ApiClient manager1Client = anApiClient(MANAGER1_TOKEN);
+    PayingApi api = new PayingApi(manager1Client);
+
+    assertThrowsApiException(
+        "{\"type\":\"400 BAD_REQUEST\",\"message\":\"At least one payment is required\"}",
+        () -> api.createPayments(List.of(), null));
+    assertThrowsApiException(
+        "{\"type\":\"400 BAD_REQUEST\",\"message\":\"At least one payment is required\"}",
+        () -> api.createStudentPayments(STUDENT1_ID, FEE6_ID, List.of(), null));
+  }
+
+  @Test
+  void manager_write_lump_sum_of_zero_ko() {
+    ApiClient manager1Client = anApiClient(MANAGER1_TOKEN);
+    PayingApi api = new PayingApi(manager1Client);
+
+    assertThrowsApiException(
+        "{\"type\":\"400 BAD_REQUEST\",\"message\":\"Amount must be positive\"}",
+        () -> api.createStudentLumpSumPayment(
+            STUDENT2_ID, new CreatePayment().type(CreatePayment.TypeEnum.CASH).amount(0), null));
+  }
+
+  @Test
+  void teacher_write_on_multiple_fees_ko() {
+    ApiClient teacher1Client = anApiClient(TEACHER1_TOKEN);
+    PayingApi api = new PayingApi(teacher1Client);
+
+    assertThrowsApiException(
+        "{\"type\":\"403 FORBIDDEN\",\"message\":\"Access is denied\"}",
+        () -> api.createPayments(List.of(), null));
+    assertThrowsApiException(
+        "{\"type\":\"403 FORBIDDEN\",\"message\":\"Access is denied\"}",
+        () -> api.createStudentLumpSumPayment(STUDENT1_ID, creatablePayment1(), null));
+  }
+
+  static CreateFeePayment creatableFeePayment(String feeId, int amount) {
+    return new CreateFeePayment()
+        .feeId(feeId)
+        .type(CreateFeePayment.TypeEnum.CASH)
+        .amount(amount);
+  }
+
   static class ContextInitializer extends AbstractContextInitializer {
     public static final int SERVER_PORT = anAvailableRandomPort();
 
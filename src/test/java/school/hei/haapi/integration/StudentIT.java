@@ -11,12 +11,14 @@ import java.util.Objects;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.context.ContextConfiguration;
 import org.testcontainers.junit.jupiter.Testcontainers;
 import school.hei.haapi.SentryConf;
+import school.hei.haapi.endpoint.event.EventOutboxRelay;
 import school.hei.haapi.endpoint.rest.api.UsersApi;
 import school.hei.haapi.endpoint.rest.client.ApiClient;
 import school.hei.haapi.endpoint.rest.client.ApiException;
@@ -25,11 +27,10 @@ import school.hei.haapi.endpoint.rest.model.Student;
 import school.hei.haapi.endpoint.rest.security.cognito.CognitoComponent;
 import school.hei.haapi.integration.conf.AbstractContextInitializer;
 import school.hei.haapi.integration.conf.TestUtils;
+import software.amazon.awssdk.core.exception.SdkClientException;
 import software.amazon.awssdk.services.eventbridge.EventBridgeClient;
 import software.amazon.awssdk.services.eventbridge.model.PutEventsRequest;
 import software.amazon.awssdk.services.eventbridge.model.PutEventsRequestEntry;
-import software.amazon.awssdk.services.eventbridge.model.PutEventsResponse;
-import software.amazon.awssdk.services.eventbridge.model.PutEventsResultEntry;
 
 import static java.util.UUID.randomUUID;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -37,7 +38,7 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.reset;
-import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
@@ -46,7 +47,6 @@ import static school.hei.haapi.integration.conf.TestUtils.STUDENT1_ID;
 import static school.hei.haapi.integration.conf.TestUtils.STUDENT1_TOKEN;
 import static school.hei.haapi.integration.conf.TestUtils.TEACHER1_TOKEN;
 import static school.hei.haapi.integration.conf.TestUtils.anAvailableRandomPort;
-import static school.hei.haapi.integration.conf.TestUtils.assertThrowsApiException;
 import static school.hei.haapi.integration.conf.TestUtils.assertThrowsForbiddenException;
 import static school.hei.haapi.integration.conf.TestUtils.setUpCognito;
 import static school.hei.haapi.integration.conf.TestUtils.setUpEventBridge;
@@ -66,6 +66,9 @@ class StudentIT {
   @MockBean
   private EventBridgeClient eventBridgeClientMock;
 
+  @Autowired
+  private EventOutboxRelay eventOutboxRelay;
+
   private static ApiClient anApiClient(String token) {
     return TestUtils.anApiClient(token, ContextInitializer.SERVER_PORT);
   }
@@ -236,6 +239,31 @@ class StudentIT {
     assertTrue(actualStudents.contains(student1()));
   }
 
+  @Test
+  void manager_read_by_name_ignoring_accents_and_case_ok() throws ApiException {
+    ApiClient manager1Client = anApiClient(MANAGER1_TOKEN);
+    UsersApi api = new UsersApi(manager1Client);
+
+    List<Student> actualStudents = api.getStudents(1, 20, null, "RYÀN", "ândri");
+
+    assertEquals("Ryan", student1().getFirstName());
+    assertEquals("Andria", student1().getLastName());
+    assertEquals(1, actualStudents.size());
+    assertTrue(actualStudents.contains(student1()));
+  }
+
+  @Test
+  void manager_read_by_name_with_wildcards_ko() throws ApiException {
+    ApiClient manager1Client = anApiClient(MANAGER1_TOKEN);
+    UsersApi api = new UsersApi(manager1Client);
+
+    List<Student> actualStudents1 = api.getStudents(1, 20, null, null, "%");
+    List<Student> actualStudents2 = api.getStudents(1, 20, null, null, "Andr_a");
+
+    assertEquals(0, actualStudents1.size());
+    assertEquals(0, actualStudents2.size());
+  }
+
   @Test
   void manager_read_by_ref_ok() throws ApiException {
     ApiClient manager1Client = anApiClient(MANAGER1_TOKEN);
@@ -302,37 +330,36 @@ class StudentIT {
   }
 
   @Test
-  void manager_write_update_rollback_on_event_error() throws ApiException {
+  void manager_write_is_committed_on_event_error() throws ApiException {
     ApiClient manager1Client = anApiClient(MANAGER1_TOKEN);
     UsersApi api = new UsersApi(manager1Client);
     Student toCreate = someCreatableStudent();
     reset(eventBridgeClientMock);
     when(eventBridgeClientMock.putEvents((PutEventsRequest) any()))
-        .thenThrow(RuntimeException.class);
+        .thenThrow(SdkClientException.create("EventBridge is not available"));
 
-    assertThrowsApiException(
-        "{\"type\":\"500 INTERNAL_SERVER_ERROR\",\"message\":null}",
-        () -> api.createOrUpdateStudents(List.of(toCreate)));
+    api.createOrUpdateStudents(List.of(toCreate));
+    eventOutboxRelay.relay();
 
     List<Student> actual = api.getStudents(1, 100, null, null, null);
-    assertFalse(actual.stream().anyMatch(s -> Objects.equals(toCreate.getEmail(), s.getEmail())));
+    assertTrue(actual.stream().anyMatch(s -> Objects.equals(toCreate.getEmail(), s.getEmail())));
+    // Events that could not be sent are kept in the outbox, and sent by the next relay
+    reset(eventBridgeClientMock);
+    setUpEventBridge(eventBridgeClientMock);
+    eventOutboxRelay.relay();
+    assertTrue(sentEntries().stream()
+        .anyMatch(entry -> entry.detail().contains(toCreate.getEmail())));
   }
 
   @Test
-  void manager_write_update_more_than_10_students_ko() throws ApiException {
+  void manager_write_update_more_than_10_students_ok() throws ApiException {
     ApiClient manager1Client = anApiClient(MANAGER1_TOKEN);
     UsersApi api = new UsersApi(manager1Client);
-    Student studentToCreate = someCreatableStudent();
     List<Student> listToCreate = someCreatableStudentList(11);
-    listToCreate.add(studentToCreate);
 
-    assertThrowsApiException(
-        "{\"type\":\"400 BAD_REQUEST\",\"message\":\"Request entries must be <= 10\"}",
-        () -> api.createOrUpdateStudents(listToCreate));
+    List<Student> created = api.createOrUpdateStudents(listToCreate);
 
-    List<Student> actual = api.getStudents(1, 100, null, null, null);
-    assertFalse(actual.stream().anyMatch(
-        s -> Objects.equals(studentToCreate.getEmail(), s.getEmail())));
+    assertEquals(11, created.size());
   }
 
   @Test
@@ -340,28 +367,29 @@ class StudentIT {
     ApiClient manager1Client = anApiClient(MANAGER1_TOKEN);
     UsersApi api = new UsersApi(manager1Client);
     reset(eventBridgeClientMock);
-    when(eventBridgeClientMock.putEvents((PutEventsRequest) any())).thenReturn(
-        PutEventsResponse.builder().entries(
-                PutEventsResultEntry.builder().eventId("eventId1").build(),
-                PutEventsResultEntry.builder().eventId("eventId2").build())
-            .build());
+    setUpEventBridge(eventBridgeClientMock);
 
     List<Student> created =
         api.createOrUpdateStudents(List.of(someCreatableStudent(), someCreatableStudent()));
+    eventOutboxRelay.relay();
 
-    ArgumentCaptor<PutEventsRequest> captor = ArgumentCaptor.forClass(PutEventsRequest.class);
-    verify(eventBridgeClientMock, times(1)).putEvents(captor.capture());
-    PutEventsRequest actualRequest = captor.getValue();
-    List<PutEventsRequestEntry> actualRequestEntries = actualRequest.entries();
-    assertEquals(2, actualRequestEntries.size());
+    List<PutEventsRequestEntry> actualRequestEntries = sentEntries();
     Student created0 = created.get(0);
-    PutEventsRequestEntry requestEntry0 = actualRequestEntries.get(0);
-    assertTrue(requestEntry0.detail().contains(created0.getId()));
-    assertTrue(requestEntry0.detail().contains(created0.getEmail()));
+    assertTrue(actualRequestEntries.stream().anyMatch(entry ->
+        entry.detail().contains(created0.getId())
+            && entry.detail().contains(created0.getEmail())));
     Student created1 = created.get(1);
-    PutEventsRequestEntry requestEntry1 = actualRequestEntries.get(1);
-    assertTrue(requestEntry1.detail().contains(created1.getId()));
-    assertTrue(requestEntry1.detail().contains(created1.getEmail()));
+    assertTrue(actualRequestEntries.stream().anyMatch(entry ->
+        entry.detail().contains(created1.getId())
+            && entry.detail().contains(created1.getEmail())));
+  }
+
+  private List<PutEventsRequestEntry> sentEntries() {
+    ArgumentCaptor<PutEventsRequest> captor = ArgumentCaptor.forClass(PutEventsRequest.class);
+    verify(eventBridgeClientMock, atLeastOnce()).putEvents(captor.capture());
+    List<PutEventsRequestEntry> entries = new ArrayList<>();
+    captor.getAllValues().forEach(request -> entries.addAll(request.entries()));
+    return entries;
   }
 
   static class ContextInitializer extends AbstractContextInitializer {
@@ -29,7 +29,6 @@ import software.amazon.awssdk.services.eventbridge.model.PutEventsRequest;
 
 import static java.util.UUID.randomUUID;
 import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
@@ -42,7 +41,6 @@ import static school.hei.haapi.integration.conf.TestUtils.TEACHER1_ID;
 import static school.hei.haapi.integration.conf.TestUtils.TEACHER1_TOKEN;
 import static school.hei.haapi.integration.conf.TestUtils.TEACHER2_ID;
 import static school.hei.haapi.integration.conf.TestUtils.anAvailableRandomPort;
-import static school.hei.haapi.integration.conf.TestUtils.assertThrowsApiException;
 import static school.hei.haapi.integration.conf.TestUtils.assertThrowsForbiddenException;
 import static school.hei.haapi.integration.conf.TestUtils.isValidUUID;
 import static school.hei.haapi.integration.conf.TestUtils.setUpCognito;
@@ -212,7 +210,7 @@ class TeacherIT {
   }
 
   @Test
-  void manager_write_update_rollback_on_event_error() throws ApiException {
+  void manager_write_is_committed_on_event_error() throws ApiException {
     ApiClient manager1Client = anApiClient(MANAGER1_TOKEN);
     UsersApi api = new UsersApi(manager1Client);
     Teacher toCreate = someCreatableTeacher();
@@ -220,12 +218,10 @@ class TeacherIT {
     when(eventBridgeClientMock.putEvents((PutEventsRequest) any()))
         .thenThrow(RuntimeException.class);
 
-    assertThrowsApiException(
-        "{\"type\":\"500 INTERNAL_SERVER_ERROR\",\"message\":null}",
-        () -> api.createOrUpdateTeachers(List.of(toCreate)));
+    api.createOrUpdateTeachers(List.of(toCreate));
 
     List<Teacher> actual = api.getTeachers(1, 100, null, null, null);
-    assertFalse(actual.stream().anyMatch(s -> Objects.equals(toCreate.getEmail(), s.getEmail())));
+    assertTrue(actual.stream().anyMatch(s -> Objects.equals(toCreate.getEmail(), s.getEmail())));
   }
 
   @Test
@@ -244,19 +240,18 @@ class TeacherIT {
   }
 
   @Test
-  void manager_write_update_more_than_10_teachers_ko() throws ApiException {
+  void manager_write_update_more_than_10_teachers_ok() throws ApiException {
     ApiClient manager1Client = anApiClient(MANAGER1_TOKEN);
     UsersApi api = new UsersApi(manager1Client);
     Teacher teacherToCreate = someCreatableTeacher();
     List<Teacher> listToCreate = someCreatableTeacherList(11);
     listToCreate.add(teacherToCreate);
 
-    assertThrowsApiException(
-        "{\"type\":\"400 BAD_REQUEST\",\"message\":\"Request entries must be <= 10\"}",
-        () -> api.createOrUpdateTeachers(listToCreate));
+    List<Teacher> created = api.createOrUpdateTeachers(listToCreate);
 
-    List<Teacher> actual = api.getTeachers(1, 20, null, null, null);
-    assertFalse(
+    assertEquals(12, created.size());
+    List<Teacher> actual = api.getTeachers(1, 100, null, null, null);
+    assertTrue(
         actual.stream().anyMatch(
             s -> Objects.equals(teacherToCreate.getEmail(), s.getEmail())));
   }
@@ -24,6 +24,8 @@ public abstract class AbstractContextInitializer
         "aws.cognito.userPool.id=eu-west-3_mGxK1Bi8s",
         "aws.eventBridge.bus=dummy",
         "aws.sqs.queueUrl=dummy",
+        "aws.sqs.poller.nbOfWorkers=0",
+        "event.outbox.relayDelayInMillis=3600000",
         "spring.datasource.url=" + postgresContainer.getJdbcUrl(),
         "spring.datasource.username=" + postgresContainer.getUsername(),
         "spring.datasource.password=" + postgresContainer.getPassword(),
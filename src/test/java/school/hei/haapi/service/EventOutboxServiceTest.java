@@ -0,0 +1,128 @@
+package school.hei.haapi.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import school.hei.haapi.endpoint.event.EventProducer;
+import school.hei.haapi.endpoint.event.model.TypedEvent;
+import school.hei.haapi.endpoint.event.model.TypedUserUpserted;
+import school.hei.haapi.endpoint.event.model.gen.UserUpserted;
+import school.hei.haapi.model.OutboxEvent;
+import school.hei.haapi.repository.OutboxEventRepository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EventOutboxServiceTest {
+  EventOutboxService eventOutboxService;
+  OutboxEventRepository outboxEventRepository;
+  PlatformTransactionManager transactionManager;
+  EventProducer eventProducer;
+  ObjectMapper om = new ObjectMapper();
+
+  @BeforeEach
+  void setUp() {
+    outboxEventRepository = mock(OutboxEventRepository.class);
+    eventProducer = mock(EventProducer.class);
+    transactionManager = mock(PlatformTransactionManager.class);
+    eventOutboxService = new EventOutboxService(
+        outboxEventRepository, new TransactionTemplate(transactionManager),
+        eventProducer, om, 3, 60);
+  }
+
+  private static OutboxEvent outboxEvent(String id, String email) {
+    return OutboxEvent.builder()
+        .id(id)
+        .typeName(UserUpserted.class.getTypeName())
+        .payload("{\"userId\":\"" + id + "\",\"email\":\"" + email + "\"}")
+        .creationDatetime(Instant.parse("2022-11-08T08:25:24.00Z"))
+        .build();
+  }
+
+  @Test
+  void events_are_saved_serialized() {
+    eventOutboxService.accept(List.of(new TypedUserUpserted(
+        new UserUpserted().userId("user1_id").email("test@hei.school"))));
+
+    ArgumentCaptor<List<OutboxEvent>> captor = ArgumentCaptor.forClass(List.class);
+    verify(outboxEventRepository).saveAll(captor.capture());
+    OutboxEvent saved = captor.getValue().get(0);
+    assertEquals(UserUpserted.class.getTypeName(), saved.getTypeName());
+    assertEquals("{\"userId\":\"user1_id\",\"email\":\"test@hei.school\"}", saved.getPayload());
+  }
+
+  @Test
+  void sent_events_are_deleted() throws Exception {
+    when(outboxEventRepository.leaseOldest(eq(10), any())).thenReturn(List.of(
+        outboxEvent("id2", "test2@hei.school"), outboxEvent("id1", "test1@hei.school")));
+    ArgumentCaptor<List<TypedEvent>> published = ArgumentCaptor.forClass(List.class);
+    when(eventProducer.publish(published.capture())).thenAnswer(invocation -> {
+      List<TypedEvent> events = invocation.getArgument(0);
+      return List.of(events.get(1));
+    });
+
+    int sent = eventOutboxService.relay(10);
+
+    assertEquals(1, sent);
+    verify(outboxEventRepository).deleteAllByIdInBatch(Set.of("id1"));
+    verify(outboxEventRepository).incrementAttempts(List.of("id2"));
+    TypedEvent event = published.getValue().get(0);
+    assertEquals(UserUpserted.class.getTypeName(), event.getTypeName());
+    // Payloads are sent as they were saved, not as JSON strings, oldest first
+    assertEquals(
+        "{\"userId\":\"id1\",\"email\":\"test1@hei.school\"}",
+        om.writeValueAsString(event.getPayload()));
+  }
+
+  @Test
+  void events_are_sent_out_of_any_transaction() {
+    when(outboxEventRepository.leaseOldest(eq(10), any()))
+        .thenReturn(List.of(outboxEvent("id1", "test1@hei.school")));
+    when(eventProducer.publish(any())).thenReturn(List.of());
+
+    eventOutboxService.relay(10);
+
+    InOrder inOrder = inOrder(outboxEventRepository, eventProducer, transactionManager);
+    inOrder.verify(outboxEventRepository).leaseOldest(eq(10), any());
+    inOrder.verify(eventProducer).publish(any());
+    inOrder.verify(transactionManager).getTransaction(any());
+    inOrder.verify(outboxEventRepository).deleteAllByIdInBatch(Set.of("id1"));
+    inOrder.verify(transactionManager).commit(any());
+  }
+
+  @Test
+  void failed_events_are_moved_to_dead_letters_once_at_max_attempts() {
+    OutboxEvent failing = outboxEvent("id1", "test1@hei.school");
+    failing.setAttempts(2);
+    when(outboxEventRepository.leaseOldest(eq(10), any())).thenReturn(List.of(failing));
+    when(eventProducer.publish(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+    assertEquals(0, eventOutboxService.relay(10));
+
+    verify(outboxEventRepository).incrementAttempts(List.of("id1"));
+    verify(outboxEventRepository).moveToDeadLetters(List.of("id1"), 3);
+    verify(outboxEventRepository, never()).deleteAllByIdInBatch(any());
+  }
+
+  @Test
+  void empty_outbox_is_not_published() {
+    when(outboxEventRepository.leaseOldest(eq(10), any())).thenReturn(List.of());
+
+    assertEquals(0, eventOutboxService.relay(10));
+
+    verify(eventProducer, never()).publish(any());
+  }
+}
@@ -2,10 +2,14 @@ package school.hei.haapi.service;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.Collections;
 import java.util.List;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import school.hei.haapi.endpoint.event.EventProducer;
+import school.hei.haapi.endpoint.event.model.TypedEvent;
+import school.hei.haapi.endpoint.event.model.gen.CompactLateFeesDigestVerified;
 import school.hei.haapi.integration.conf.TestUtils;
 import school.hei.haapi.model.BoundedPageSize;
 import school.hei.haapi.model.Fee;
@@ -14,23 +18,35 @@ import school.hei.haapi.model.Payment;
 import school.hei.haapi.model.User;
 import school.hei.haapi.model.validator.FeeValidator;
 import school.hei.haapi.repository.FeeRepository;
+import school.hei.haapi.repository.dao.FeeManagerDao;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static school.hei.haapi.service.FeeService.LATE_FEES_DIGEST_PAGE_SIZE;
+import static school.hei.haapi.service.FeeService.LATE_FEES_EMAIL_PAGE_SIZE;
+import static school.hei.haapi.service.FeeService.LATE_FEES_UPDATE_CHUNK_SIZE;
 import static school.hei.haapi.endpoint.rest.model.Fee.StatusEnum.LATE;
 import static school.hei.haapi.endpoint.rest.model.Fee.StatusEnum.PAID;
 import static school.hei.haapi.endpoint.rest.model.Fee.StatusEnum.UNPAID;
 import static school.hei.haapi.endpoint.rest.model.Fee.TypeEnum.HARDWARE;
 import static school.hei.haapi.endpoint.rest.model.Payment.TypeEnum.CASH;
+import static school.hei.haapi.model.FeeStatusResolution.DERIVED;
 
 class FeeServiceTest {
   FeeService subject;
   FeeRepository feeRepository;
   FeeValidator feeValidator;
   EventProducer eventProducer;
+  FeeManagerDao feeManagerDao;
 
   static User student1() {
     return User.builder()
@@ -113,7 +129,8 @@ class FeeServiceTest {
     feeRepository = mock(FeeRepository.class);
     feeValidator = mock(FeeValidator.class);
     eventProducer = mock(EventProducer.class);
-    subject = new FeeService(feeRepository, feeValidator, eventProducer);
+    feeManagerDao = mock(FeeManagerDao.class);
+    subject = new FeeService(feeRepository, feeValidator, eventProducer, feeManagerDao, false);
   }
 
   @Test
@@ -195,4 +212,90 @@ class FeeServiceTest {
     assertFalse(actualPaidPage1.contains(fee2(!isMocked)));
     assertFalse(actualLatePage1.contains(fee3(!isMocked)));
   }
-}
\ No newline at end of file
+
+  @Test
+  void unpaid_fees_are_updated_to_late_by_chunks() {
+    List<String> fullChunk = Collections.nCopies(LATE_FEES_UPDATE_CHUNK_SIZE, TestUtils.FEE1_ID);
+    when(feeRepository.updateUnpaidFeesToLate(LATE_FEES_UPDATE_CHUNK_SIZE))
+        .thenReturn(fullChunk, fullChunk, List.of(TestUtils.FEE2_ID));
+
+    subject.updateFeesStatusToLate();
+
+    verify(feeRepository, times(3)).updateUnpaidFeesToLate(anyInt());
+  }
+
+  @Test
+  void late_fees_are_published_by_pages() {
+    Fee lateFee = fee3(false);
+    List<Fee> fullPage = Collections.nCopies(LATE_FEES_EMAIL_PAGE_SIZE, lateFee);
+    when(feeManagerDao.findByStatusAfterId(eq(LATE), any(), eq(LATE_FEES_EMAIL_PAGE_SIZE)))
+        .thenReturn(fullPage, List.of(lateFee));
+
+    subject.sendLateFeesEmail();
+
+    verify(feeManagerDao, times(1))
+        .findByStatusAfterId(eq(LATE), eq(""), anyInt());
+    verify(feeManagerDao, times(1))
+        .findByStatusAfterId(eq(LATE), eq(lateFee.getId()), anyInt());
+    verify(eventProducer, times(2)).publish(any());
+  }
+
+  @Test
+  void late_fees_are_published_as_one_digest_by_student() {
+    subject = new FeeService(feeRepository, feeValidator, eventProducer, feeManagerDao, true);
+    Fee student1Fee1 = fee3(false);
+    Fee student1Fee2 = fee3(false).toBuilder().id(TestUtils.FEE2_ID).remainingAmount(2000).build();
+    Fee student2Fee = fee3(false).toBuilder()
+        .student(User.builder().id(TestUtils.STUDENT2_ID).build())
+        .build();
+    List<String> studentIds = List.of(TestUtils.STUDENT1_ID, TestUtils.STUDENT2_ID);
+    when(feeManagerDao.findStudentIdsByStatusAfterStudentId(
+        LATE, "", LATE_FEES_DIGEST_PAGE_SIZE)).thenReturn(studentIds);
+    when(feeManagerDao.findByStatusAndStudentIds(LATE, studentIds))
+        .thenReturn(List.of(student1Fee1, student1Fee2, student2Fee));
+    ArgumentCaptor<List<TypedEvent>> published = ArgumentCaptor.forClass(List.class);
+    when(eventProducer.publish(published.capture())).thenReturn(List.of());
+
+    subject.sendLateFeesEmail();
+
+    List<TypedEvent> digests = published.getValue();
+    assertEquals(2, digests.size());
+    CompactLateFeesDigestVerified student1Digest =
+        (CompactLateFeesDigestVerified) digests.get(0).getPayload();
+    assertEquals(TestUtils.STUDENT1_ID, student1Digest.getStudentId());
+    assertEquals(List.of(student1Fee1.getId(), TestUtils.FEE2_ID), student1Digest.getFeeIds());
+    CompactLateFeesDigestVerified student2Digest =
+        (CompactLateFeesDigestVerified) digests.get(1).getPayload();
+    assertEquals(TestUtils.STUDENT2_ID, student2Digest.getStudentId());
+    assertEquals(1, student2Digest.getFeeIds().size());
+    verify(feeManagerDao, never()).findByStatusAfterId(any(), any(), anyInt());
+    // A page smaller than the page size is the last one
+    verify(feeManagerDao, times(1)).findStudentIdsByStatusAfterStudentId(any(), any(), anyInt());
+  }
+
+  @Test
+  void fees_are_not_updated_to_late_when_status_is_derived() {
+    when(feeManagerDao.getStatusResolution()).thenReturn(DERIVED);
+
+    subject.updateFeesStatusToLate();
+
+    verify(feeRepository, never()).updateUnpaidFeesToLate(anyInt());
+  }
+
+  @Test
+  void listed_fees_status_is_updated() {
+    Fee overdueFee = fee(remainingAmount() - 1);
+    overdueFee.setRemainingAmount(1);
+    overdueFee.setDueDatetime(Instant.now().minus(1L, ChronoUnit.DAYS));
+    Fee paidFee = fee(remainingAmount());
+    paidFee.setRemainingAmount(0);
+    when(feeManagerDao.findAfter(any(), any(), any(), any()))
+        .thenReturn(List.of(overdueFee, paidFee));
+
+    List<Fee> actual = subject.getFeesByStudentId(
+        TestUtils.STUDENT1_ID, new PageFromOne(1), new BoundedPageSize(10), null);
+
+    assertEquals(LATE, actual.get(0).getStatus());
+    assertEquals(PAID, actual.get(1).getStatus());
+  }
+}
@@ -0,0 +1,232 @@
+package school.hei.haapi.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import school.hei.haapi.model.IdempotentRequest;
+import school.hei.haapi.model.exception.BadRequestException;
+import school.hei.haapi.model.exception.TooManyRequestsException;
+import school.hei.haapi.repository.IdempotentRequestRepository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IdempotencyServiceTest {
+  private static final String KEY = "key";
+  private static final String OPERATION = "POST /payments";
+  private static final TypeReference<List<String>> RESPONSE_TYPE = new TypeReference<>() {
+  };
+
+  IdempotencyService subject;
+  IdempotentRequestRepository idempotentRequestRepository;
+  AtomicInteger executions;
+
+  @BeforeEach
+  void setUp() {
+    idempotentRequestRepository = mock(IdempotentRequestRepository.class);
+    when(idempotentRequestRepository.claim(anyString(), anyString(), anyString(), any(), any()))
+        .thenReturn(1);
+    when(idempotentRequestRepository.updateResponse(anyString(), anyString(), anyString()))
+        .thenReturn(1);
+    subject = new IdempotencyService(
+        idempotentRequestRepository, new ObjectMapper(), 60, 30, 1, 10);
+    executions = new AtomicInteger();
+  }
+
+  List<String> execute(String key, String body) {
+    return subject.execute(key, OPERATION, body, RESPONSE_TYPE, () -> {
+      executions.incrementAndGet();
+      return List.of(body);
+    });
+  }
+
+  @Test
+  void requests_without_key_are_always_executed() {
+    execute(null, "body");
+    execute(null, "body");
+
+    assertEquals(2, executions.get());
+    verify(idempotentRequestRepository, times(0)).claim(any(), any(), any(), any(), any());
+  }
+
+  @Test
+  void requests_with_same_key_are_executed_once() {
+    List<String> actual1 = execute(KEY, "body");
+    List<String> actual2 = execute(KEY, "body");
+
+    assertEquals(1, executions.get());
+    assertEquals(actual1, actual2);
+    verify(idempotentRequestRepository, times(1))
+        .claim(eq(KEY), anyString(), anyString(), any(), any());
+    verify(idempotentRequestRepository, times(1))
+        .updateResponse(eq(KEY), anyString(), eq("[\"body\"]"));
+  }
+
+  @Test
+  void key_can_not_be_reused_for_another_request() {
+    execute(KEY, "body");
+
+    assertThrows(BadRequestException.class, () -> execute(KEY, "other body"));
+    assertEquals(1, executions.get());
+  }
+
+  @Test
+  void stored_response_is_replayed() {
+    when(idempotentRequestRepository.claim(eq(KEY), anyString(), anyString(), any(), any()))
+        .thenReturn(0);
+    String scope = scopeOf("body");
+    when(idempotentRequestRepository.findById(KEY)).thenReturn(Optional.of(
+        IdempotentRequest.builder().id(KEY).scope(scope).response("[\"stored\"]").build()));
+
+    List<String> actual = execute(KEY, "body");
+
+    assertEquals(List.of("stored"), actual);
+    assertEquals(0, executions.get());
+  }
+
+  @Test
+  void request_in_progress_elsewhere_is_rejected() {
+    when(idempotentRequestRepository.claim(eq(KEY), anyString(), anyString(), any(), any()))
+        .thenReturn(0);
+    String scope = scopeOf("body");
+    when(idempotentRequestRepository.findById(KEY)).thenReturn(Optional.of(
+        IdempotentRequest.builder().id(KEY).scope(scope).build()));
+
+    assertThrows(TooManyRequestsException.class, () -> execute(KEY, "body"));
+    assertEquals(0, executions.get());
+  }
+
+  @Test
+  void failed_request_is_released() {
+    assertThrows(BadRequestException.class,
+        () -> subject.execute(KEY, OPERATION, "body", RESPONSE_TYPE, () -> {
+          throw new BadRequestException("Failed");
+        }));
+    execute(KEY, "body");
+
+    verify(idempotentRequestRepository, times(1)).release(eq(KEY), anyString());
+    assertEquals(1, executions.get());
+  }
+
+  @Test
+  void concurrent_requests_with_same_key_are_collapsed() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CompletableFuture<List<String>> first = CompletableFuture.supplyAsync(
+        () -> subject.execute(KEY, OPERATION, "body", RESPONSE_TYPE, () -> {
+          started.countDown();
+          await(release);
+          executions.incrementAndGet();
+          return List.of("body");
+        }));
+    started.await();
+    CompletableFuture<List<String>> second =
+        CompletableFuture.supplyAsync(() -> execute(KEY, "body"));
+
+    release.countDown();
+
+    assertEquals(first.get(), second.get());
+    assertEquals(1, executions.get());
+  }
+
+  @Test
+  void wait_for_concurrent_request_is_bounded() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    final CompletableFuture<List<String>> first = CompletableFuture.supplyAsync(
+        () -> subject.execute(KEY, OPERATION, "body", RESPONSE_TYPE, () -> {
+          started.countDown();
+          await(release);
+          return List.of("body");
+        }));
+    started.await();
+
+    assertThrows(TooManyRequestsException.class, () -> execute(KEY, "body"));
+    release.countDown();
+    assertEquals(List.of("body"), first.get());
+    assertEquals(0, executions.get());
+  }
+
+  @Test
+  void key_is_claimed_with_a_short_lock() {
+    Instant before = Instant.now();
+
+    execute(KEY, "body");
+
+    ArgumentCaptor<Instant> lockExpiration = ArgumentCaptor.forClass(Instant.class);
+    ArgumentCaptor<Instant> expiration = ArgumentCaptor.forClass(Instant.class);
+    verify(idempotentRequestRepository).claim(
+        eq(KEY), anyString(), anyString(), lockExpiration.capture(), expiration.capture());
+    assertTrue(lockExpiration.getValue().isBefore(before.plusSeconds(31)));
+    assertTrue(expiration.getValue().isAfter(before.plusSeconds(59)));
+  }
+
+  @Test
+  void locks_are_renewed_while_requests_are_in_progress() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    final CompletableFuture<List<String>> first = CompletableFuture.supplyAsync(
+        () -> subject.execute(KEY, OPERATION, "body", RESPONSE_TYPE, () -> {
+          started.countDown();
+          await(release);
+          return List.of("body");
+        }));
+    started.await();
+
+    subject.renewLocks();
+    release.countDown();
+    first.get();
+    subject.renewLocks();
+
+    ArgumentCaptor<String> claimToken = ArgumentCaptor.forClass(String.class);
+    verify(idempotentRequestRepository).claim(
+        eq(KEY), anyString(), claimToken.capture(), any(), any());
+    verify(idempotentRequestRepository, times(1))
+        .renewLock(eq(KEY), eq(claimToken.getValue()), any());
+    verify(idempotentRequestRepository)
+        .updateResponse(KEY, claimToken.getValue(), "[\"body\"]");
+  }
+
+  @Test
+  void response_is_not_cached_when_key_was_claimed_again() {
+    when(idempotentRequestRepository.updateResponse(anyString(), anyString(), anyString()))
+        .thenReturn(0);
+
+    execute(KEY, "body");
+    execute(KEY, "body");
+
+    assertEquals(2, executions.get());
+  }
+
+  private String scopeOf(String body) {
+    subject.execute("other key", OPERATION, body, RESPONSE_TYPE, () -> List.of(body));
+    ArgumentCaptor<String> scope = ArgumentCaptor.forClass(String.class);
+    verify(idempotentRequestRepository)
+        .claim(eq("other key"), scope.capture(), any(), any(), any());
+    return scope.getValue();
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
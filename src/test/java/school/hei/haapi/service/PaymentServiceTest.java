@@ -0,0 +1,178 @@
+package school.hei.haapi.service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import school.hei.haapi.integration.conf.TestUtils;
+import school.hei.haapi.model.Fee;
+import school.hei.haapi.model.Payment;
+import school.hei.haapi.model.exception.BadRequestException;
+import school.hei.haapi.model.exception.NotFoundException;
+import school.hei.haapi.model.validator.PaymentValidator;
+import school.hei.haapi.repository.PaymentRepository;
+import school.hei.haapi.repository.dao.PaymentBatchDao;
+
+import static java.util.stream.Collectors.toUnmodifiableList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static school.hei.haapi.endpoint.rest.model.Payment.TypeEnum.CASH;
+
+class PaymentServiceTest {
+  PaymentService subject;
+  FeeService feeService;
+  PaymentRepository paymentRepository;
+  PaymentBatchDao paymentBatchDao;
+
+  static Fee fee(String id) {
+    return Fee.builder()
+        .id(id)
+        .build();
+  }
+
+  static Payment payment(String feeId, int amount) {
+    return Payment.builder()
+        .fee(fee(feeId))
+        .type(CASH)
+        .amount(amount)
+        .build();
+  }
+
+  static Payment inserted(String id) {
+    return Payment.builder()
+        .id(id)
+        .build();
+  }
+
+  @BeforeEach
+  void setUp() {
+    feeService = mock(FeeService.class);
+    paymentRepository = mock(PaymentRepository.class);
+    paymentBatchDao = mock(PaymentBatchDao.class);
+    subject = new PaymentService(
+        feeService, paymentRepository, new PaymentValidator(), paymentBatchDao);
+    when(feeService.getReference(any())).thenAnswer(invocation -> fee(invocation.getArgument(0)));
+  }
+
+  @Test
+  void payments_are_debited_once_per_fee() {
+    List<Payment> payments = List.of(
+        payment(TestUtils.FEE1_ID, 1000),
+        payment(TestUtils.FEE2_ID, 500),
+        payment(TestUtils.FEE1_ID, 2000));
+    when(paymentBatchDao.debitRemainingAmounts(any())).thenReturn(List.of());
+    when(paymentBatchDao.insertAll(payments)).thenReturn(List.of("p1", "p2", "p3"));
+    when(paymentRepository.findAllByIdIn(any())).thenReturn(List.of(
+        inserted("p3"), inserted("p1"), inserted("p2")));
+
+    List<Payment> actual = subject.saveAll(payments);
+
+    assertEquals(List.of("p1", "p2", "p3"),
+        actual.stream().map(Payment::getId).collect(toUnmodifiableList()));
+    // Remaining amounts are only checked by the conditional updates
+    verify(paymentBatchDao, never()).getRemainingAmounts(any());
+    verify(paymentBatchDao, times(1))
+        .debitRemainingAmounts(Map.of(TestUtils.FEE1_ID, 3000, TestUtils.FEE2_ID, 500));
+    verify(paymentRepository, times(1)).findAllByIdIn(List.of("p1", "p2", "p3"));
+  }
+
+  @Test
+  void payments_exceeding_remaining_amount_are_rejected() {
+    when(paymentBatchDao.getRemainingAmounts(any()))
+        .thenReturn(Map.of(TestUtils.FEE1_ID, 3000));
+
+    BadRequestException exception = assertThrows(BadRequestException.class,
+        () -> subject.saveAll(List.of(
+            payment(TestUtils.FEE1_ID, 2000), payment(TestUtils.FEE1_ID, 3000))));
+
+    assertEquals(
+        "Payment amount (5000) exceeds fee remaining amount (3000)", exception.getMessage());
+    verify(feeService, times(1)).debitRemainingAmount(TestUtils.FEE1_ID, 5000);
+    verify(paymentBatchDao, never()).insertAll(any());
+  }
+
+  @Test
+  void payments_on_a_single_fee_are_debited_with_a_single_update() {
+    List<Payment> payments = List.of(payment(TestUtils.FEE1_ID, 1000));
+    when(feeService.debitRemainingAmount(TestUtils.FEE1_ID, 1000)).thenReturn(true);
+    when(paymentBatchDao.insertAll(payments)).thenReturn(List.of("p1"));
+    when(paymentRepository.findAllByIdIn(any())).thenReturn(List.of(inserted("p1")));
+
+    subject.saveAll(payments);
+
+    verify(paymentBatchDao, never()).debitRemainingAmounts(any());
+    verify(paymentBatchDao, never()).getRemainingAmounts(any());
+  }
+
+  @Test
+  void payments_on_unknown_fee_are_rejected() {
+    when(paymentBatchDao.getRemainingAmounts(any())).thenReturn(Map.of());
+
+    assertThrows(NotFoundException.class,
+        () -> subject.saveAll(List.of(payment(TestUtils.FEE1_ID, 1000))));
+    verify(paymentBatchDao, never()).insertAll(any());
+  }
+
+  @Test
+  void payments_not_debited_by_the_batch_are_rejected() {
+    when(paymentBatchDao.getRemainingAmounts(List.of(TestUtils.FEE1_ID)))
+        .thenReturn(Map.of(TestUtils.FEE1_ID, 500));
+    when(paymentBatchDao.debitRemainingAmounts(any())).thenReturn(List.of(TestUtils.FEE1_ID));
+
+    BadRequestException exception = assertThrows(BadRequestException.class,
+        () -> subject.saveAll(List.of(
+            payment(TestUtils.FEE1_ID, 1000), payment(TestUtils.FEE2_ID, 1000))));
+
+    assertEquals(
+        "Payment amount (1000) exceeds fee remaining amount (500)", exception.getMessage());
+    verify(paymentBatchDao, never()).insertAll(any());
+  }
+
+  @Test
+  void lump_sum_is_allocated_to_oldest_fees_first() {
+    Map<String, Integer> outstandingAmounts = new LinkedHashMap<>();
+    outstandingAmounts.put(TestUtils.FEE3_ID, 5000);
+    outstandingAmounts.put(TestUtils.FEE6_ID, 5000);
+    outstandingAmounts.put(TestUtils.FEE1_ID, 5000);
+    when(paymentBatchDao.getOutstandingAmountsForUpdate(TestUtils.STUDENT1_ID))
+        .thenReturn(outstandingAmounts);
+    when(paymentBatchDao.debitRemainingAmounts(any())).thenReturn(List.of());
+    when(paymentBatchDao.insertAll(any())).thenReturn(List.of("p1", "p2"));
+    when(paymentRepository.findAllByIdIn(any())).thenReturn(List.of(
+        inserted("p1"), inserted("p2")));
+
+    subject.allocateToOldestFees(TestUtils.STUDENT1_ID, payment(null, 7000));
+
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<List<Payment>> allocated = ArgumentCaptor.forClass(List.class);
+    verify(paymentBatchDao).insertAll(allocated.capture());
+    assertEquals(2, allocated.getValue().size());
+    assertEquals(TestUtils.FEE3_ID, allocated.getValue().get(0).getFee().getId());
+    assertEquals(5000, allocated.getValue().get(0).getAmount());
+    assertEquals(TestUtils.FEE6_ID, allocated.getValue().get(1).getFee().getId());
+    assertEquals(2000, allocated.getValue().get(1).getAmount());
+    verify(paymentBatchDao)
+        .debitRemainingAmounts(Map.of(TestUtils.FEE3_ID, 5000, TestUtils.FEE6_ID, 2000));
+  }
+
+  @Test
+  void lump_sum_exceeding_student_remaining_amount_is_rejected() {
+    when(paymentBatchDao.getOutstandingAmountsForUpdate(TestUtils.STUDENT1_ID))
+        .thenReturn(Map.of(TestUtils.FEE3_ID, 5000));
+
+    BadRequestException exception = assertThrows(BadRequestException.class,
+        () -> subject.allocateToOldestFees(TestUtils.STUDENT1_ID, payment(null, 7000)));
+
+    assertEquals(
+        "Payment amount (7000) exceeds student remaining amount (5000)", exception.getMessage());
+    verify(paymentBatchDao, never()).insertAll(any());
+  }
+}
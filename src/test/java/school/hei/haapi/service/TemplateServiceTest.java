@@ -0,0 +1,41 @@
+package school.hei.haapi.service;
+
+import java.io.StringWriter;
+import org.junit.jupiter.api.Test;
+import org.thymeleaf.context.Context;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TemplateServiceTest {
+  TemplateService templateService = new TemplateService(0, 10);
+
+  private static Context context(String fullName) {
+    Context context = new Context();
+    context.setVariable("fullName", fullName);
+    context.setVariable("comment", "Frais de scolarité");
+    context.setVariable("dueDatetime", "8 novembre 2021");
+    context.setVariable("remainingAmount", "5 000");
+    context.setVariable("remainingAmWords", "CINQ MILLE");
+    return context;
+  }
+
+  @Test
+  void cached_template_is_rendered_with_its_variables() {
+    String first = templateService.render("lateFeeEmail", context("Andria Ryan"));
+    String second = templateService.render("lateFeeEmail", context("Rakoto Jean"));
+
+    assertTrue(first.contains("Andria Ryan"));
+    assertTrue(second.contains("Rakoto Jean"));
+    assertTrue(second.contains("CINQ MILLE"));
+  }
+
+  @Test
+  void template_is_rendered_to_writer() {
+    StringWriter writer = new StringWriter();
+
+    templateService.render("lateFeeEmail", context("Andria Ryan"), writer);
+
+    assertEquals(templateService.render("lateFeeEmail", context("Andria Ryan")), writer.toString());
+  }
+}
@@ -0,0 +1,84 @@
+package school.hei.haapi.service;
+
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import school.hei.haapi.model.User;
+import school.hei.haapi.model.validator.UserValidator;
+import school.hei.haapi.repository.UserRepository;
+import school.hei.haapi.repository.dao.UserManagerDao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserServiceTest {
+  UserService userService;
+  UserRepository userRepository;
+
+  @BeforeEach
+  void setUp() {
+    userRepository = mock(UserRepository.class);
+    userService = new UserService(
+        userRepository,
+        mock(EventOutboxService.class),
+        mock(UserValidator.class),
+        mock(UserManagerDao.class),
+        60,
+        100);
+  }
+
+  private static User user(String id, String email, User.Role role) {
+    return User.builder().id(id).email(email).role(role).build();
+  }
+
+  @Test
+  void user_is_read_once_by_email() {
+    User student = user("student1_id", "student1@hei.school", User.Role.STUDENT);
+    when(userRepository.getByEmail("student1@hei.school")).thenReturn(student);
+
+    assertSame(student, userService.getByEmail("student1@hei.school"));
+    assertSame(student, userService.getByEmail("student1@hei.school"));
+
+    verify(userRepository, times(1)).getByEmail("student1@hei.school");
+  }
+
+  @Test
+  void unknown_email_is_not_cached() {
+    assertNull(userService.getByEmail("unknown@hei.school"));
+    assertNull(userService.getByEmail("unknown@hei.school"));
+
+    verify(userRepository, times(2)).getByEmail("unknown@hei.school");
+  }
+
+  @Test
+  void saved_users_are_invalidated() {
+    User student = user("student1_id", "student1@hei.school", User.Role.STUDENT);
+    User manager = user("student1_id", "student1@hei.school", User.Role.MANAGER);
+    when(userRepository.getByEmail("student1@hei.school")).thenReturn(student, manager);
+    userService.getByEmail("student1@hei.school");
+    when(userRepository.saveAll(List.of(manager))).thenReturn(List.of(manager));
+
+    userService.saveAll(List.of(manager));
+
+    assertEquals(User.Role.MANAGER, userService.getByEmail("student1@hei.school").getRole());
+    verify(userRepository, times(2)).getByEmail("student1@hei.school");
+  }
+
+  @Test
+  void users_with_a_changed_email_are_invalidated() {
+    User student = user("student1_id", "student1@hei.school", User.Role.STUDENT);
+    User renamed = user("student1_id", "renamed@hei.school", User.Role.STUDENT);
+    when(userRepository.getByEmail("student1@hei.school")).thenReturn(student, (User) null);
+    userService.getByEmail("student1@hei.school");
+    when(userRepository.saveAll(List.of(renamed))).thenReturn(List.of(renamed));
+
+    userService.saveAll(List.of(renamed));
+
+    assertNull(userService.getByEmail("student1@hei.school"));
+  }
+}
@@ -0,0 +1,110 @@
+package school.hei.haapi.service.aws;
+
+import org.junit.jupiter.api.Test;
+import school.hei.haapi.model.exception.ApiException;
+import school.hei.haapi.repository.EmailSenderRepository;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.services.ses.SesClient;
+import software.amazon.awssdk.services.ses.model.GetSendQuotaResponse;
+import software.amazon.awssdk.services.ses.model.SendEmailRequest;
+import software.amazon.awssdk.services.ses.model.SendEmailResponse;
+import software.amazon.awssdk.services.ses.model.SesException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SesServiceTest {
+  EmailSenderRepository emailSenderRepository = mock(EmailSenderRepository.class);
+
+  private static SesException throttling() {
+    return (SesException) SesException.builder()
+        .statusCode(400)
+        .awsErrorDetails(AwsErrorDetails.builder()
+            .errorCode("Throttling")
+            .errorMessage("Maximum sending rate exceeded.")
+            .build())
+        .build();
+  }
+
+  @Test
+  void emails_are_sent_at_the_max_send_rate_of_the_account() {
+    InMemorySesClient sesClient = new InMemorySesClient(50);
+    // Slower default rate, replaced by the one given by SES
+    SesService sesService = new SesService(sesClient, emailSenderRepository, 1, 1, 10, 10_000);
+
+    long start = System.nanoTime();
+    for (int i = 0; i < 75; i++) {
+      sesService.sendEmail("sender@hei.school", "test+" + i + "@hei.school", "Subject", "<p/>");
+    }
+    long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+    // Never throttled, though without retries
+    assertEquals(75, sesClient.getSentEmails().size());
+    assertEquals(50, sesService.getMaxSendRate());
+    assertTrue(elapsedMillis >= 400, "elapsedMillis=" + elapsedMillis);
+  }
+
+  @Test
+  void max_send_rate_is_shared_by_alive_instances() {
+    SesClient sesClient = mock(SesClient.class);
+    when(sesClient.getSendQuota())
+        .thenReturn(GetSendQuotaResponse.builder().maxSendRate(14.0).build());
+    when(emailSenderRepository.countAlive(30.)).thenReturn(2, 4);
+    SesService sesService = new SesService(sesClient, emailSenderRepository, 10, 1, 10, 10_000);
+
+    sesService.beat();
+    assertEquals(5, sesService.getMaxSendRate());
+    sesService.refreshSendQuota();
+    assertEquals(7, sesService.getMaxSendRate());
+    // Scaled out
+    sesService.beat();
+    assertEquals(3.5, sesService.getMaxSendRate());
+    verify(emailSenderRepository, times(2)).beat(any());
+  }
+
+  @Test
+  void max_send_rate_is_kept_when_instances_can_not_be_counted() {
+    SesClient sesClient = mock(SesClient.class);
+    when(emailSenderRepository.countAlive(30.))
+        .thenReturn(2)
+        .thenThrow(new RuntimeException("Database is not available"));
+    SesService sesService = new SesService(sesClient, emailSenderRepository, 10, 1, 10, 10_000);
+
+    sesService.beat();
+    sesService.beat();
+
+    assertEquals(5, sesService.getMaxSendRate());
+  }
+
+  @Test
+  void throttled_emails_are_retried() {
+    SesClient sesClient = mock(SesClient.class);
+    when(sesClient.getSendQuota()).thenReturn(GetSendQuotaResponse.builder().build());
+    when(sesClient.sendEmail((SendEmailRequest) any()))
+        .thenThrow(throttling())
+        .thenReturn(SendEmailResponse.builder().build());
+    SesService sesService = new SesService(sesClient, emailSenderRepository, 100, 3, 10, 10_000);
+
+    sesService.sendEmail("sender@hei.school", "test@hei.school", "Subject", "<p/>");
+
+    verify(sesClient, times(2)).sendEmail((SendEmailRequest) any());
+  }
+
+  @Test
+  void emails_throttled_too_many_times_are_not_sent() {
+    SesClient sesClient = mock(SesClient.class);
+    when(sesClient.getSendQuota()).thenReturn(GetSendQuotaResponse.builder().build());
+    when(sesClient.sendEmail((SendEmailRequest) any())).thenThrow(throttling());
+    SesService sesService = new SesService(sesClient, emailSenderRepository, 100, 3, 10, 10_000);
+
+    assertThrows(ApiException.class, () -> sesService.sendEmail(
+        "sender@hei.school", "test@hei.school", "Subject", "<p/>"));
+    verify(sesClient, times(3)).sendEmail((SendEmailRequest) any());
+  }
+}
@@ -0,0 +1,45 @@
+package school.hei.haapi.service.aws;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TokenBucketTest {
+  AtomicLong now = new AtomicLong();
+  TokenBucket tokenBucket = new TokenBucket(10, now::get);
+
+  @Test
+  void one_second_of_permits_is_available_at_once() {
+    assertEquals(0, tokenBucket.reserve(10));
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(100), tokenBucket.reserve(1));
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(600), tokenBucket.reserve(5));
+  }
+
+  @Test
+  void permits_are_refilled_at_the_rate() {
+    tokenBucket.reserve(10);
+
+    now.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+
+    assertEquals(0, tokenBucket.reserve(5));
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(100), tokenBucket.reserve(1));
+  }
+
+  @Test
+  void unused_permits_are_saved_up_to_one_second() {
+    now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+
+    assertEquals(0, tokenBucket.reserve(10));
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(100), tokenBucket.reserve(1));
+  }
+
+  @Test
+  void rate_can_be_changed() {
+    tokenBucket.reserve(10);
+    tokenBucket.setPermitsPerSecond(100);
+
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(10), tokenBucket.reserve(1));
+  }
+}
@@ -1,6 +1,12 @@
 package school.hei.haapi.unit.utils;
 
+import java.text.NumberFormat;
 import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.jupiter.api.Test;
 import school.hei.haapi.service.utils.DataFormatterUtils;
 
@@ -25,4 +31,26 @@ class DataFormatterTest {
     assertEquals(expected, actual);
   }
 
+  @Test
+  void memoized_number_to_words() {
+    assertEquals("CINQ MILLE", DataFormatterUtils.numberToWords(5_000));
+    assertEquals("CINQ MILLE", DataFormatterUtils.numberToWords(5_000));
+    assertEquals("CINQ MILLE UN", DataFormatterUtils.numberToWords(5_001));
+  }
+
+  @Test
+  void number_to_readable_from_many_threads() throws Exception {
+    String expected = NumberFormat.getNumberInstance().format(1_234_567);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<String>> formatted = executor.invokeAll(
+          Collections.nCopies(100, () -> DataFormatterUtils.numberToReadable(1_234_567)));
+      for (Future<String> actual : formatted) {
+        assertEquals(expected, actual.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
 }
@@ -8,7 +8,7 @@ import school.hei.haapi.integration.conf.TestUtils;
 import school.hei.haapi.model.Fee;
 import school.hei.haapi.model.Payment;
 import school.hei.haapi.model.User;
-import school.hei.haapi.model.exception.NotImplementedException;
+import school.hei.haapi.model.exception.BadRequestException;
 import school.hei.haapi.model.validator.PaymentValidator;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -104,17 +104,38 @@ class PaymentValidatorTest {
   }
 
   @Test
-  void payments_with_multiple_fees_not_implemented() {
+  void payments_with_multiple_fees_ok() {
     String payment1FeeId = payment1().getFee().getId();
     String payment2FeeId = payment2().getFee().getId();
     List<Payment> payments = List.of(payment1(), payment2());
 
-    assertThrows(NotImplementedException.class,
-        () -> subject.accept(payments));
+    subject.accept(payments);
 
     assertNotEquals(payment1FeeId, payment2FeeId);
   }
 
+  @Test
+  void payments_with_negative_amount_ko() {
+    Payment payment = payment2();
+    payment.setAmount(-1);
+
+    assertThrows(BadRequestException.class, () -> subject.accept(List.of(payment)));
+  }
+
+  @Test
+  void payments_with_zero_amount_ko() {
+    Payment payment = payment2();
+    payment.setAmount(0);
+
+    assertThrows(BadRequestException.class, () -> subject.accept(List.of(payment)));
+    assertThrows(BadRequestException.class, () -> subject.accept(payment));
+  }
+
+  @Test
+  void no_payment_ko() {
+    assertThrows(BadRequestException.class, () -> subject.accept(List.of()));
+  }
+
   @Test
   void payments_with_unique_fee_ok() {
     String payment2FeeId = payment2().getFee().getId();